@@ -0,0 +1,31 @@
+package benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+Runs the benchmarks at each of the thread counts we care about. The first argument, if given, is a regular expression
+selecting which benchmarks to run (e.g. "ReadWriteMix").
+ */
+public class BenchmarkRunner {
+
+    static final int[] THREAD_COUNTS = {1, 4, 16, 64};
+
+    public static void main(String[] args) throws RunnerException {
+
+        final String include = args.length > 0 ? args[0] : "Benchmark";
+        for (int threads : THREAD_COUNTS) {
+
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .result("jmh-result-" + threads + "-threads.json")
+                    .resultFormat(ResultFormatType.JSON)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
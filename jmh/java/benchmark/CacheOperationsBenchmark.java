@@ -0,0 +1,39 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+One benchmark per hot-path operation. Throughput is reported in ops/s, SampleTime gives the latency percentiles.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheOperationsBenchmark {
+
+    @Benchmark
+    public Integer getValueFromCache(CacheState state, CacheState.ThreadIndex thread) {
+        return state.read(state.keys[thread.next()]);
+    }
+
+    @Benchmark
+    public void writeValueToCache(CacheState state, CacheState.ThreadIndex thread) {
+
+        Integer key = state.keys[thread.next()];
+        state.write(key, key);
+    }
+
+    @Benchmark
+    public boolean existsInCache(CacheState state, CacheState.ThreadIndex thread) {
+        return state.exists(state.keys[thread.next()]);
+    }
+}
@@ -0,0 +1,162 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Random;
+
+/*
+The cache under test and the key sequence shared by every benchmark thread. Keys are boxed up front so the measured
+loop does not include autoboxing.
+
+The key space is twice the cache size, so the write benchmarks keep evicting, and about half of the reads miss.
+
+JMH only generates benchmarks for classes inside a package, while the caches live in the default package, which cannot
+be imported. So the Cache interface is bound once through method handles. Because the handles are static final, the JIT
+inlines them and the call costs the same as a direct interface call.
+ */
+@State(Scope.Benchmark)
+public class CacheState {
+
+    static final int SEQUENCE_LENGTH = 1 << 16;
+    static final int SEQUENCE_MASK = SEQUENCE_LENGTH - 1;
+
+    static final MethodHandle GET_VALUE_FROM_CACHE;
+    static final MethodHandle WRITE_VALUE_TO_CACHE;
+    static final MethodHandle EXISTS_IN_CACHE;
+    static final MethodHandle RESIZE_CONTAINER;
+
+    static {
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            final Class<?> cacheType = Class.forName("Cache");
+
+            GET_VALUE_FROM_CACHE = lookup.findVirtual(cacheType, "getValueFromCache",
+                    MethodType.methodType(Object.class, Object.class)).asType(
+                    MethodType.methodType(Object.class, Object.class, Object.class));
+            WRITE_VALUE_TO_CACHE = lookup.findVirtual(cacheType, "writeValueToCache",
+                    MethodType.methodType(void.class, Object.class, Object.class)).asType(
+                    MethodType.methodType(void.class, Object.class, Object.class, Object.class));
+            EXISTS_IN_CACHE = lookup.findVirtual(cacheType, "existsInCache",
+                    MethodType.methodType(boolean.class, Object.class)).asType(
+                    MethodType.methodType(boolean.class, Object.class, Object.class));
+            RESIZE_CONTAINER = lookup.findVirtual(cacheType, "resizeContainer",
+                    MethodType.methodType(void.class, long.class)).asType(
+                    MethodType.methodType(void.class, Object.class, long.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Param({"lru", "lru-buffered", "lru-slru", "lru-tinylfu", "lru-clock", "segmented"})
+    public String implementation;
+
+    @Param({"UNIFORM", "ZIPFIAN", "SCAN"})
+    public KeyDistribution distribution;
+
+    @Param({"1000"})
+    public int cacheSize;
+
+    Object cache;
+    Integer[] keys;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+
+        cache = newCache(implementation, cacheSize);
+        for (int i = 0; i < cacheSize; i++) {
+            write(i, i);
+        }
+
+        int[] sequence = distribution.generate(cacheSize * 2, SEQUENCE_LENGTH, new Random(42));
+        keys = new Integer[SEQUENCE_LENGTH];
+        for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+            keys[i] = sequence[i];
+        }
+    }
+
+    static Object newCache(String implementation, int cacheSize) throws ReflectiveOperationException {
+
+        switch (implementation) {
+            case "lru":
+                return Class.forName("LRUCache").getConstructor(long.class).newInstance(cacheSize);
+            case "lru-buffered":
+                Object builder = Class.forName("LRUCache").getMethod("newBuilder").invoke(null);
+                builder.getClass().getMethod("maximumSize", long.class).invoke(builder, cacheSize);
+                builder.getClass().getMethod("bufferWrites", boolean.class).invoke(builder, true);
+                return builder.getClass().getMethod("build").invoke(builder);
+            case "lru-slru":
+                return newCacheWithEvictionMode(cacheSize, "SEGMENTED_LRU");
+            case "lru-tinylfu":
+                return newCacheWithEvictionMode(cacheSize, "W_TINY_LFU");
+            case "lru-clock":
+                return newCacheWithEvictionMode(cacheSize, "CLOCK");
+            case "segmented":
+                return Class.forName("SegmentedLRUCache").getConstructor(long.class).newInstance(cacheSize);
+            default:
+                throw new IllegalArgumentException("Unknown cache implementation " + implementation);
+        }
+    }
+
+    static Object newCacheWithEvictionMode(int cacheSize, String mode) throws ReflectiveOperationException {
+
+        Class<?> evictionMode = Class.forName("EvictionMode");
+        Object builder = Class.forName("LRUCache").getMethod("newBuilder").invoke(null);
+        builder.getClass().getMethod("maximumSize", long.class).invoke(builder, cacheSize);
+        builder.getClass().getMethod("evictionMode", evictionMode).invoke(builder, evictionMode.getField(mode).get(null));
+        return builder.getClass().getMethod("build").invoke(builder);
+    }
+
+    // null on a miss
+    Integer read(Integer key) {
+
+        try {
+            return (Integer) (Object) GET_VALUE_FROM_CACHE.invokeExact(cache, (Object) key);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    void write(Integer key, Integer value) {
+
+        try {
+            WRITE_VALUE_TO_CACHE.invokeExact(cache, (Object) key, (Object) value);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    boolean exists(Integer key) {
+
+        try {
+            return (boolean) EXISTS_IN_CACHE.invokeExact(cache, (Object) key);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    void resize(long newSize) {
+
+        try {
+            RESIZE_CONTAINER.invokeExact(cache, newSize);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    // Each thread starts at its own random offset, so threads do not walk the sequence in lock step
+    @State(Scope.Thread)
+    public static class ThreadIndex {
+
+        int index = new Random().nextInt(SEQUENCE_LENGTH);
+
+        int next() {
+            return index++ & SEQUENCE_MASK;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+Generates the key sequences the benchmarks replay. The sequences are generated once up front, so that the measured
+loop is only an array read plus the cache call.
+
+1. uniform: every key in the key space is equally likely
+2. zipfian: a few keys are very hot, following a Zipf distribution with the usual 0.99 skew
+3. scan: keys are visited one after the other, which is the worst case for an LRU cache smaller than the key space
+ */
+public enum KeyDistribution {
+
+    UNIFORM {
+        @Override
+        int[] generate(int keySpace, int length, Random random) {
+
+            int[] sequence = new int[length];
+            for (int i = 0; i < length; i++) {
+                sequence[i] = random.nextInt(keySpace);
+            }
+            return sequence;
+        }
+    },
+
+    ZIPFIAN {
+        @Override
+        int[] generate(int keySpace, int length, Random random) {
+
+            // cumulative probability of the first i+1 ranks
+            double[] cumulative = new double[keySpace];
+            double sum = 0;
+            for (int rank = 0; rank < keySpace; rank++) {
+                sum += 1.0d / Math.pow(rank + 1, ZIPF_SKEW);
+                cumulative[rank] = sum;
+            }
+
+            int[] sequence = new int[length];
+            for (int i = 0; i < length; i++) {
+                int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+                sequence[i] = Math.min(rank < 0 ? -rank - 1 : rank, keySpace - 1);
+            }
+            return sequence;
+        }
+    },
+
+    SCAN {
+        @Override
+        int[] generate(int keySpace, int length, Random random) {
+
+            int[] sequence = new int[length];
+            for (int i = 0; i < length; i++) {
+                sequence[i] = i % keySpace;
+            }
+            return sequence;
+        }
+    };
+
+    static final double ZIPF_SKEW = 0.99d;
+
+    abstract int[] generate(int keySpace, int length, Random random);
+}
@@ -0,0 +1,130 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+LongLRUCache against LRUCache<Long, ...> on the same long keys. Unlike CacheState, the keys are kept as primitives, so
+the LRUCache side pays for boxing them on every call, just like its callers do. Run with -prof gc to see the
+allocation rate per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PrimitiveKeyBenchmark {
+
+    static final MethodHandle LONG_GET;
+    static final MethodHandle LONG_PUT;
+
+    static {
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            final Class<?> cacheType = Class.forName("LongLRUCache");
+
+            LONG_GET = lookup.findVirtual(cacheType, "getValueFromCache",
+                    MethodType.methodType(Object.class, long.class)).asType(
+                    MethodType.methodType(Object.class, Object.class, long.class));
+            LONG_PUT = lookup.findVirtual(cacheType, "writeValueToCache",
+                    MethodType.methodType(void.class, long.class, Object.class)).asType(
+                    MethodType.methodType(void.class, Object.class, long.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Param({"1000"})
+    public int cacheSize;
+
+    Object longCache;
+    Object boxedCache;
+    long[] keys;
+    int index;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+
+        longCache = Class.forName("LongLRUCache").getConstructor(int.class).newInstance(cacheSize);
+        boxedCache = Class.forName("LRUCache").getConstructor(long.class).newInstance((long) cacheSize);
+
+        // IDs spread like database keys, twice as many as fit
+        final Random random = new Random(42);
+        keys = new long[CacheState.SEQUENCE_LENGTH];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = 1_000_000_000L + random.nextInt(cacheSize * 2) * 7919L;
+        }
+        for (long key : keys) {
+            putLong(key);
+            putBoxed(key);
+        }
+    }
+
+    @Benchmark
+    public Object longGet() {
+
+        try {
+            return LONG_GET.invokeExact(longCache, nextKey());
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Benchmark
+    public void longPut() {
+        putLong(nextKey());
+    }
+
+    @Benchmark
+    public Object boxedGet() {
+
+        try {
+            return CacheState.GET_VALUE_FROM_CACHE.invokeExact(boxedCache, (Object) Long.valueOf(nextKey()));
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Benchmark
+    public void boxedPut() {
+        putBoxed(nextKey());
+    }
+
+    private long nextKey() {
+        return keys[index++ & CacheState.SEQUENCE_MASK];
+    }
+
+    private void putLong(long key) {
+
+        try {
+            LONG_PUT.invokeExact(longCache, key, (Object) Boolean.TRUE);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private void putBoxed(long key) {
+
+        try {
+            CacheState.WRITE_VALUE_TO_CACHE.invokeExact(boxedCache, (Object) Long.valueOf(key), (Object) Boolean.TRUE);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+}
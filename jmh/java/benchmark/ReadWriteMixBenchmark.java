@@ -0,0 +1,44 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+Reads and writes interleaved on the same cache, in the proportion given by readPercentage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadWriteMixBenchmark {
+
+    @Param({"100", "95", "50"})
+    public int readPercentage;
+
+    @Benchmark
+    public Integer readWrite(CacheState state, CacheState.ThreadIndex thread) {
+
+        final int next = thread.next();
+        final Integer key = state.keys[next];
+
+        // the key sequence is random (or sequential for SCAN), so use a cheap hash of the position to pick the operation
+        if ((next * 0x9E3779B9 >>> 1) % 100 < readPercentage) {
+            return state.read(key);
+        }
+
+        state.write(key, key);
+        return key;
+    }
+}
@@ -0,0 +1,51 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+One thread keeps shrinking the cache to half its size and growing it back, while three threads keep writing so that
+every shrink has entries to evict. Scores are reported separately for the resizing thread and the writers, which shows
+how much a resize stalls the rest of the traffic.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResizeBenchmark {
+
+    @State(Scope.Thread)
+    public static class Toggle {
+        boolean shrink = true;
+    }
+
+    @Benchmark
+    @Group("resizeUnderLoad")
+    @GroupThreads(1)
+    public void resizeContainer(CacheState state, Toggle toggle) {
+
+        state.resize(toggle.shrink ? state.cacheSize / 2 : state.cacheSize);
+        toggle.shrink = !toggle.shrink;
+    }
+
+    @Benchmark
+    @Group("resizeUnderLoad")
+    @GroupThreads(3)
+    public void writeValueToCache(CacheState state, CacheState.ThreadIndex thread) {
+
+        Integer key = state.keys[thread.next()];
+        state.write(key, key);
+    }
+}
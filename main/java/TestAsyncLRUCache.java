@@ -0,0 +1,94 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestAsyncLRUCache {
+
+    final static int CACHE_SIZE = 10;
+
+    @Test
+    public void testLookupDoesNotWaitForLoad() throws Exception {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger loads = new AtomicInteger();
+        AsyncLRUCache<String, Integer> testCache = new AsyncLRUCache<String, Integer>(CACHE_SIZE);
+
+        CompletableFuture<Integer> first = testCache.get("KEY_1", key -> {
+            loads.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 1;
+        });
+
+        // the load is still blocked, yet both lookups come straight back with the same future
+        Assert.assertTrue(!first.isDone());
+        Assert.assertSame(first, testCache.getIfPresent("KEY_1"));
+        Assert.assertSame(first, testCache.get("KEY_1", key -> 2));
+        Assert.assertEquals("In-flight load not counted", 1, testCache.getCacheSize());
+
+        release.countDown();
+        Assert.assertEquals(Integer.valueOf(1), first.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testFailedLoadIsRemoved() throws Exception {
+
+        AsyncLRUCache<String, Integer> testCache = new AsyncLRUCache<String, Integer>(CACHE_SIZE, Runnable::run);
+        CompletableFuture<Integer> failed = testCache.get("KEY_1", key -> {
+            throw new IllegalStateException("backend down");
+        });
+
+        try {
+            failed.join();
+            Assert.fail("Failure was swallowed");
+        } catch (CompletionException ce) {
+            Assert.assertTrue(ce.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertNull("Failed future still cached", testCache.getIfPresent("KEY_1"));
+
+        Assert.assertEquals(Integer.valueOf(3), testCache.get("KEY_1", key -> 3).get());
+        Assert.assertTrue(testCache.existsInCache("KEY_1"));
+    }
+
+    @Test
+    public void testNewerFutureSurvivesOlderFailure() {
+
+        AsyncLRUCache<String, Integer> testCache = new AsyncLRUCache<String, Integer>(CACHE_SIZE);
+        CompletableFuture<Integer> older = new CompletableFuture<Integer>();
+        testCache.put("KEY_1", older);
+        testCache.put("KEY_1", 5);
+
+        older.completeExceptionally(new IllegalStateException());
+        Assert.assertEquals(Integer.valueOf(5), testCache.getIfPresent("KEY_1").join());
+    }
+
+    @Test
+    public void testInFlightLoadsCountTowardsCapacity() {
+
+        AsyncLRUCache<Integer, Integer> testCache = new AsyncLRUCache<Integer, Integer>(CACHE_SIZE);
+        for (int i = 0; i < CACHE_SIZE * 2; i++) {
+            testCache.put(i, new CompletableFuture<Integer>());
+        }
+
+        Assert.assertEquals(CACHE_SIZE, testCache.getCacheSize());
+        Assert.assertTrue(!testCache.existsInCache(0));
+    }
+
+    @Test
+    public void testDefaultExecutorIsShared() {
+
+        Assert.assertSame("Every cache got an executor of its own", AsyncLRUCache.defaultExecutor(),
+                AsyncLRUCache.defaultExecutor());
+        Assert.assertSame(new AsyncLRUCache<Integer, Integer>(CACHE_SIZE).executor,
+                new AsyncLRUCache<Integer, Integer>(CACHE_SIZE).executor);
+    }
+}
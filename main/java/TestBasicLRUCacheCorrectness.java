@@ -12,7 +12,7 @@ public class TestBasicLRUCacheCorrectness {
     Logger log = Logger.getLogger("TestBasicLRUCacheCorrectness.class");
 
     final static int VALID_LRU_CACHE_SIZE = 40;
-    final static int LRU_CACHE_SIZE_BAD = LRUCache.MAX_CACHE_SIZE + 1;
+    final static int LRU_CACHE_SIZE_BAD = 0;
     final static String KEY_STRING_1="KEY_1";
     final static String KEY_STRING_2="KEY_2";
 
@@ -119,6 +119,21 @@ public class TestBasicLRUCacheCorrectness {
         Assert.assertEquals("Incorrect size returned", 2, testCache.getCacheSize());
     }
 
+    @Test
+    public void testOverwriteReusesNode() {
+
+        LRUCache<String,Double> testCache = new LRUCache<String,Double>(TestBasicLRUCacheCorrectness.VALID_LRU_CACHE_SIZE);
+        testCache.writeValueToCache(KEY_STRING_1, VAL_1);
+        LRUCache.Node<String, Double> original = testCache.getOrderedList().getHead();
+
+        testCache.writeValueToCache(KEY_STRING_2, VAL_2);
+        testCache.writeValueToCache(KEY_STRING_1, VAL_2);
+
+        Assert.assertSame("Overwriting a key replaced its node", original, testCache.getOrderedList().getHead());
+        Assert.assertSame("The node is not its own entry", original, original.getEntry());
+        Assert.assertEquals("The node does not hold the new value", VAL_2, original.getValue());
+    }
+
     @Test
     public void testSizeLimitEnforced() {
 
@@ -158,6 +173,22 @@ public class TestBasicLRUCacheCorrectness {
         }
     }
 
+    @Test
+    public void testReadPromotesEntry() {
+
+        LRUCache<String,Double> testCache = new LRUCache<String,Double>(2);
+        testCache.writeValueToCache(KEY_STRING_1, VAL_1);
+        testCache.writeValueToCache(KEY_STRING_2, VAL_2);
+
+        Assert.assertEquals("Read returned the wrong value", VAL_1, testCache.getValueFromCache(KEY_STRING_1));
+        Assert.assertEquals("A read did not move the entry to the head", 0, testCache.getPriorityInCacheOfObject(KEY_STRING_1));
+
+        // KEY_STRING_2 is now the least recently used, so it is the one to go
+        testCache.writeValueToCache("KEY_3", VAL_2);
+        Assert.assertTrue("Recently read entry was evicted", testCache.existsInCache(KEY_STRING_1));
+        Assert.assertTrue("Least recently used entry still present", !testCache.existsInCache(KEY_STRING_2));
+    }
+
     @Test
     public void testRewriteAtSizeLimit() {
 
@@ -169,4 +200,21 @@ public class TestBasicLRUCacheCorrectness {
 
         LRUCache<String,Double> testCache = new LRUCache<String,Double>(TestBasicLRUCacheCorrectness.VALID_LRU_CACHE_SIZE);
     }
+
+    @Test
+    public void testInvalidate() {
+
+        LRUCache<String, Double> testCache = new LRUCache<String, Double>(VALID_LRU_CACHE_SIZE);
+        testCache.writeValueToCache(KEY_STRING_1, VAL_1);
+        testCache.writeValueToCache(KEY_STRING_2, VAL_2);
+
+        Assert.assertTrue("Removed despite a different value", !testCache.remove(KEY_STRING_1, VAL_2));
+        Assert.assertTrue(testCache.remove(KEY_STRING_1, VAL_1));
+        testCache.invalidate(KEY_STRING_2);
+        testCache.invalidate("NO_SUCH_KEY");
+
+        Assert.assertEquals(0, testCache.getCacheSize());
+        Assert.assertNull(testCache.getOrderedList().getHead());
+        Assert.assertNull(testCache.getOrderedList().getTail());
+    }
 }
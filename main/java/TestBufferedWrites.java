@@ -0,0 +1,86 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exercises the write-buffer mode, where list updates are applied in batches after the hashmap has been updated.
+ */
+public class TestBufferedWrites {
+
+    private static LRUCache<String, Double> newBufferedCache(int size) {
+        return LRUCache.<String, Double>newBuilder().maximumSize(size).bufferWrites(true).build();
+    }
+
+    @Test
+    public void testWriteVisibleImmediately() {
+
+        LRUCache<String, Double> testCache = newBufferedCache(10);
+        testCache.writeValueToCache("KEY_1", 45d);
+        Assert.assertTrue(testCache.existsInCache("KEY_1", 45d));
+
+        testCache.writeValueToCache("KEY_1", 46d);
+        Assert.assertEquals("The returned value is not correct", Double.valueOf(46), testCache.getValueFromCache("KEY_1"));
+        Assert.assertEquals("Incorrect size returned", 1, testCache.getCacheSize());
+    }
+
+    @Test
+    public void testOrderAndSizeLimitAfterDrain() {
+
+        final int CACHE_SIZE = 5;
+        LRUCache<String, Double> testCache = newBufferedCache(CACHE_SIZE);
+        for (int i = 0; i < CACHE_SIZE * 3; i++) {
+            testCache.writeValueToCache("key_" + i, Double.valueOf(i));
+        }
+
+        Assert.assertEquals("Size limit not enforced", CACHE_SIZE, testCache.getCacheSize());
+        Assert.assertEquals("Most recent write is not at the head", 0, testCache.getPriorityInCacheOfObject("key_" + (CACHE_SIZE * 3 - 1)));
+        Assert.assertTrue("Least recently used item still present", !testCache.existsInCache("key_0"));
+
+        // rewriting the tail entry moves it to the front
+        final String tailKey = "key_" + (CACHE_SIZE * 2);
+        testCache.writeValueToCache(tailKey, 0d);
+        Assert.assertEquals("Rewritten entry not promoted", 0, testCache.getPriorityInCacheOfObject(tailKey));
+        TestMultithreadedLRU.detectLoop(testCache, CACHE_SIZE);
+    }
+
+    @Test
+    public void testConcurrentBufferedWriters() throws Exception {
+
+        final int CACHE_SIZE = 12;
+        final int CLIENTS = 16;
+        final int WRITES_PER_CLIENT = 10000;
+
+        final LRUCache<String, Double> testCache = newBufferedCache(CACHE_SIZE);
+        ExecutorService execService = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<?>> futureList = new ArrayList<Future<?>>();
+        for (int c = 0; c < CLIENTS; c++) {
+
+            final int clientId = c;
+            futureList.add(execService.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < WRITES_PER_CLIENT; i++) {
+                        testCache.writeValueToCache("client_" + clientId + "_" + (i % 50), Double.valueOf(i));
+                    }
+                }
+            }));
+        }
+
+        execService.shutdown();
+        Assert.assertTrue(execService.awaitTermination(30, TimeUnit.SECONDS));
+        for (Future<?> f : futureList) {
+            f.get();
+        }
+
+        Assert.assertEquals("Incorrect cache size detected", CACHE_SIZE, testCache.getCacheSize());
+        Assert.assertEquals("List and map diverged", CACHE_SIZE, testCache.getOrderedList().getCurrentSize());
+        TestMultithreadedLRU.detectLoop(testCache, CACHE_SIZE);
+        testCache.toString();
+    }
+}
@@ -0,0 +1,115 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TestBulkOperations {
+
+    final static int CACHE_SIZE = 10;
+
+    @Test
+    public void testGetAllPromotesHits() {
+
+        LRUCache<String, Integer> testCache = new LRUCache<String, Integer>(CACHE_SIZE);
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            testCache.writeValueToCache("KEY_" + i, i);
+        }
+
+        Map<String, Integer> present = testCache.getAll(Arrays.asList("KEY_1", "NO_SUCH_KEY", "KEY_0"));
+        Assert.assertEquals(Arrays.asList("KEY_1", "KEY_0"), Arrays.asList(present.keySet().toArray()));
+        Assert.assertEquals(Integer.valueOf(0), present.get("KEY_0"));
+
+        // both hits are now more recent than everything else, so the next two inserts evict KEY_2 and KEY_3
+        testCache.writeValueToCache("KEY_10", 10);
+        testCache.writeValueToCache("KEY_11", 11);
+        Assert.assertTrue(testCache.existsInCache("KEY_0"));
+        Assert.assertTrue(testCache.existsInCache("KEY_1"));
+        Assert.assertTrue(!testCache.existsInCache("KEY_2"));
+        Assert.assertTrue(!testCache.existsInCache("KEY_3"));
+    }
+
+    @Test
+    public void testPutAllEvictsOnce() {
+
+        LRUCache<Integer, Integer> testCache = LRUCache.<Integer, Integer>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .recordStats()
+                .build();
+
+        Map<Integer, Integer> batch = new LinkedHashMap<Integer, Integer>();
+        for (int i = 0; i < CACHE_SIZE * 3; i++) {
+            batch.put(i, i);
+        }
+        testCache.putAll(batch);
+
+        Assert.assertEquals(CACHE_SIZE, testCache.getCacheSize());
+        Assert.assertEquals(Integer.valueOf(CACHE_SIZE * 3 - 1), testCache.getOrderedList().getHead().getKey());
+        Assert.assertEquals(Integer.valueOf(CACHE_SIZE * 2), testCache.getOrderedList().getTail().getKey());
+        Assert.assertEquals(CACHE_SIZE * 2, testCache.getStats().getSizeEvictionCount());
+
+        try {
+            testCache.putAll(Collections.singletonMap(-1, (Integer) null));
+            Assert.fail("Wrote a null value");
+        } catch (RuntimeException rte) {
+            // expected
+        }
+        Assert.assertTrue(!testCache.existsInCache(-1));
+    }
+
+    @Test
+    public void testSegmentedBatches() {
+
+        SegmentedLRUCache<Integer, Integer> testCache = new SegmentedLRUCache<Integer, Integer>(CACHE_SIZE * 8, 4);
+        Map<Integer, Integer> batch = new LinkedHashMap<Integer, Integer>();
+        for (int i = 0; i < CACHE_SIZE * 4; i++) {
+            batch.put(i, i * 2);
+        }
+        testCache.putAll(batch);
+
+        List<Integer> keys = Arrays.asList(7, 1000, 3, 0);
+        Map<Integer, Integer> present = testCache.getAll(keys);
+        Assert.assertEquals(Arrays.asList(7, 3, 0), Arrays.asList(present.keySet().toArray()));
+        Assert.assertEquals(Integer.valueOf(14), present.get(7));
+
+        // one bad value rejects the batch before any segment sees it, even when its segment is the last to be written
+        Map<Integer, Integer> badBatch = new LinkedHashMap<Integer, Integer>();
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            badBatch.put(-1 - i, i);
+        }
+        int badKey = -1 - CACHE_SIZE;
+        while (testCache.segmentIndexFor(badKey) != testCache.getSegmentCount() - 1) {
+            badKey--;
+        }
+        badBatch.put(badKey, null);
+        try {
+            testCache.putAll(badBatch);
+            Assert.fail("Wrote a null value");
+        } catch (RuntimeException rte) {
+            // expected
+        }
+        for (Integer key : badBatch.keySet()) {
+            Assert.assertTrue("Half of a rejected batch was written", !testCache.existsInCache(key));
+        }
+    }
+
+    @Test
+    public void testOffHeapBatches() {
+
+        OffHeapLRUCache<Integer, String> testCache = new OffHeapLRUCache<Integer, String>(CACHE_SIZE, Codecs.STRING,
+                OffHeapStore.SLAB_SIZE);
+        Map<Integer, String> batch = new LinkedHashMap<Integer, String>();
+        for (int i = 0; i < CACHE_SIZE * 2; i++) {
+            batch.put(i, "value " + i);
+        }
+        testCache.putAll(batch);
+
+        Assert.assertEquals(CACHE_SIZE, testCache.getCacheSize());
+        Assert.assertEquals("value 19", testCache.getAll(Arrays.asList(19, 0)).get(19));
+        Assert.assertEquals(CACHE_SIZE * OffHeapStore.chunkSize(OffHeapStore.sizeClassOf(10)),
+                testCache.getOffHeapStore().getUsedBytes());
+    }
+}
@@ -0,0 +1,88 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCacheStats {
+
+    final static int CACHE_SIZE = 10;
+
+    @Test
+    public void testCountsOperations() {
+
+        LRUCache<String, Double> testCache = LRUCache.<String, Double>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .recordStats()
+                .build();
+
+        for (int i = 0; i < CACHE_SIZE + 5; i++) {
+            testCache.writeValueToCache("KEY_" + i, Double.valueOf(i));
+        }
+        testCache.writeValueToCache("KEY_14", Double.valueOf(-1));
+        testCache.getValueFromCache("KEY_14");
+        testCache.getValueFromCache("KEY_13");
+        Assert.assertNull("Evicted key still readable", testCache.getValueFromCache("KEY_0"));
+        testCache.resizeContainer(CACHE_SIZE - 2);
+
+        CacheStats stats = testCache.getStats();
+        Assert.assertEquals(CACHE_SIZE + 5, stats.getPutCount());
+        Assert.assertEquals(1, stats.getUpdateCount());
+        Assert.assertEquals(2, stats.getHitCount());
+        Assert.assertEquals(1, stats.getMissCount());
+        Assert.assertEquals(2.0 / 3, stats.getHitRate(), 0.0001);
+        Assert.assertEquals(5, stats.getSizeEvictionCount());
+        Assert.assertEquals(0, stats.getWeightEvictionCount());
+        Assert.assertEquals(2, stats.getResizeEvictionCount());
+        Assert.assertEquals(1, stats.getResizeCount());
+        Assert.assertTrue("Write time not recorded", stats.getTotalWriteTime() > 0);
+    }
+
+    @Test
+    public void testWeightEvictionsAndSegments() {
+
+        SegmentedLRUCache<Integer, String> testCache = LRUCache.<Integer, String>newBuilder()
+                .maximumWeight(CACHE_SIZE * 4)
+                .weigher((key, value) -> value.length())
+                .recordStats()
+                .buildSegmented(4);
+
+        for (int i = 0; i < 100; i++) {
+            testCache.writeValueToCache(i, "xx");
+        }
+
+        CacheStats stats = testCache.getStats();
+        Assert.assertEquals(100, stats.getPutCount());
+        Assert.assertEquals(0, stats.getSizeEvictionCount());
+        Assert.assertEquals(100 - testCache.getCacheSize(), stats.getWeightEvictionCount());
+        Assert.assertEquals(stats.getWeightEvictionCount(), stats.getEvictionCount());
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+
+        LRUCache<String, Double> testCache = new LRUCache<String, Double>(CACHE_SIZE);
+        testCache.writeValueToCache("KEY_1", 1.0);
+        testCache.getValueFromCache("KEY_1");
+
+        Assert.assertEquals(0, testCache.getStats().getRequestCount());
+        Assert.assertEquals(0, testCache.getStats().getPutCount());
+        Assert.assertSame(StatsCounter.DISABLED, testCache.statsCounter);
+    }
+
+    @Test
+    public void testSnapshotDifference() {
+
+        LRUCache<String, Double> testCache = LRUCache.<String, Double>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .recordStats()
+                .bufferWrites(true)
+                .build();
+
+        testCache.writeValueToCache("KEY_1", 1.0);
+        CacheStats before = testCache.getStats();
+        testCache.writeValueToCache("KEY_1", 2.0);
+        testCache.writeValueToCache("KEY_2", 2.0);
+
+        CacheStats interval = testCache.getStats().minus(before);
+        Assert.assertEquals(1, interval.getPutCount());
+        Assert.assertEquals(1, interval.getUpdateCount());
+    }
+}
@@ -0,0 +1,242 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestCacheWriter {
+
+    final static int CACHE_SIZE = 10;
+
+    final AtomicLong time = new AtomicLong(1000);
+
+    // flushes only run when the test says so
+    final List<Runnable> pendingFlushes = new ArrayList<Runnable>();
+
+    // records every batch the backend was handed
+    final List<Map<String, Integer>> batches = new ArrayList<Map<String, Integer>>();
+    final CacheWriter<String, Integer> backend = new CacheWriter<String, Integer>() {
+        public void write(String key, Integer value) {
+            writeAll(Collections.singletonMap(key, value));
+        }
+
+        public void writeAll(Map<String, Integer> entries) {
+            batches.add(new LinkedHashMap<String, Integer>(entries));
+        }
+    };
+
+    private LRUCache<String, Integer> newWriteBackCache(CacheWriter<String, Integer> writer) {
+
+        return LRUCache.<String, Integer>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .writeBack(writer, 1, TimeUnit.SECONDS)
+                .writeBackExecutor(pendingFlushes::add)
+                .ticker(time::get)
+                .build();
+    }
+
+    private void runPendingFlushes() {
+
+        while (!pendingFlushes.isEmpty()) {
+            pendingFlushes.remove(0).run();
+        }
+    }
+
+    @Test
+    public void testWriteThrough() {
+
+        LRUCache<String, Integer> testCache = LRUCache.<String, Integer>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .writeThrough((key, value) -> {
+                    if (value < 0) {
+                        throw new IllegalArgumentException("backend rejected " + value);
+                    }
+                    batches.add(Collections.singletonMap(key, value));
+                })
+                .build();
+
+        testCache.writeValueToCache("KEY", 1);
+        Assert.assertEquals(1, batches.size());
+
+        try {
+            testCache.writeValueToCache("KEY", -1);
+            Assert.fail("Backend failure was swallowed");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+        Assert.assertEquals("Rejected write made it into the cache", Integer.valueOf(1), testCache.getValueFromCache("KEY"));
+
+        // loaded values came from the backend, they are not written back to it
+        Assert.assertEquals(Integer.valueOf(2), testCache.get("LOADED", key -> 2));
+        Assert.assertEquals(1, batches.size());
+    }
+
+    @Test
+    public void testWriteBackCoalescesOnSchedule() {
+
+        LRUCache<String, Integer> testCache = newWriteBackCache(backend);
+        for (int i = 0; i < 100; i++) {
+            testCache.writeValueToCache("KEY_" + (i % 3), i);
+        }
+        Assert.assertTrue("Flushed before the interval", pendingFlushes.isEmpty());
+
+        time.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        testCache.writeValueToCache("KEY_0", 100);
+        runPendingFlushes();
+
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+        expected.put("KEY_0", 100);
+        expected.put("KEY_1", 97);
+        expected.put("KEY_2", 98);
+        Assert.assertEquals("Repeated writes were not collapsed", 1, batches.size());
+        Assert.assertEquals(expected, batches.get(0));
+        Assert.assertEquals(0, testCache.flush());
+    }
+
+    @Test
+    public void testWriteBackFlushesEvictedEntries() {
+
+        LRUCache<String, Integer> testCache = newWriteBackCache(backend);
+        for (int i = 0; i < CACHE_SIZE + 2; i++) {
+            testCache.writeValueToCache("KEY_" + i, i);
+        }
+        testCache.invalidate("KEY_5");
+
+        Assert.assertEquals("Eviction did not trigger a flush", 1, pendingFlushes.size());
+        runPendingFlushes();
+        Assert.assertEquals("Everything dirty goes in the same batch", CACHE_SIZE + 2, batches.get(0).size());
+        Assert.assertEquals(Integer.valueOf(0), batches.get(0).get("KEY_0"));
+        Assert.assertEquals(Integer.valueOf(5), batches.get(0).get("KEY_5"));
+    }
+
+    @Test
+    public void testFailedFlushIsRetried() {
+
+        final boolean[] backendDown = {true};
+        LRUCache<String, Integer> testCache = newWriteBackCache(new CacheWriter<String, Integer>() {
+            public void write(String key, Integer value) {
+                if (backendDown[0]) {
+                    throw new IllegalStateException("backend down");
+                }
+                batches.add(Collections.singletonMap(key, value));
+            }
+        });
+
+        testCache.writeValueToCache("KEY_1", 1);
+        try {
+            testCache.flush();
+            Assert.fail("Backend failure was swallowed");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+
+        testCache.writeValueToCache("KEY_2", 2);
+        backendDown[0] = false;
+        Assert.assertEquals(2, testCache.flush());
+        Assert.assertEquals(2, batches.size());
+    }
+
+    @Test
+    public void testRefreshDoesNotOverwriteDirtyValue() {
+
+        LRUCache<String, Integer> testCache = LRUCache.<String, Integer>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .writeBack(backend, 1, TimeUnit.HOURS)
+                .writeBackExecutor(pendingFlushes::add)
+                .refreshAfterWrite(1, TimeUnit.SECONDS, key -> -1)
+                .refreshExecutor(Runnable::run)
+                .ticker(time::get)
+                .build();
+
+        testCache.writeValueToCache("KEY", 1);
+        time.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        testCache.getValueFromCache("KEY");
+        Assert.assertEquals(Integer.valueOf(1), testCache.getValueFromCache("KEY"));
+
+        testCache.flush();
+        time.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        testCache.getValueFromCache("KEY");
+        Assert.assertEquals(Integer.valueOf(-1), testCache.getValueFromCache("KEY"));
+        Assert.assertEquals("Refreshed value was written back", 1, batches.size());
+    }
+
+    @Test
+    public void testRacingBufferedWritersLeaveTheNewestValueInTheBackend() {
+
+        final Map<String, Integer> backendState = new ConcurrentHashMap<String, Integer>();
+        final List<LRUCache<String, Integer>> cacheHolder = new ArrayList<LRUCache<String, Integer>>();
+
+        /*
+        Stands in for a second writer: the moment the first writer has built its new node, but before it can publish
+        it, another write of the same key gets in and publishes a node of its own.
+         */
+        final Expiry<String, Integer> racingWriter = new Expiry<String, Integer>() {
+            public long expireAfterCreate(String key, Integer value, long currentTime) {
+                if (value == 1) {
+                    cacheHolder.get(0).writeValueToCache(key, 2);
+                }
+                return Long.MAX_VALUE;
+            }
+
+            public long expireAfterUpdate(String key, Integer value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+
+            public long expireAfterRead(String key, Integer value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+        };
+        LRUCache<String, Integer> testCache = LRUCache.<String, Integer>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .bufferWrites(true)
+                .expireAfter(racingWriter)
+                .writeBack(new CacheWriter<String, Integer>() {
+                    public void write(String key, Integer value) {
+                        backendState.put(key, value);
+                    }
+                }, 1, TimeUnit.HOURS)
+                .writeBackExecutor(pendingFlushes::add)
+                .ticker(time::get)
+                .build();
+        cacheHolder.add(testCache);
+
+        // the losing writer goes around and writes 1 over the winner's 2, then a third write lands on top
+        testCache.writeValueToCache("KEY", 1);
+        Assert.assertEquals(Integer.valueOf(1), testCache.getValueFromCache("KEY"));
+        testCache.writeValueToCache("KEY", 3);
+
+        testCache.flush();
+        Assert.assertEquals("The node that lost the race was flushed over the newest value", Integer.valueOf(3),
+                backendState.get("KEY"));
+    }
+
+    @Test
+    public void testIdleCacheStillFlushes() throws Exception {
+
+        final Map<String, Integer> backendState = new ConcurrentHashMap<String, Integer>();
+        LRUCache<String, Integer> testCache = LRUCache.<String, Integer>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .writeBack(new CacheWriter<String, Integer>() {
+                    public void write(String key, Integer value) {
+                        backendState.put(key, value);
+                    }
+                }, 10, TimeUnit.MILLISECONDS)
+                .build();
+
+        testCache.writeValueToCache("KEY", 1);
+
+        // nothing touches the cache from here on, the timer has to notice the interval passed
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!backendState.containsKey("KEY") && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals("An idle cache never flushed", Integer.valueOf(1), backendState.get("KEY"));
+    }
+}
@@ -0,0 +1,99 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class TestClockPolicy {
+
+    final static int CACHE_SIZE = 10;
+
+    @Test
+    public void testReferencedEntriesGetASecondChance() {
+
+        LRUCache<Integer, Integer> testCache = newCache(CACHE_SIZE);
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            testCache.writeValueToCache(i, i);
+        }
+
+        // a hit only sets the bit, nothing is queued for the lock
+        testCache.getValueFromCache(0);
+        testCache.getValueFromCache(1);
+        Assert.assertTrue(testCache.entrySet.get(0).referenced);
+
+        testCache.writeValueToCache(100, 100);
+        Assert.assertTrue("Referenced entry was evicted", testCache.existsInCache(0));
+        Assert.assertTrue("Referenced entry was evicted", testCache.existsInCache(1));
+        Assert.assertTrue("Oldest unreferenced entry was kept", !testCache.existsInCache(2));
+        Assert.assertTrue("The hand did not clear the bit", !testCache.entrySet.get(0).referenced);
+    }
+
+    @Test
+    public void testSlotsAreReusedAndGrow() {
+
+        LRUCache<Integer, Integer> testCache = newCache(ClockPolicy.INITIAL_CAPACITY * 4);
+        for (int i = 0; i < ClockPolicy.INITIAL_CAPACITY * 20; i++) {
+            testCache.writeValueToCache(i, i);
+        }
+        testCache.invalidate(ClockPolicy.INITIAL_CAPACITY * 20 - 1);
+
+        ClockPolicy<Integer, Integer> clock = (ClockPolicy<Integer, Integer>) testCache.policy;
+        // a new entry is linked before the one it replaces is evicted, so the clock needs one slot more than the size
+        Assert.assertEquals("The clock kept growing", ClockPolicy.INITIAL_CAPACITY * 8, clock.slots.length);
+        Assert.assertEquals(ClockPolicy.INITIAL_CAPACITY * 4 - 1, testCache.getCacheSize());
+        Assert.assertEquals("Slots leaked", clock.highWaterMark, clock.freeSlotCount + testCache.getCacheSize());
+
+        testCache.resizeContainer(5);
+        Assert.assertEquals(5, testCache.getCacheSize());
+        Assert.assertEquals(0, testCache.getPriorityInCacheOfObject(ClockPolicy.INITIAL_CAPACITY * 20 - 2));
+
+        // the hand no longer sweeps the slots the shrink emptied
+        Assert.assertTrue("The sweep bound did not come down: " + clock.highWaterMark,
+                clock.highWaterMark <= ClockPolicy.INITIAL_CAPACITY);
+        Assert.assertEquals("Slots leaked", clock.highWaterMark, clock.freeSlotCount + testCache.getCacheSize());
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            testCache.writeValueToCache(-1 - i, i);
+        }
+        Assert.assertEquals(5, testCache.getCacheSize());
+        Assert.assertEquals(0, testCache.getPriorityInCacheOfObject(-CACHE_SIZE));
+    }
+
+    @Test
+    public void testConcurrentReadersAndWriters() throws Exception {
+
+        final LRUCache<Integer, Integer> testCache = newCache(CACHE_SIZE * 10);
+        ExecutorService execService = Executors.newFixedThreadPool(8);
+        List<Future<?>> futureList = new ArrayList<Future<?>>();
+        for (int c = 0; c < 8; c++) {
+            final boolean writer = (c % 2 == 0);
+            futureList.add(execService.submit(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    if (writer) {
+                        testCache.writeValueToCache(i % (CACHE_SIZE * 30), i);
+                    } else {
+                        testCache.getValueFromCache(i % (CACHE_SIZE * 30));
+                    }
+                }
+            }));
+        }
+        execService.shutdown();
+        execService.awaitTermination(30, TimeUnit.SECONDS);
+        for (Future<?> f : futureList) {
+            f.get();
+        }
+
+        Assert.assertEquals(CACHE_SIZE * 10, testCache.getCacheSize());
+        Assert.assertEquals(CACHE_SIZE * 10, testCache.policy.getCurrentSize());
+    }
+
+    private static LRUCache<Integer, Integer> newCache(int size) {
+        return LRUCache.<Integer, Integer>newBuilder()
+                .maximumSize(size)
+                .evictionMode(EvictionMode.CLOCK)
+                .build();
+    }
+}
@@ -0,0 +1,214 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestExpiration {
+
+    final static int CACHE_SIZE = 100;
+
+    // a little over one level-0 bucket of the timer wheel, so that reclaiming is guaranteed to have run
+    final static long WHEEL_TICK = TimerWheel.SPANS[0] + 1;
+
+    final AtomicLong time = new AtomicLong(1000);
+    final Ticker ticker = time::get;
+
+    @Test
+    public void testExpireAfterWrite() {
+
+        LRUCache<String, String> testCache = LRUCache.<String, String>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .expireAfterWrite(10, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .build();
+
+        testCache.writeValueToCache("KEY_1", "value");
+        time.addAndGet(TimeUnit.SECONDS.toNanos(9));
+        Assert.assertEquals("value", testCache.getValueFromCache("KEY_1"));
+
+        // reading does not extend the lifetime, rewriting does
+        testCache.writeValueToCache("KEY_2", "value");
+        time.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        Assert.assertNull("Entry outlived its write", testCache.getValueFromCache("KEY_1"));
+        Assert.assertTrue(!testCache.existsInCache("KEY_1"));
+        Assert.assertTrue(testCache.existsInCache("KEY_2", "value"));
+
+        time.addAndGet(TimeUnit.SECONDS.toNanos(8));
+        testCache.writeValueToCache("KEY_2", "updated");
+        time.addAndGet(TimeUnit.SECONDS.toNanos(8));
+        Assert.assertEquals("updated", testCache.getValueFromCache("KEY_2"));
+    }
+
+    @Test
+    public void testExpireAfterAccess() {
+
+        LRUCache<String, String> testCache = LRUCache.<String, String>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .expireAfterAccess(10, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .build();
+
+        testCache.writeValueToCache("READ", "value");
+        testCache.writeValueToCache("IDLE", "value");
+        for (int i = 0; i < 5; i++) {
+            time.addAndGet(TimeUnit.SECONDS.toNanos(5));
+            Assert.assertEquals("Read did not extend the lifetime", "value", testCache.getValueFromCache("READ"));
+        }
+
+        Assert.assertNull(testCache.getValueFromCache("IDLE"));
+        Assert.assertEquals(1, testCache.getCacheSize());
+    }
+
+    @Test
+    public void testExpiredEntriesAreReclaimed() {
+
+        LRUCache<Integer, String> testCache = LRUCache.<Integer, String>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+
+        for (int i = 0; i < CACHE_SIZE / 2; i++) {
+            testCache.writeValueToCache(i, "value");
+        }
+        time.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        for (int i = CACHE_SIZE / 2; i < CACHE_SIZE; i++) {
+            testCache.writeValueToCache(i, "value");
+        }
+
+        time.addAndGet(TimeUnit.SECONDS.toNanos(30) + WHEEL_TICK);
+        Assert.assertEquals("First half not reclaimed", CACHE_SIZE / 2, testCache.getCacheSize());
+        Assert.assertEquals(CACHE_SIZE / 2, testCache.getStats().getExpiryEvictionCount());
+        Assert.assertEquals(0, testCache.getStats().getSizeEvictionCount());
+        Assert.assertEquals(CACHE_SIZE / 2, testCache.getWeightedSize());
+
+        time.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        Assert.assertEquals(0, testCache.getCacheSize());
+        Assert.assertEquals(CACHE_SIZE, testCache.getStats().getExpiryEvictionCount());
+    }
+
+    @Test
+    public void testVariableExpiry() {
+
+        // the value is the number of hours the entry lives
+        LRUCache<String, Integer> testCache = LRUCache.<String, Integer>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .expireAfter(new Expiry<String, Integer>() {
+                    public long expireAfterCreate(String key, Integer value, long currentTime) {
+                        return TimeUnit.HOURS.toNanos(value);
+                    }
+
+                    public long expireAfterUpdate(String key, Integer value, long currentTime, long currentDuration) {
+                        return TimeUnit.HOURS.toNanos(value);
+                    }
+
+                    public long expireAfterRead(String key, Integer value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .ticker(ticker)
+                .build();
+
+        testCache.writeValueToCache("HOUR", 1);
+        testCache.writeValueToCache("DAY", 24);
+        testCache.writeValueToCache("WEEK", 24 * 7);
+        testCache.writeValueToCache("FOREVER", Integer.MAX_VALUE);
+
+        time.addAndGet(TimeUnit.HOURS.toNanos(2));
+        Assert.assertEquals(3, testCache.getCacheSize());
+        time.addAndGet(TimeUnit.HOURS.toNanos(23));
+        Assert.assertEquals(2, testCache.getCacheSize());
+        time.addAndGet(TimeUnit.DAYS.toNanos(6));
+        Assert.assertEquals(1, testCache.getCacheSize());
+        Assert.assertEquals(Integer.valueOf(Integer.MAX_VALUE), testCache.getValueFromCache("FOREVER"));
+    }
+
+    @Test
+    public void testRemovedEntriesLeaveTheWheel() {
+
+        LRUCache<Integer, String> testCache = LRUCache.<Integer, String>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .expireAfterWrite(1, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+
+        for (int i = 0; i < CACHE_SIZE * 2; i++) {
+            testCache.writeValueToCache(i, "value");
+        }
+        testCache.invalidate(CACHE_SIZE * 2 - 1);
+        testCache.resizeContainer(CACHE_SIZE / 2);
+
+        time.addAndGet(TimeUnit.SECONDS.toNanos(1) + WHEEL_TICK);
+        Assert.assertEquals(0, testCache.getCacheSize());
+        Assert.assertEquals("Evicted or removed entries expired again", CACHE_SIZE / 2,
+                testCache.getStats().getExpiryEvictionCount());
+    }
+
+    @Test
+    public void testOnlyOneExpirySetting() {
+
+        try {
+            LRUCache.<String, String>newBuilder()
+                    .maximumSize(CACHE_SIZE)
+                    .expireAfterWrite(1, TimeUnit.SECONDS)
+                    .expireAfterAccess(1, TimeUnit.SECONDS)
+                    .build();
+            Assert.fail("Built with two expiry settings");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testWriteAfterExpiryIsAFreshInsert() {
+
+        for (boolean bufferWrites : new boolean[]{false, true}) {
+
+            final List<RemovalCause> causes = new ArrayList<RemovalCause>();
+            final List<Long> updateDurations = new ArrayList<Long>();
+            LRUCache<String, Integer> testCache = LRUCache.<String, Integer>newBuilder()
+                    .maximumSize(CACHE_SIZE)
+                    .bufferWrites(bufferWrites)
+                    .expireAfter(new Expiry<String, Integer>() {
+                        public long expireAfterCreate(String key, Integer value, long currentTime) {
+                            return TimeUnit.SECONDS.toNanos(10);
+                        }
+
+                        public long expireAfterUpdate(String key, Integer value, long currentTime, long currentDuration) {
+                            updateDurations.add(currentDuration);
+                            return TimeUnit.SECONDS.toNanos(10);
+                        }
+
+                        public long expireAfterRead(String key, Integer value, long currentTime, long currentDuration) {
+                            return currentDuration;
+                        }
+                    })
+                    .removalHook((key, value, cause) -> causes.add(cause))
+                    .ticker(ticker)
+                    .recordStats()
+                    .build();
+
+            testCache.writeValueToCache("KEY", 1);
+            // expired, but the wheel has not got to it yet
+            time.addAndGet(TimeUnit.SECONDS.toNanos(10) + 1);
+            testCache.writeValueToCache("KEY", 2);
+
+            Assert.assertEquals(Collections.singletonList(RemovalCause.EXPIRED), causes);
+            Assert.assertTrue("Expired entry was updated with " + updateDurations, updateDurations.isEmpty());
+            Assert.assertEquals(2, testCache.getStats().getPutCount());
+            Assert.assertEquals(0, testCache.getStats().getUpdateCount());
+            Assert.assertEquals(1, testCache.getStats().getExpiryEvictionCount());
+
+            time.addAndGet(TimeUnit.SECONDS.toNanos(9));
+            Assert.assertEquals("The new entry got the old one's lifetime", Integer.valueOf(2),
+                    testCache.getValueFromCache("KEY"));
+            Assert.assertEquals(1, testCache.getCacheSize());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestIndexLinkedLRUList {
+
+    final static int CAPACITY = 5;
+
+    @Test
+    public void testAllocateLinksAtHead() {
+
+        IndexLinkedLRUList list = new IndexLinkedLRUList(CAPACITY);
+        int first = list.allocate();
+        int second = list.allocate();
+
+        Assert.assertEquals("Newest slot is not the head", second, list.getHead());
+        Assert.assertEquals("Oldest slot is not the tail", first, list.getTail());
+        Assert.assertEquals("Tail not connected to head", second, list.getPrevious(first));
+        Assert.assertEquals("Head not connected to tail", first, list.getNext(second));
+        Assert.assertEquals(2, list.getCurrentSize());
+    }
+
+    @Test
+    public void testMoveToHead() {
+
+        IndexLinkedLRUList list = new IndexLinkedLRUList(CAPACITY);
+        int[] slots = new int[CAPACITY];
+        for (int i = 0; i < CAPACITY; i++) {
+            slots[i] = list.allocate();
+        }
+
+        // middle, tail, then head again
+        list.moveToHead(slots[2]);
+        Assert.assertEquals(0, list.getIndexOfSlot(slots[2]));
+        list.moveToHead(slots[0]);
+        Assert.assertEquals(0, list.getIndexOfSlot(slots[0]));
+        Assert.assertEquals("Tail did not move back", slots[1], list.getTail());
+        list.moveToHead(slots[0]);
+
+        assertWellFormed(list);
+        Assert.assertEquals(IndexLinkedLRUList.NONE, list.getNext(list.getTail()));
+        Assert.assertEquals(IndexLinkedLRUList.NONE, list.getPrevious(list.getHead()));
+    }
+
+    @Test
+    public void testFreeSlotsAreReused() {
+
+        IndexLinkedLRUList list = new IndexLinkedLRUList(CAPACITY);
+        for (int i = 0; i < CAPACITY; i++) {
+            list.allocate();
+        }
+        Assert.assertTrue(list.isFull());
+
+        try {
+            list.allocate();
+            Assert.fail("Allocated beyond the capacity");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+
+        int evicted = list.removeTail();
+        Assert.assertTrue(!list.contains(evicted));
+        Assert.assertEquals("The freed slot was not handed out again", evicted, list.allocate());
+
+        int recycled = list.recycleTail();
+        Assert.assertEquals("Recycled slot not at the head", recycled, list.getHead());
+        Assert.assertEquals(CAPACITY, list.getCurrentSize());
+        assertWellFormed(list);
+    }
+
+    @Test
+    public void testFreeLastElement() {
+
+        IndexLinkedLRUList list = new IndexLinkedLRUList(1);
+        int slot = list.allocate();
+        list.free(slot);
+
+        Assert.assertEquals(IndexLinkedLRUList.NONE, list.getHead());
+        Assert.assertEquals(IndexLinkedLRUList.NONE, list.getTail());
+        Assert.assertEquals(0, list.getCurrentSize());
+
+        try {
+            list.moveToHead(slot);
+            Assert.fail("Moved a free slot");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    private static void assertWellFormed(IndexLinkedLRUList list) {
+
+        int seen = 0;
+        int previous = IndexLinkedLRUList.NONE;
+        for (int slot = list.getHead(); slot != IndexLinkedLRUList.NONE; slot = list.getNext(slot)) {
+            Assert.assertEquals("Back link broken at slot " + slot, previous, list.getPrevious(slot));
+            previous = slot;
+            seen++;
+            Assert.assertTrue("Loop detected", seen <= list.getCapacity());
+        }
+        Assert.assertEquals("Tail is not the last slot", previous, list.getTail());
+        Assert.assertEquals("Size does not match the links", list.getCurrentSize(), seen);
+    }
+}
@@ -0,0 +1,131 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestLoadingCache {
+
+    final static int CACHE_SIZE = 10;
+
+    @Test
+    public void testMissReturnsNull() {
+
+        LRUCache<String, Double> testCache = new LRUCache<String, Double>(CACHE_SIZE);
+        Assert.assertNull(testCache.getIfPresent("NO_SUCH_KEY"));
+        Assert.assertNull(testCache.getValueFromCache("NO_SUCH_KEY"));
+
+        testCache.writeValueToCache("KEY_1", 1.0);
+        Assert.assertEquals(Double.valueOf(1.0), testCache.getIfPresent("KEY_1"));
+    }
+
+    @Test
+    public void testLoadIsCached() {
+
+        final AtomicInteger loads = new AtomicInteger();
+        LRUCache<String, Integer> testCache = new LRUCache<String, Integer>(CACHE_SIZE);
+
+        Assert.assertEquals(Integer.valueOf(5), testCache.get("KEY_1", key -> {
+            loads.incrementAndGet();
+            return 5;
+        }));
+        Assert.assertEquals(Integer.valueOf(5), testCache.get("KEY_1", key -> {
+            loads.incrementAndGet();
+            return 6;
+        }));
+        Assert.assertEquals("Hit went to the loader", 1, loads.get());
+
+        // nothing is cached for a null load
+        Assert.assertNull(testCache.get("KEY_2", key -> null));
+        Assert.assertTrue(!testCache.existsInCache("KEY_2"));
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneLoad() throws Exception {
+
+        final int CLIENTS = 16;
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch everyoneMissed = new CountDownLatch(1);
+        final SegmentedLRUCache<String, Integer> testCache = new SegmentedLRUCache<String, Integer>(CACHE_SIZE * 4, 4);
+
+        ExecutorService execService = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<Integer>> futureList = new ArrayList<Future<Integer>>();
+        for (int c = 0; c < CLIENTS; c++) {
+            futureList.add(execService.submit(() -> testCache.get("HOT_KEY", key -> {
+                loads.incrementAndGet();
+                try {
+                    // hold the load open so the other clients pile up behind it
+                    everyoneMissed.await(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return 42;
+            })));
+        }
+
+        Thread.sleep(50);
+        everyoneMissed.countDown();
+        for (Future<Integer> f : futureList) {
+            Assert.assertEquals(Integer.valueOf(42), f.get());
+        }
+        execService.shutdown();
+
+        Assert.assertEquals("Concurrent misses were not coalesced", 1, loads.get());
+        Assert.assertEquals(Integer.valueOf(42), testCache.getIfPresent("HOT_KEY"));
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached() {
+
+        LRUCache<String, Integer> testCache = new LRUCache<String, Integer>(CACHE_SIZE);
+        try {
+            testCache.get("KEY_1", key -> {
+                throw new IllegalArgumentException("backend down");
+            });
+            Assert.fail("Loader exception was swallowed");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+
+        Assert.assertTrue(!testCache.existsInCache("KEY_1"));
+        Assert.assertEquals(0, testCache.inFlightLoads.getInFlightCount());
+        Assert.assertEquals(Integer.valueOf(7), testCache.get("KEY_1", key -> 7));
+    }
+
+    @Test
+    public void testOffHeapLoad() {
+
+        OffHeapLRUCache<String, String> testCache = new OffHeapLRUCache<String, String>(CACHE_SIZE, Codecs.STRING,
+                OffHeapStore.SLAB_SIZE);
+        Assert.assertEquals("loaded KEY_1", testCache.get("KEY_1", key -> "loaded " + key));
+        Assert.assertEquals("loaded KEY_1", testCache.getIfPresent("KEY_1"));
+    }
+
+    @Test
+    public void testWriteDuringLoadWins() {
+
+        final LRUCache<String, String> testCache = new LRUCache<String, String>(CACHE_SIZE);
+        Assert.assertEquals("The load overwrote a newer write", "written-during-load", testCache.get("KEY_1", key -> {
+            testCache.writeValueToCache(key, "written-during-load");
+            return "stale-load";
+        }));
+        Assert.assertEquals("written-during-load", testCache.getIfPresent("KEY_1"));
+
+        // room for a slab per size class, so the loaded value does not have to evict the written one to be encoded
+        final OffHeapLRUCache<String, String> offHeapCache = new OffHeapLRUCache<String, String>(CACHE_SIZE, Codecs.STRING,
+                4 * OffHeapStore.SLAB_SIZE);
+        Assert.assertEquals("written-during-load", offHeapCache.get("KEY_1", key -> {
+            offHeapCache.writeValueToCache(key, "written-during-load");
+            return "stale-load";
+        }));
+        Assert.assertEquals("written-during-load", offHeapCache.getIfPresent("KEY_1"));
+        Assert.assertEquals("The losing load kept its chunk", OffHeapStore.chunkSize(OffHeapStore.sizeClassOf(
+                Codecs.STRING.encodedSize("written-during-load"))), offHeapCache.getOffHeapStore().getUsedBytes());
+    }
+}
@@ -0,0 +1,87 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class TestLongLRUCache {
+
+    final static int CACHE_SIZE = 100;
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+
+        LongLRUCache<String> testCache = new LongLRUCache<String>(3);
+        testCache.writeValueToCache(1L, "one");
+        testCache.writeValueToCache(2L, "two");
+        testCache.writeValueToCache(3L, "three");
+        testCache.getValueFromCache(1L);
+        testCache.writeValueToCache(4L, "four");
+
+        Assert.assertNull("Least recently used key not evicted", testCache.getValueFromCache(2L));
+        Assert.assertEquals("one", testCache.getValueFromCache(1L));
+        Assert.assertEquals(0, testCache.getPriorityInCacheOfObject(1L));
+        Assert.assertEquals(2, testCache.getPriorityInCacheOfObject(3L));
+        Assert.assertEquals(3, testCache.getCacheSize());
+
+        testCache.writeValueToCache(3L, "THREE");
+        Assert.assertEquals("THREE", testCache.getValueFromCache(3L));
+        Assert.assertEquals(3, testCache.getCacheSize());
+    }
+
+    // Random operations on colliding keys, checked against a LinkedHashMap in access order
+    @Test
+    public void testMatchesReferenceLru() {
+
+        final LongLRUCache<Long> testCache = new LongLRUCache<Long>(CACHE_SIZE);
+        final Map<Long, Long> reference = new LinkedHashMap<Long, Long>(16, 0.75f, true);
+        final Random random = new Random(7);
+
+        for (int i = 0; i < 200000; i++) {
+            // multiples of the table size all hash close to each other, which exercises probing and back-shifting
+            final long key = (random.nextInt(CACHE_SIZE * 3) - CACHE_SIZE) * 512L;
+            final int operation = random.nextInt(10);
+
+            if (operation < 4) {
+                Assert.assertEquals("Lookup of " + key, reference.get(key), testCache.getValueFromCache(key));
+            } else if (operation < 9) {
+                testCache.writeValueToCache(key, Long.valueOf(i));
+                reference.put(key, Long.valueOf(i));
+                if (reference.size() > CACHE_SIZE) {
+                    Iterator<Long> eldest = reference.keySet().iterator();
+                    eldest.next();
+                    eldest.remove();
+                }
+            } else {
+                testCache.invalidate(key);
+                reference.remove(key);
+            }
+            Assert.assertEquals(reference.size(), testCache.getCacheSize());
+        }
+
+        for (Long key : reference.keySet()) {
+            Assert.assertTrue("Lost " + key, testCache.existsInCache(key));
+        }
+    }
+
+    @Test
+    public void testIntKeys() {
+
+        IntLRUCache<String> testCache = new IntLRUCache<String>(2);
+        testCache.writeValueToCache(-1, "minus one");
+        testCache.writeValueToCache(Integer.MAX_VALUE, "max");
+        testCache.writeValueToCache(0, "zero");
+
+        Assert.assertTrue(!testCache.existsInCache(-1));
+        Assert.assertEquals("max", testCache.getValueFromCache(Integer.MAX_VALUE));
+        testCache.invalidate(0);
+        Assert.assertEquals(1, testCache.getCacheSize());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBadCapacity() {
+        new LongLRUCache<String>(0);
+    }
+}
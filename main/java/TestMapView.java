@@ -0,0 +1,237 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestMapView {
+
+    final static int CACHE_SIZE = 1000;
+
+    private LRUCache<Integer, Integer> newFullCache() {
+
+        LRUCache<Integer, Integer> testCache = new LRUCache<Integer, Integer>(CACHE_SIZE);
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            testCache.writeValueToCache(i, i);
+        }
+        return testCache;
+    }
+
+    @Test
+    public void testMapOperations() {
+
+        LRUCache<Integer, Integer> testCache = new LRUCache<Integer, Integer>(3);
+        ConcurrentMap<Integer, Integer> map = testCache.asMap();
+
+        Assert.assertNull(map.put(1, 10));
+        Assert.assertEquals(Integer.valueOf(10), map.put(1, 11));
+        Assert.assertEquals(Integer.valueOf(11), map.putIfAbsent(1, 12));
+        Assert.assertNull(map.putIfAbsent(2, 20));
+        Assert.assertNull(map.replace(3, 30));
+        Assert.assertTrue(!map.containsKey(3));
+        Assert.assertTrue(!map.replace(2, 21, 22));
+        Assert.assertTrue(map.replace(2, 20, 22));
+        Assert.assertEquals(Integer.valueOf(22), testCache.getValueFromCache(2));
+
+        Assert.assertTrue(!map.remove(2, 20));
+        Assert.assertEquals(Integer.valueOf(22), map.remove(2));
+        Assert.assertNull(map.remove(2));
+        Assert.assertEquals(1, map.size());
+
+        // writes through the map are cache writes, so they evict
+        map.put(4, 40);
+        map.put(5, 50);
+        map.put(6, 60);
+        Assert.assertTrue(!map.containsKey(1));
+        Assert.assertEquals(3, testCache.getCacheSize());
+
+        Assert.assertEquals(Integer.valueOf(70), map.computeIfAbsent(7, key -> key * 10));
+        Assert.assertEquals(3, map.size());
+    }
+
+    @Test
+    public void testIterationLeavesTheOrderAlone() {
+
+        LRUCache<Integer, Integer> testCache = newFullCache();
+        final List<Integer> coldest = testCache.coldest(10);
+
+        long sum = 0;
+        for (Map.Entry<Integer, Integer> entry : testCache.asMap().entrySet()) {
+            sum += entry.getValue();
+        }
+        Assert.assertEquals((long) CACHE_SIZE * (CACHE_SIZE - 1) / 2, sum);
+        Assert.assertTrue(testCache.asMap().containsKey(coldest.get(0)));
+        Assert.assertEquals("A scan promoted entries", coldest, testCache.coldest(10));
+    }
+
+    @Test
+    public void testParallelStreams() {
+
+        LRUCache<Integer, Integer> testCache = newFullCache();
+
+        final long sum = testCache.asMap().values().parallelStream().mapToLong(Integer::longValue).sum();
+        Assert.assertEquals((long) CACHE_SIZE * (CACHE_SIZE - 1) / 2, sum);
+        Assert.assertEquals(CACHE_SIZE, testCache.asMap().keySet().parallelStream().distinct().count());
+        Assert.assertEquals(CACHE_SIZE / 2, testCache.asMap().entrySet().parallelStream()
+                .filter(entry -> entry.getKey() % 2 == 0).count());
+    }
+
+    @Test
+    public void testIteratorRemoveAndSetValue() {
+
+        LRUCache<Integer, Integer> testCache = newFullCache();
+        for (Iterator<Map.Entry<Integer, Integer>> i = testCache.asMap().entrySet().iterator(); i.hasNext(); ) {
+            final Map.Entry<Integer, Integer> entry = i.next();
+            if (entry.getKey() % 2 == 0) {
+                i.remove();
+            } else {
+                entry.setValue(-entry.getValue());
+            }
+        }
+
+        Assert.assertEquals(CACHE_SIZE / 2, testCache.getCacheSize());
+        Assert.assertEquals(Integer.valueOf(-1), testCache.getValueFromCache(1));
+        Assert.assertNull(testCache.getValueFromCache(2));
+    }
+
+    @Test
+    public void testExpiredEntriesAreSkipped() {
+
+        final AtomicLong time = new AtomicLong();
+        LRUCache<Integer, Integer> testCache = LRUCache.<Integer, Integer>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .expireAfterWrite(1, TimeUnit.SECONDS)
+                .ticker(time::get)
+                .build();
+
+        testCache.writeValueToCache(1, 1);
+        time.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+        testCache.writeValueToCache(2, 2);
+        time.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+
+        Assert.assertEquals("[2]", testCache.asMap().keySet().toString());
+        Assert.assertTrue(!testCache.asMap().containsKey(1));
+        Assert.assertNull(testCache.asMap().putIfAbsent(1, 10));
+    }
+
+    @Test
+    public void testScanDuringWrites() throws Exception {
+
+        final LRUCache<Integer, Integer> testCache = newFullCache();
+        final AtomicBoolean done = new AtomicBoolean();
+        ExecutorService execService = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> writer = execService.submit(() -> {
+                for (int i = 0; !done.get(); i++) {
+                    testCache.writeValueToCache(CACHE_SIZE + i % (CACHE_SIZE * 2), i);
+                }
+            });
+
+            for (int scan = 0; scan < 20; scan++) {
+                int seen = 0;
+                for (Integer value : testCache.asMap().values()) {
+                    Assert.assertNotNull(value);
+                    seen++;
+                }
+                Assert.assertTrue("Scan saw " + seen + " entries", seen <= CACHE_SIZE * 3);
+            }
+
+            done.set(true);
+            writer.get(10, TimeUnit.SECONDS);
+        } finally {
+            execService.shutdownNow();
+        }
+        Assert.assertEquals(CACHE_SIZE, testCache.getCacheSize());
+    }
+
+    @Test
+    public void testConditionalWriteCallsTheWriterOutsideTheLock() {
+
+        final List<LRUCache<Integer, Integer>> cacheHolder = new ArrayList<LRUCache<Integer, Integer>>();
+        final Map<Integer, Integer> backendState = new HashMap<Integer, Integer>();
+        LRUCache<Integer, Integer> testCache = LRUCache.<Integer, Integer>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .writeThrough((key, value) -> {
+                    Assert.assertTrue("Backend called under the lock", !cacheHolder.get(0).evictionLock.isHeldByCurrentThread());
+                    backendState.put(key, value);
+                    // another writer gets in while this one is talking to the backend
+                    if (value == 1) {
+                        cacheHolder.get(0).writeValueToCache(key, 2);
+                    }
+                })
+                .build();
+        cacheHolder.add(testCache);
+
+        // the check is made again on the value the other writer left, and no longer holds
+        Assert.assertEquals(Integer.valueOf(2), testCache.asMap().putIfAbsent(0, 1));
+        Assert.assertEquals(Integer.valueOf(2), testCache.getValueFromCache(0));
+
+        Assert.assertEquals(Integer.valueOf(2), testCache.asMap().replace(0, 3));
+        Assert.assertEquals(Integer.valueOf(3), testCache.getValueFromCache(0));
+        Assert.assertEquals(Integer.valueOf(3), backendState.get(0));
+    }
+
+    @Test
+    public void testConditionalWritesAreAtomicWithBufferedWriters() {
+
+        final LRUCache<Integer, RacingValue> testCache = LRUCache.<Integer, RacingValue>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .bufferWrites(true)
+                .build();
+        final ConcurrentMap<Integer, RacingValue> map = testCache.asMap();
+        map.put(0, new RacingValue(1));
+
+        // a buffered writer, which never takes the lock, gets in right after replace has checked the old value
+        final RacingValue expected = new RacingValue(1);
+        expected.onEquals = () -> {
+            Thread writer = new Thread(() -> testCache.writeValueToCache(0, new RacingValue(2)));
+            writer.start();
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+
+        Assert.assertTrue("Replaced a value that was no longer there", !map.replace(0, expected, new RacingValue(3)));
+        Assert.assertEquals(2, map.get(0).version);
+        Assert.assertEquals(1, testCache.getCacheSize());
+    }
+
+    // A value that lets a test run something the first time it is compared
+    static final class RacingValue {
+
+        final int version;
+        Runnable onEquals;
+
+        RacingValue(int version) {
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+
+            final Runnable hook = onEquals;
+            onEquals = null;
+            if (hook != null) {
+                hook.run();
+            }
+            return o instanceof RacingValue && ((RacingValue) o).version == version;
+        }
+
+        @Override
+        public int hashCode() {
+            return version;
+        }
+    }
+}
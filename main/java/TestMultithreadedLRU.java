@@ -39,6 +39,53 @@ public class TestMultithreadedLRU {
         runMultipleClientsMultipleCachesTest(MULTIPLE_CACHE_COUNT);
     }
 
+    @Test
+    /*
+    Verify that readers running concurrently with writers never see a half-linked list and that the buffered reads
+    leave the list consistent once everything is drained.
+     */
+    public void testConcurrentReadersAndWriters() throws InterruptedException, ExecutionException {
+
+        final int CACHE_SIZE = 12;
+        final int CLIENTS = 8;
+        final int OPERATIONS_PER_CLIENT = 20000;
+        final LRUCache<String, Double> cacheToTest = new LRUCache<String, Double>(CACHE_SIZE);
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            cacheToTest.writeValueToCache("key_" + i, Double.valueOf(i));
+        }
+
+        ExecutorService execService = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<?>> futureList = new ArrayList<Future<?>>();
+        for (int c = 0; c < CLIENTS; c++) {
+
+            final boolean writer = (c % 4 == 0);
+            futureList.add(execService.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < OPERATIONS_PER_CLIENT; i++) {
+                        String key = "key_" + (i % (CACHE_SIZE * 2));
+                        if (writer) {
+                            cacheToTest.writeValueToCache(key, Double.valueOf(i));
+                        } else {
+                            // null once the key has been evicted
+                            cacheToTest.getValueFromCache(key);
+                        }
+                    }
+                }
+            }));
+        }
+
+        execService.shutdown();
+        execService.awaitTermination(30, TimeUnit.SECONDS);
+        for (Future<?> f : futureList) {
+            f.get();
+        }
+
+        Assert.assertEquals("Incorrect cache size detected", CACHE_SIZE, cacheToTest.getCacheSize());
+        detectLoop(cacheToTest, cacheToTest.getCacheSize());
+        log.fine(cacheToTest.toString());
+    }
+
     private class SampleClient<K, V> implements Runnable {
 
         final int clientId;
@@ -94,10 +141,11 @@ public class TestMultithreadedLRU {
         return entrySet;
     }
 
-    //Start at the head. Go until you detect a loop
+    //Start at the head. Go until you detect a loop. Holds the cache's lock, so no drain relinks nodes while we walk.
     public static void detectLoop(LRUCache cache, final int expectedSize) {
 
-        synchronized (cache) {
+        cache.evictionLock.lock();
+        try {
             LRUCache.Node head = cache.getOrderedList().getHead();
             HashSet<LRUCache.Node> itemsSeen = new HashSet<LRUCache.Node>();
 
@@ -121,6 +169,8 @@ public class TestMultithreadedLRU {
                     break;
                 }
             }
+        } finally {
+            cache.evictionLock.unlock();
         }
     }
 
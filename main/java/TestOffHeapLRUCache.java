@@ -0,0 +1,121 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestOffHeapLRUCache {
+
+    final static long OFF_HEAP_BYTES = 4 * OffHeapStore.SLAB_SIZE;
+
+    @Test
+    public void testRoundTrip() {
+
+        OffHeapLRUCache<String, String> testCache = new OffHeapLRUCache<String, String>(10, Codecs.STRING, OFF_HEAP_BYTES);
+        testCache.writeValueToCache("KEY_1", "first value");
+        testCache.writeValueToCache("KEY_2", "");
+
+        Assert.assertEquals("first value", testCache.getValueFromCache("KEY_1"));
+        Assert.assertEquals("", testCache.getValueFromCache("KEY_2"));
+        Assert.assertTrue(testCache.existsInCache("KEY_1", "first value"));
+        Assert.assertTrue(!testCache.existsInCache("KEY_1", "something else"));
+        Assert.assertTrue(!testCache.existsInCache("NO_SUCH_KEY", "first value"));
+        Assert.assertNull("A miss did not return null", testCache.getValueFromCache("NO_SUCH_KEY"));
+    }
+
+    @Test
+    public void testEvictionAndOverwriteFreeChunks() {
+
+        final int CACHE_SIZE = 20;
+        OffHeapLRUCache<String, Double> testCache = new OffHeapLRUCache<String, Double>(CACHE_SIZE, Codecs.DOUBLE, OFF_HEAP_BYTES);
+        for (int i = 0; i < CACHE_SIZE * 50; i++) {
+            testCache.writeValueToCache("KEY_" + (i % (CACHE_SIZE * 2)), Double.valueOf(i));
+        }
+
+        final long chunkSize = OffHeapStore.chunkSize(OffHeapStore.sizeClassOf(Double.BYTES));
+        Assert.assertEquals("Incorrect cache size", CACHE_SIZE, testCache.getCacheSize());
+        Assert.assertEquals("Evicted or overwritten chunks were not freed", CACHE_SIZE * chunkSize,
+                testCache.getOffHeapStore().getUsedBytes());
+        Assert.assertEquals("Freed chunks were not reused", OffHeapStore.SLAB_SIZE, testCache.getOffHeapStore().getReservedBytes());
+
+        testCache.resizeContainer(5);
+        Assert.assertEquals("Trimmed chunks were not freed", 5 * chunkSize, testCache.getOffHeapStore().getUsedBytes());
+    }
+
+    @Test
+    public void testStoreFullEvictsColdest() {
+
+        OffHeapLRUCache<Integer, byte[]> testCache = new OffHeapLRUCache<Integer, byte[]>(10, Codecs.BYTES, OffHeapStore.SLAB_SIZE);
+        testCache.writeValueToCache(1, new byte[OffHeapStore.SLAB_SIZE]);
+
+        // the whole store is taken, so the older entry has to make room
+        testCache.writeValueToCache(2, new byte[1]);
+        Assert.assertTrue(!testCache.existsInCache(1));
+        Assert.assertEquals(1, testCache.getValueFromCache(2).length);
+        Assert.assertEquals(1, testCache.getCacheSize());
+
+        // the store on its own still refuses
+        OffHeapStore store = new OffHeapStore(OffHeapStore.SLAB_SIZE);
+        store.write(new byte[OffHeapStore.SLAB_SIZE], Codecs.BYTES);
+        Assert.assertNull(store.tryWrite(new byte[1], Codecs.BYTES));
+        try {
+            store.write(new byte[1], Codecs.BYTES);
+            Assert.fail("Wrote beyond the off-heap capacity");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testEmptySlabsChangeSizeClass() {
+
+        // one slab, first carved for 16 byte chunks
+        OffHeapLRUCache<String, String> testCache = new OffHeapLRUCache<String, String>(1000, Codecs.STRING, OffHeapStore.SLAB_SIZE);
+        testCache.writeValueToCache("SMALL", "small");
+        testCache.invalidate("SMALL");
+
+        final String large = new String(new char[100]).replace('\0', 'x');
+        testCache.writeValueToCache("LARGE", large);
+        Assert.assertEquals(large, testCache.getValueFromCache("LARGE"));
+        Assert.assertEquals(OffHeapStore.SLAB_SIZE, testCache.getOffHeapStore().getReservedBytes());
+    }
+
+    @Test
+    public void testMixedSizesPastTheStoreSize() {
+
+        final int[] SIZES = {5, 100, 3000, 70000, 16, 500000};
+        final long OFF_HEAP = 2 * OffHeapStore.SLAB_SIZE;
+        OffHeapLRUCache<Integer, byte[]> testCache = new OffHeapLRUCache<Integer, byte[]>(1000, Codecs.BYTES, OFF_HEAP);
+
+        long written = 0;
+        for (int i = 0; i < 600; i++) {
+            final byte[] value = new byte[SIZES[i % SIZES.length]];
+            value[0] = (byte) i;
+            testCache.writeValueToCache(i, value);
+            written += value.length;
+
+            // the newest entry is never the one making room
+            Assert.assertEquals((byte) i, testCache.getValueFromCache(i)[0]);
+            Assert.assertTrue(testCache.getOffHeapStore().getUsedBytes() <= OFF_HEAP);
+        }
+        Assert.assertTrue("Did not write past the store size", written > 20 * OFF_HEAP);
+        Assert.assertEquals(OFF_HEAP, testCache.getOffHeapStore().getReservedBytes());
+
+        // everything still cached has its chunk, and nothing else does
+        long expectedUsed = 0;
+        for (int i = 0; i < 600; i++) {
+            final byte[] value = testCache.getValueFromCache(i);
+            if (value != null) {
+                expectedUsed += OffHeapStore.chunkSize(OffHeapStore.sizeClassOf(Codecs.BYTES.encodedSize(value)));
+            }
+        }
+        Assert.assertEquals(expectedUsed, testCache.getOffHeapStore().getUsedBytes());
+    }
+
+    @Test
+    public void testSizeClasses() {
+
+        Assert.assertEquals(0, OffHeapStore.sizeClassOf(0));
+        Assert.assertEquals(0, OffHeapStore.sizeClassOf(16));
+        Assert.assertEquals(1, OffHeapStore.sizeClassOf(17));
+        Assert.assertEquals(OffHeapStore.SIZE_CLASS_COUNT - 1, OffHeapStore.sizeClassOf(OffHeapStore.SLAB_SIZE));
+        Assert.assertEquals(OffHeapStore.SLAB_SIZE, OffHeapStore.chunkSize(OffHeapStore.SIZE_CLASS_COUNT - 1));
+    }
+}
@@ -0,0 +1,113 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class TestRankTracking {
+
+    final static int CACHE_SIZE = 100;
+
+    @Test
+    public void testRanksMatchTheList() {
+
+        LRUCache<Integer, Integer> testCache = LRUCache.<Integer, Integer>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .trackRanks()
+                .build();
+        LRUCache.LRUOptimizedLinkedList<Integer, Integer> list = testCache.getOrderedList();
+
+        // enough promotions to run out of stamps several times over, with evictions and invalidations in between
+        Random random = new Random(42);
+        for (int i = 0; i < CACHE_SIZE * 50; i++) {
+            final int key = random.nextInt(CACHE_SIZE * 2);
+            switch (random.nextInt(4)) {
+                case 0:
+                    testCache.invalidate(key);
+                    break;
+                case 1:
+                    testCache.getValueFromCache(key);
+                    break;
+                default:
+                    testCache.writeValueToCache(key, i);
+            }
+
+            if (i % 97 == 0) {
+                for (int probe = 0; probe < CACHE_SIZE * 2; probe++) {
+                    // the tracked rank first, it drains the read buffer before the walk looks at the list
+                    final int rank = testCache.getPriorityInCacheOfObject(probe);
+                    Assert.assertEquals("Wrong rank for " + probe, list.getIndexOfObject(probe), rank);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStampsAreReused() {
+
+        LRUCache<Integer, Integer> testCache = LRUCache.<Integer, Integer>newBuilder()
+                .maximumSize(4)
+                .trackRanks()
+                .build();
+        for (int i = 0; i < RankTracker.MINIMUM_CAPACITY * 10; i++) {
+            testCache.writeValueToCache(i % 6, i);
+        }
+
+        Assert.assertEquals("The tree grew with the number of promotions", RankTracker.MINIMUM_CAPACITY,
+                testCache.getOrderedList().ranks.getCapacity());
+        Assert.assertEquals(0, testCache.getPriorityInCacheOfObject((RankTracker.MINIMUM_CAPACITY * 10 - 1) % 6));
+        Assert.assertEquals(3, testCache.getPriorityInCacheOfObject((RankTracker.MINIMUM_CAPACITY * 10 - 4) % 6));
+        Assert.assertEquals(-1, testCache.getPriorityInCacheOfObject((RankTracker.MINIMUM_CAPACITY * 10 - 5) % 6));
+    }
+
+    @Test
+    public void testHottestAndColdest() {
+
+        LRUCache<Integer, Integer> testCache = LRUCache.<Integer, Integer>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .build();
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            testCache.writeValueToCache(i, i);
+        }
+        testCache.getValueFromCache(0);
+
+        Assert.assertEquals(Arrays.asList(0, 99, 98), testCache.hottest(3));
+        Assert.assertEquals(Arrays.asList(1, 2, 3), testCache.coldest(3));
+        Assert.assertEquals(CACHE_SIZE, testCache.coldest(CACHE_SIZE * 2).size());
+        Assert.assertTrue(testCache.hottest(0).isEmpty());
+    }
+
+    @Test
+    public void testHottestAndColdestFollowThePolicy() {
+
+        LRUCache<Integer, Integer> testCache = LRUCache.<Integer, Integer>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .evictionMode(EvictionMode.SEGMENTED_LRU)
+                .build();
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            testCache.writeValueToCache(i, i);
+        }
+
+        for (int n : new int[]{0, 1, 5, CACHE_SIZE}) {
+            final List<Integer> hottest = testCache.hottest(n);
+            final List<Integer> coldest = testCache.coldest(n);
+            Assert.assertEquals(n, hottest.size());
+            Assert.assertEquals(n, coldest.size());
+            for (int i = 0; i < n; i++) {
+                Assert.assertEquals(i, testCache.getPriorityInCacheOfObject(hottest.get(i)));
+                Assert.assertEquals(CACHE_SIZE - 1 - i, testCache.getPriorityInCacheOfObject(coldest.get(i)));
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testOnlyInLruMode() {
+
+        LRUCache.<Integer, Integer>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .evictionMode(EvictionMode.CLOCK)
+                .trackRanks()
+                .build();
+    }
+}
@@ -0,0 +1,118 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestRefreshAfterWrite {
+
+    final static int CACHE_SIZE = 10;
+
+    final AtomicLong time = new AtomicLong(1000);
+    final Ticker ticker = time::get;
+
+    // reloads only run when the test says so
+    final List<Runnable> pendingReloads = new ArrayList<Runnable>();
+    final AtomicInteger reloadCount = new AtomicInteger();
+
+    private LRUCache<String, String> newCache() {
+
+        return LRUCache.<String, String>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .refreshAfterWrite(1, TimeUnit.MINUTES, key -> key + "_v" + reloadCount.incrementAndGet())
+                .refreshExecutor(pendingReloads::add)
+                .ticker(ticker)
+                .build();
+    }
+
+    private void runPendingReloads() {
+
+        List<Runnable> reloads = new ArrayList<Runnable>(pendingReloads);
+        pendingReloads.clear();
+        for (Runnable reload : reloads) {
+            reload.run();
+        }
+    }
+
+    @Test
+    public void testStaleReadReturnsOldValueAndReloadsOnce() {
+
+        LRUCache<String, String> testCache = newCache();
+        testCache.writeValueToCache("KEY", "KEY_v0");
+
+        time.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        Assert.assertEquals("KEY_v0", testCache.getValueFromCache("KEY"));
+        Assert.assertTrue("Refreshed too early", pendingReloads.isEmpty());
+
+        time.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals("Stale read did not get the current value", "KEY_v0", testCache.getValueFromCache("KEY"));
+        }
+        Assert.assertEquals("Reloads were not deduplicated", 1, pendingReloads.size());
+
+        runPendingReloads();
+        Assert.assertEquals("KEY_v1", testCache.getValueFromCache("KEY"));
+        Assert.assertTrue("Refreshed value refreshed again right away", pendingReloads.isEmpty());
+        Assert.assertEquals(1, reloadCount.get());
+    }
+
+    @Test
+    public void testRefreshKeepsRecencyPosition() {
+
+        LRUCache<String, String> testCache = newCache();
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            testCache.writeValueToCache("KEY_" + i, "KEY_" + i + "_v0");
+        }
+        time.addAndGet(TimeUnit.MINUTES.toNanos(1));
+
+        // the read itself promotes the entry, the swap afterwards must not move it again
+        testCache.getValueFromCache("KEY_3");
+        testCache.writeValueToCache("KEY_9", "KEY_9_v0");
+        final int positionBefore = testCache.getPriorityInCacheOfObject("KEY_3");
+
+        runPendingReloads();
+        Assert.assertEquals(positionBefore, testCache.getPriorityInCacheOfObject("KEY_3"));
+        Assert.assertEquals(CACHE_SIZE, testCache.getCacheSize());
+        Assert.assertEquals("KEY_3_v1", testCache.getValueFromCache("KEY_3"));
+    }
+
+    @Test
+    public void testWriteDuringReloadWins() {
+
+        LRUCache<String, String> testCache = newCache();
+        testCache.writeValueToCache("KEY", "KEY_v0");
+        time.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        testCache.getValueFromCache("KEY");
+
+        testCache.writeValueToCache("KEY", "written");
+        runPendingReloads();
+        Assert.assertEquals("Reload overwrote a newer write", "written", testCache.getValueFromCache("KEY"));
+
+        testCache.invalidate("KEY");
+        time.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        Assert.assertNull(testCache.getValueFromCache("KEY"));
+        Assert.assertTrue(pendingReloads.isEmpty());
+    }
+
+    @Test
+    public void testFailedReloadKeepsValue() {
+
+        LRUCache<String, String> testCache = LRUCache.<String, String>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .refreshAfterWrite(1, TimeUnit.MINUTES, key -> {
+                    throw new IllegalStateException("backend down");
+                })
+                .refreshExecutor(Runnable::run)
+                .ticker(ticker)
+                .build();
+
+        testCache.writeValueToCache("KEY", "old");
+        time.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        Assert.assertEquals("old", testCache.getValueFromCache("KEY"));
+        Assert.assertEquals("old", testCache.getValueFromCache("KEY"));
+        Assert.assertEquals(0, testCache.refreshing.size());
+    }
+}
@@ -0,0 +1,112 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestRemovalListener {
+
+    final static int CACHE_SIZE = 10;
+
+    // deliveries only run when the test says so
+    final List<Runnable> pendingDeliveries = new ArrayList<Runnable>();
+    final List<String> removals = new ArrayList<String>();
+
+    private LRUCache.Builder<String, Integer> newBuilder() {
+
+        return LRUCache.<String, Integer>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .removalListener((key, value, cause) -> removals.add(key + "=" + value + ":" + cause))
+                .removalListenerExecutor(pendingDeliveries::add);
+    }
+
+    private void runPendingDeliveries() {
+
+        while (!pendingDeliveries.isEmpty()) {
+            pendingDeliveries.remove(0).run();
+        }
+    }
+
+    @Test
+    public void testCauses() {
+
+        LRUCache<String, Integer> testCache = newBuilder().build();
+        for (int i = 0; i < CACHE_SIZE + 1; i++) {
+            testCache.writeValueToCache("KEY_" + i, i);
+        }
+        testCache.writeValueToCache("KEY_5", -5);
+        testCache.invalidate("KEY_6");
+        testCache.resizeContainer(CACHE_SIZE - 2);
+
+        Assert.assertTrue("Listener ran on the writing thread", removals.isEmpty());
+        runPendingDeliveries();
+
+        List<String> expected = new ArrayList<String>();
+        expected.add("KEY_0=0:SIZE");
+        expected.add("KEY_5=5:REPLACED");
+        expected.add("KEY_6=6:EXPLICIT");
+        expected.add("KEY_1=1:RESIZE");
+        Assert.assertEquals(expected, removals);
+        Assert.assertTrue(RemovalCause.SIZE.wasEvicted());
+        Assert.assertTrue(!RemovalCause.REPLACED.wasEvicted());
+    }
+
+    @Test
+    public void testExpired() {
+
+        final AtomicLong time = new AtomicLong();
+        LRUCache<String, Integer> testCache = newBuilder()
+                .expireAfterWrite(1, TimeUnit.SECONDS)
+                .ticker(time::get)
+                .build();
+
+        testCache.writeValueToCache("KEY", 1);
+        time.addAndGet(TimeUnit.SECONDS.toNanos(1) + TimerWheel.SPANS[0] + 1);
+        Assert.assertEquals(0, testCache.getCacheSize());
+
+        runPendingDeliveries();
+        Assert.assertEquals("[KEY=1:EXPIRED]", removals.toString());
+    }
+
+    @Test
+    public void testDeliveredInBatches() {
+
+        final int EVICTIONS = RemovalDispatcher.DELIVERY_BATCH_SIZE + 10;
+        LRUCache<String, Integer> testCache = newBuilder().build();
+        for (int i = 0; i < CACHE_SIZE + EVICTIONS; i++) {
+            testCache.writeValueToCache("KEY_" + i, i);
+        }
+
+        Assert.assertEquals("Every removal scheduled its own delivery", 1, pendingDeliveries.size());
+        Assert.assertEquals(EVICTIONS, testCache.removalDispatcher.getPendingCount());
+
+        pendingDeliveries.remove(0).run();
+        Assert.assertEquals(RemovalDispatcher.DELIVERY_BATCH_SIZE, removals.size());
+        Assert.assertEquals("The rest was not handed on", 1, pendingDeliveries.size());
+
+        runPendingDeliveries();
+        Assert.assertEquals(EVICTIONS, removals.size());
+        Assert.assertEquals("KEY_0=0:SIZE", removals.get(0));
+        Assert.assertEquals(0, testCache.removalDispatcher.getPendingCount());
+    }
+
+    @Test
+    public void testFailingListenerDoesNotStopDelivery() {
+
+        LRUCache<String, Integer> testCache = LRUCache.<String, Integer>newBuilder()
+                .maximumSize(1)
+                .removalListener((key, value, cause) -> {
+                    removals.add(key);
+                    throw new IllegalStateException("listener failed");
+                })
+                .removalListenerExecutor(Runnable::run)
+                .build();
+
+        testCache.writeValueToCache("KEY_1", 1);
+        testCache.writeValueToCache("KEY_2", 2);
+        testCache.writeValueToCache("KEY_3", 3);
+        Assert.assertEquals("[KEY_1, KEY_2]", removals.toString());
+    }
+}
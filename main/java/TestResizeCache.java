@@ -1,6 +1,9 @@
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Created by aleks on 8/6/15.
  */
@@ -96,4 +99,56 @@ public class TestResizeCache {
             Assert.assertTrue(ise.getMessage().contains(LRUCache.INVALID_RESIZE_ERROR_MSG));
         }
     }
+
+    @Test
+    public void testShrinkIsBatched() {
+
+        final int ORIGINAL_SIZE = LRUCache.EVICTION_BATCH_SIZE * 50;
+        final int SMALLER_SIZE = 10;
+
+        LRUCache<Integer, Integer> testCache = new LRUCache<Integer, Integer>(ORIGINAL_SIZE);
+        for (int i = 0; i < ORIGINAL_SIZE; i++) {
+            testCache.writeValueToCache(i, i);
+        }
+
+        testCache.resizeContainer(SMALLER_SIZE);
+
+        Assert.assertEquals("Excess left after the resize returned", 0, testCache.getExcessWeight());
+        Assert.assertEquals(1, testCache.getResizeCount());
+        Assert.assertEquals(ORIGINAL_SIZE - SMALLER_SIZE, testCache.getResizeEvictionCount());
+        Assert.assertEquals(SMALLER_SIZE, testCache.getCacheSize());
+    }
+
+    @Test
+    public void testShrinkWhileReading() throws InterruptedException {
+
+        final int ORIGINAL_SIZE = 20000;
+        final int SMALLER_SIZE = 100;
+
+        final LRUCache<Integer, Integer> testCache = new LRUCache<Integer, Integer>(ORIGINAL_SIZE);
+        for (int i = 0; i < ORIGINAL_SIZE; i++) {
+            testCache.writeValueToCache(i, i);
+        }
+
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicLong reads = new AtomicLong();
+        Thread reader = new Thread(() -> {
+            int i = 0;
+            while (!done.get()) {
+                // either still there or already evicted, never a torn value
+                Integer value = testCache.getValueFromCache(ORIGINAL_SIZE - 1 - (i++ % SMALLER_SIZE));
+                if (value != null) {
+                    reads.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+
+        testCache.resizeContainer(SMALLER_SIZE);
+        done.set(true);
+        reader.join();
+
+        Assert.assertEquals(SMALLER_SIZE, testCache.getCacheSize());
+        Assert.assertTrue("Reader made no progress", reads.get() > 0);
+    }
 }
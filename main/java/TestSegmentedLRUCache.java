@@ -0,0 +1,206 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the basic, multithreaded and resize scenarios against the lock-striped cache. A segmented cache keeps the LRU
+ * order within each segment only, so the checks here are on counts and on each segment's own list.
+ */
+public class TestSegmentedLRUCache {
+
+    final static int VALID_LRU_CACHE_SIZE = 40;
+    final static int SEGMENT_COUNT = 4;
+
+    @Test
+    public void testBadSizesRejected() {
+
+        try {
+            new SegmentedLRUCache<String, Double>(0, SEGMENT_COUNT);
+            Assert.fail("Created object despite bad cache size");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+
+        try {
+            new SegmentedLRUCache<String, Double>(VALID_LRU_CACHE_SIZE, 0);
+            Assert.fail("Created object despite bad segment count");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSegmentCountNeverExceedsSize() {
+
+        SegmentedLRUCache<String, Double> testCache = new SegmentedLRUCache<String, Double>(3, 16);
+        Assert.assertEquals("Segment count not bounded by the size", 2, testCache.getSegmentCount());
+    }
+
+    @Test
+    public void testBasicInsertAndOverwrite() {
+
+        Cache<String, Double> testCache = new SegmentedLRUCache<String, Double>(VALID_LRU_CACHE_SIZE, SEGMENT_COUNT);
+        testCache.writeValueToCache("KEY_1", 45d);
+        testCache.writeValueToCache("KEY_2", 46d);
+        testCache.writeValueToCache("KEY_1", 47d);
+
+        Assert.assertTrue(testCache.existsInCache("KEY_1", 47d));
+        Assert.assertTrue(!testCache.existsInCache("KEY_1", 45d));
+        Assert.assertTrue(!testCache.existsInCache("NO_SUCH_KEY"));
+        Assert.assertEquals("The returned value is not correct", Double.valueOf(46), testCache.getValueFromCache("KEY_2"));
+        Assert.assertEquals("Incorrect size returned", 2, testCache.getCacheSize());
+    }
+
+    @Test
+    public void testSizeLimitEnforced() {
+
+        for (int cacheSize = SEGMENT_COUNT; cacheSize < 57; cacheSize++) {
+
+            SegmentedLRUCache<String, Double> testCache = new SegmentedLRUCache<String, Double>(cacheSize, SEGMENT_COUNT);
+            for (int i = 0; i < cacheSize * 10; i++) {
+                testCache.writeValueToCache("key_" + i, Double.valueOf(i));
+                Assert.assertTrue("Size limit not enforced for cache size " + cacheSize, testCache.getCacheSize() <= cacheSize);
+            }
+
+            // the most recent write is always the head of its own segment, so it can never be the one evicted
+            Assert.assertTrue(testCache.existsInCache("key_" + (cacheSize * 10 - 1)));
+        }
+    }
+
+    @Test
+    public void testResizeContainer() {
+
+        final int ORIGINAL_SIZE = 20;
+        final int SMALLER_SIZE = 9;
+
+        // enough writes that every segment is full before the shrink
+        SegmentedLRUCache<String, Double> testCache = new SegmentedLRUCache<String, Double>(ORIGINAL_SIZE, SEGMENT_COUNT);
+        for (int i = 0; i < ORIGINAL_SIZE * 5; i++) {
+            testCache.writeValueToCache("KEY_" + i, Double.valueOf(i));
+        }
+        Assert.assertEquals("Wrong count after inserting known set of items", ORIGINAL_SIZE, testCache.getCacheSize());
+
+        testCache.resizeContainer(SMALLER_SIZE);
+        Assert.assertEquals("Wrong count after decreasing container size", SMALLER_SIZE, testCache.getCacheSize());
+        Assert.assertTrue("Last value entered not in cache", testCache.existsInCache("KEY_" + (ORIGINAL_SIZE * 5 - 1)));
+        for (LRUCache<String, Double> segment : testCache.segments) {
+            TestMultithreadedLRU.detectLoop(segment, segment.getCacheSize());
+        }
+
+        for (int i = 0; i < ORIGINAL_SIZE * 5; i++) {
+            testCache.writeValueToCache("NEW_KEY_" + i, Double.valueOf(i));
+            Assert.assertTrue("Size limit not enforced after shrinking", testCache.getCacheSize() <= SMALLER_SIZE);
+        }
+
+        // growing again lets every segment fill back up
+        testCache.resizeContainer(VALID_LRU_CACHE_SIZE);
+        for (int i = 0; i < VALID_LRU_CACHE_SIZE * 5; i++) {
+            testCache.writeValueToCache("GROWN_KEY_" + i, Double.valueOf(i));
+        }
+        Assert.assertEquals("Wrong count after increasing container size", VALID_LRU_CACHE_SIZE, testCache.getCacheSize());
+    }
+
+    @Test
+    public void testResizeToSegmentCount() {
+
+        final int ORIGINAL_SIZE = 20;
+
+        SegmentedLRUCache<String, Double> testCache = new SegmentedLRUCache<String, Double>(ORIGINAL_SIZE, SEGMENT_COUNT);
+        for (int i = 0; i < ORIGINAL_SIZE * 5; i++) {
+            testCache.writeValueToCache("KEY_" + i, Double.valueOf(i));
+        }
+
+        // one entry left per segment
+        testCache.resizeContainer(SEGMENT_COUNT);
+        Assert.assertEquals(SEGMENT_COUNT, testCache.getCacheSize());
+        for (LRUCache<String, Double> segment : testCache.segments) {
+            Assert.assertEquals(1, segment.getCacheSize());
+            Assert.assertSame(segment.getOrderedList().getTail(), segment.getOrderedList().getHead());
+        }
+
+        try {
+            testCache.resizeContainer(SEGMENT_COUNT - 1);
+            Assert.fail("Resized below the segment count");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+        Assert.assertEquals(SEGMENT_COUNT, testCache.getCacheSize());
+    }
+
+    @Test
+    public void testShrinkWhileWriting() throws Exception {
+
+        final int ORIGINAL_SIZE = 2000;
+        final int SMALLER_SIZE = 100;
+
+        final SegmentedLRUCache<Integer, Integer> testCache = new SegmentedLRUCache<Integer, Integer>(ORIGINAL_SIZE, SEGMENT_COUNT);
+        for (int i = 0; i < ORIGINAL_SIZE * 2; i++) {
+            testCache.writeValueToCache(i, i);
+        }
+
+        ExecutorService execService = Executors.newFixedThreadPool(2);
+        List<Future<?>> futureList = new ArrayList<Future<?>>();
+        for (int c = 0; c < 2; c++) {
+            final int clientId = c;
+            futureList.add(execService.submit(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    testCache.writeValueToCache(clientId * 100000 + i % 500, i);
+                }
+            }));
+        }
+        testCache.resizeContainer(SMALLER_SIZE);
+
+        execService.shutdown();
+        Assert.assertTrue(execService.awaitTermination(30, TimeUnit.SECONDS));
+        for (Future<?> f : futureList) {
+            f.get();
+        }
+
+        Assert.assertEquals(SMALLER_SIZE, testCache.getCacheSize());
+        for (LRUCache<Integer, Integer> segment : testCache.segments) {
+            TestMultithreadedLRU.detectLoop(segment, segment.getCacheSize());
+        }
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+
+        final int CACHE_SIZE = 64;
+        final int CLIENTS = 16;
+        final int WRITES_PER_CLIENT = 5000;
+
+        final SegmentedLRUCache<String, Double> testCache = new SegmentedLRUCache<String, Double>(CACHE_SIZE, SEGMENT_COUNT);
+        ExecutorService execService = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<?>> futureList = new ArrayList<Future<?>>();
+        for (int c = 0; c < CLIENTS; c++) {
+
+            final int clientId = c;
+            futureList.add(execService.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < WRITES_PER_CLIENT; i++) {
+                        String key = "client_" + clientId + "_" + (i % 200);
+                        testCache.writeValueToCache(key, Double.valueOf(i));
+                    }
+                }
+            }));
+        }
+
+        execService.shutdown();
+        Assert.assertTrue(execService.awaitTermination(30, TimeUnit.SECONDS));
+        for (Future<?> f : futureList) {
+            f.get();
+        }
+
+        Assert.assertEquals("Incorrect cache size detected", CACHE_SIZE, testCache.getCacheSize());
+        for (LRUCache<String, Double> segment : testCache.segments) {
+            TestMultithreadedLRU.detectLoop(segment, segment.getCacheSize());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestSegmentedLruPolicy {
+
+    final static int CACHE_SIZE = 10;
+
+    @Test
+    public void testSecondHitProtects() {
+
+        LRUCache<Integer, Integer> testCache = newCache(CACHE_SIZE);
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            testCache.writeValueToCache(i, i);
+        }
+        testCache.getValueFromCache(0);
+        testCache.getValueFromCache(1);
+
+        // a scan of new keys churns through probation only
+        for (int i = 100; i < 100 + CACHE_SIZE * 10; i++) {
+            testCache.writeValueToCache(i, i);
+        }
+
+        Assert.assertTrue("Protected entry was evicted by the scan", testCache.existsInCache(0));
+        Assert.assertTrue("Protected entry was evicted by the scan", testCache.existsInCache(1));
+        Assert.assertTrue(!testCache.existsInCache(2));
+        Assert.assertEquals(CACHE_SIZE, testCache.getCacheSize());
+    }
+
+    @Test
+    public void testProtectedOverflowIsDemoted() {
+
+        SegmentedLruPolicy<Integer, Integer> policy = new SegmentedLruPolicy<Integer, Integer>(CACHE_SIZE);
+        @SuppressWarnings("unchecked")
+        LRUCache.Node<Integer, Integer>[] nodes = (LRUCache.Node<Integer, Integer>[]) new LRUCache.Node<?, ?>[CACHE_SIZE];
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            nodes[i] = new LRUCache.Node<Integer, Integer>(i, i);
+            nodes[i].weight = 1;
+            policy.onAdd(nodes[i]);
+        }
+
+        // promote everything: protected holds 80%, the two least recently promoted go back to probation
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            policy.onAccess(nodes[i]);
+        }
+        Assert.assertEquals(CACHE_SIZE * SegmentedLruPolicy.PROTECTED_PERCENT / 100, policy.protectedList.getCurrentSize());
+        Assert.assertEquals(SegmentedLruPolicy.PROBATION, nodes[0].queue);
+        Assert.assertEquals(SegmentedLruPolicy.PROBATION, nodes[1].queue);
+        Assert.assertEquals(SegmentedLruPolicy.PROTECTED, nodes[2].queue);
+
+        Assert.assertSame("Victim should be the oldest demoted entry", nodes[0], policy.evict());
+        Assert.assertEquals(0, nodes[0].queue);
+        Assert.assertEquals(CACHE_SIZE - 1, policy.getCurrentSize());
+    }
+
+    @Test
+    public void testResizeAndInvalidate() {
+
+        LRUCache<Integer, Integer> testCache = newCache(CACHE_SIZE * 10);
+        for (int i = 0; i < CACHE_SIZE * 10; i++) {
+            testCache.writeValueToCache(i, i);
+            testCache.getValueFromCache(i);
+        }
+        testCache.invalidate(CACHE_SIZE * 10 - 1);
+        testCache.resizeContainer(CACHE_SIZE);
+
+        Assert.assertEquals(CACHE_SIZE, testCache.getCacheSize());
+        Assert.assertEquals(0, testCache.getPriorityInCacheOfObject(CACHE_SIZE * 10 - 2));
+        Assert.assertEquals(-1, testCache.getPriorityInCacheOfObject(0));
+    }
+
+    private static LRUCache<Integer, Integer> newCache(int size) {
+        return LRUCache.<Integer, Integer>newBuilder()
+                .maximumSize(size)
+                .evictionMode(EvictionMode.SEGMENTED_LRU)
+                .build();
+    }
+}
@@ -0,0 +1,158 @@
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestSnapshot {
+
+    final static int CACHE_SIZE = 200;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTripKeepsRecency() throws IOException {
+
+        LRUCache<Integer, String> testCache = new LRUCache<Integer, String>(CACHE_SIZE);
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            testCache.writeValueToCache(i, "value " + i);
+        }
+        testCache.getValueFromCache(0);
+
+        Path snapshot = folder.getRoot().toPath().resolve("cache.snapshot");
+        Assert.assertEquals(CACHE_SIZE, testCache.saveSnapshot(snapshot, Codecs.INTEGER, Codecs.STRING));
+
+        LRUCache<Integer, String> restored = new LRUCache<Integer, String>(CACHE_SIZE);
+        Assert.assertEquals(CACHE_SIZE, restored.loadSnapshot(snapshot, Codecs.INTEGER, Codecs.STRING));
+        Assert.assertEquals(testCache.toString(), restored.toString());
+        Assert.assertEquals(0, restored.getPriorityInCacheOfObject(0));
+        Assert.assertEquals(CACHE_SIZE - 1, restored.getPriorityInCacheOfObject(1));
+        Assert.assertTrue("Temporary file left behind", !Files.exists(snapshot.resolveSibling("cache.snapshot.tmp")));
+    }
+
+    @Test
+    public void testSmallerCacheKeepsHottest() throws IOException {
+
+        LRUCache<Integer, Double> testCache = new LRUCache<Integer, Double>(CACHE_SIZE);
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            testCache.writeValueToCache(i, Double.valueOf(i));
+        }
+
+        Path snapshot = folder.getRoot().toPath().resolve("cache.snapshot");
+        testCache.saveSnapshot(snapshot, Codecs.INTEGER, Codecs.DOUBLE);
+
+        LRUCache<Integer, Double> restored = LRUCache.<Integer, Double>newBuilder()
+                .maximumSize(10)
+                .evictionMode(EvictionMode.SEGMENTED_LRU)
+                .build();
+        restored.loadSnapshot(snapshot, Codecs.INTEGER, Codecs.DOUBLE);
+
+        Assert.assertEquals(10, restored.getCacheSize());
+        Assert.assertEquals(Double.valueOf(CACHE_SIZE - 1), restored.getValueFromCache(CACHE_SIZE - 1));
+        Assert.assertNull(restored.getValueFromCache(0));
+    }
+
+    @Test
+    public void testLargerSnapshotStopsAtCapacity() throws IOException {
+
+        LRUCache<Integer, Double> testCache = new LRUCache<Integer, Double>(CACHE_SIZE);
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            testCache.writeValueToCache(i, Double.valueOf(i));
+        }
+        Path snapshot = folder.getRoot().toPath().resolve("cache.snapshot");
+        testCache.saveSnapshot(snapshot, Codecs.INTEGER, Codecs.DOUBLE);
+
+        final List<Integer> removed = new ArrayList<Integer>();
+        LRUCache<Integer, Double> restored = LRUCache.<Integer, Double>newBuilder()
+                .maximumSize(10)
+                .removalHook((key, value, cause) -> removed.add(key))
+                .recordStats()
+                .build();
+        restored.writeValueToCache(-1, -1d);
+
+        // the room left is filled with the hottest entries, and nothing is loaded only to be evicted
+        Assert.assertEquals(9, restored.loadSnapshot(snapshot, Codecs.INTEGER, Codecs.DOUBLE));
+        Assert.assertEquals("Loaded entries were evicted again: " + removed, 0, removed.size());
+        Assert.assertEquals(0, restored.getStats().getEvictionCount());
+        Assert.assertEquals(10, restored.getCacheSize());
+        Assert.assertEquals(0, restored.getPriorityInCacheOfObject(CACHE_SIZE - 1));
+        for (int i = CACHE_SIZE - 9; i < CACHE_SIZE; i++) {
+            Assert.assertTrue("Hot entry " + i + " was not loaded", restored.existsInCache(i));
+        }
+        Assert.assertEquals(Double.valueOf(-1), restored.getValueFromCache(-1));
+    }
+
+    @Test
+    public void testExistingEntriesWin() throws IOException {
+
+        LRUCache<Integer, String> testCache = new LRUCache<Integer, String>(CACHE_SIZE);
+        for (int i = 0; i < 10; i++) {
+            testCache.writeValueToCache(i, "snapshot");
+        }
+        Path snapshot = folder.getRoot().toPath().resolve("cache.snapshot");
+        testCache.saveSnapshot(snapshot, Codecs.INTEGER, Codecs.STRING);
+
+        LRUCache<Integer, String> restored = new LRUCache<Integer, String>(CACHE_SIZE);
+        restored.writeValueToCache(5, "newer");
+        Assert.assertEquals(9, restored.loadSnapshot(snapshot, Codecs.INTEGER, Codecs.STRING));
+        Assert.assertEquals("Existing value was overwritten", "newer", restored.getValueFromCache(5));
+    }
+
+    @Test
+    public void testEveryPolicyCanBeSaved() throws IOException {
+
+        for (EvictionMode mode : EvictionMode.values()) {
+            LRUCache<String, String> testCache = LRUCache.<String, String>newBuilder()
+                    .maximumSize(CACHE_SIZE)
+                    .evictionMode(mode)
+                    .build();
+            for (int i = 0; i < CACHE_SIZE * 2; i++) {
+                testCache.writeValueToCache("KEY_" + i, "value");
+                testCache.getValueFromCache("KEY_" + i / 2);
+            }
+
+            Path snapshot = folder.getRoot().toPath().resolve(mode + ".snapshot");
+            int saved = testCache.saveSnapshot(snapshot, Codecs.STRING, Codecs.STRING);
+            Assert.assertEquals(mode.toString(), testCache.getCacheSize(), saved);
+
+            LRUCache<String, String> restored = LRUCache.<String, String>newBuilder()
+                    .maximumSize(CACHE_SIZE)
+                    .evictionMode(mode)
+                    .build();
+            Assert.assertEquals(mode.toString(), saved, restored.loadSnapshot(snapshot, Codecs.STRING, Codecs.STRING));
+        }
+    }
+
+    @Test
+    public void testCorruptSnapshot() throws IOException {
+
+        LRUCache<Integer, String> testCache = new LRUCache<Integer, String>(CACHE_SIZE);
+        testCache.writeValueToCache(1, "value");
+        Path snapshot = folder.getRoot().toPath().resolve("cache.snapshot");
+        testCache.saveSnapshot(snapshot, Codecs.INTEGER, Codecs.STRING);
+
+        byte[] bytes = Files.readAllBytes(snapshot);
+        Files.write(snapshot, Arrays.copyOf(bytes, bytes.length - 2));
+        try {
+            new LRUCache<Integer, String>(CACHE_SIZE).loadSnapshot(snapshot, Codecs.INTEGER, Codecs.STRING);
+            Assert.fail("Loaded a truncated snapshot");
+        } catch (IOException e) {
+            // expected
+        }
+
+        Files.write(snapshot, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12});
+        try {
+            new LRUCache<Integer, String>(CACHE_SIZE).loadSnapshot(snapshot, Codecs.INTEGER, Codecs.STRING);
+            Assert.fail("Loaded something that is not a snapshot");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,200 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class TestTieredLRUCache {
+
+    final static int CACHE_SIZE = 10;
+    final static long SEGMENT_SIZE = 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    TieredLRUCache<Integer, String> testCache;
+
+    @Before
+    public void setUp() {
+        testCache = new TieredLRUCache<Integer, String>(CACHE_SIZE, folder.getRoot().toPath(), Codecs.INTEGER,
+                Codecs.STRING, 16 * SEGMENT_SIZE, SEGMENT_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        testCache.close();
+    }
+
+    @Test
+    public void testEvictedEntriesArePromotedBack() {
+
+        for (int i = 0; i < CACHE_SIZE * 3; i++) {
+            testCache.writeValueToCache(i, "value " + i);
+        }
+        Assert.assertEquals(CACHE_SIZE, testCache.getFirstLevelSize());
+        Assert.assertEquals(CACHE_SIZE * 2, testCache.getSecondLevel().getEntryCount());
+        Assert.assertEquals(CACHE_SIZE * 3, testCache.getCacheSize());
+
+        // a hit on disk goes back into L1 and pushes L1's coldest entry down
+        Assert.assertEquals("value 0", testCache.getValueFromCache(0));
+        Assert.assertTrue(testCache.firstLevel.existsInCache(0));
+        Assert.assertTrue("Promoted entry still on disk", !testCache.getSecondLevel().contains(0));
+        Assert.assertTrue(testCache.getSecondLevel().contains(CACHE_SIZE * 2));
+        Assert.assertEquals(CACHE_SIZE * 3, testCache.getCacheSize());
+        Assert.assertNull(testCache.getValueFromCache(CACHE_SIZE * 3));
+    }
+
+    @Test
+    public void testWritesAndInvalidationReachBothLevels() {
+
+        for (int i = 0; i < CACHE_SIZE * 2; i++) {
+            testCache.writeValueToCache(i, "value " + i);
+        }
+
+        testCache.writeValueToCache(0, "rewritten");
+        Assert.assertTrue(!testCache.getSecondLevel().contains(0));
+        Assert.assertTrue(testCache.existsInCache(0, "rewritten"));
+
+        testCache.invalidate(1);
+        Assert.assertTrue(!testCache.existsInCache(1));
+        Assert.assertNull(testCache.getValueFromCache(1));
+
+        Assert.assertEquals("value 2", testCache.get(2, key -> "loaded"));
+        Assert.assertEquals("loaded", testCache.get(-1, key -> "loaded"));
+    }
+
+    @Test
+    public void testSegmentsAreCompactedAndBounded() throws IOException {
+
+        // rewriting the same keys over and over leaves mostly garbage in the sealed segments
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < CACHE_SIZE * 3; i++) {
+                testCache.writeValueToCache(i, "round " + round + " value " + i);
+            }
+        }
+
+        LogStructuredStore<Integer, String> store = testCache.getSecondLevel();
+        Assert.assertTrue("Nothing was compacted", store.getCompactionCount() > 0);
+        Assert.assertTrue("Disk bound exceeded", store.getDiskBytes() <= 16 * SEGMENT_SIZE);
+        try (Stream<?> files = Files.list(folder.getRoot().toPath())) {
+            Assert.assertEquals("Deleted segments left files behind", store.getSegmentCount(), files.count());
+        }
+        for (int i = 0; i < CACHE_SIZE * 3; i++) {
+            Assert.assertEquals("round 49 value " + i, testCache.getValueFromCache(i));
+        }
+    }
+
+    @Test
+    public void testOldestSegmentsAreDropped() {
+
+        final int KEYS = 2000;
+        for (int i = 0; i < KEYS; i++) {
+            testCache.writeValueToCache(i, "value " + i);
+        }
+
+        LogStructuredStore<Integer, String> store = testCache.getSecondLevel();
+        Assert.assertTrue(store.getDiskBytes() <= 16 * SEGMENT_SIZE);
+        Assert.assertTrue("Nothing was dropped", store.getEntryCount() < KEYS - CACHE_SIZE);
+        Assert.assertNull("Oldest entry survived", testCache.getValueFromCache(0));
+        Assert.assertEquals("value " + (KEYS - CACHE_SIZE - 1), testCache.getValueFromCache(KEYS - CACHE_SIZE - 1));
+    }
+
+    @Test
+    public void testWriteDuringPromotionWins() {
+
+        final List<TieredLRUCache<Integer, String>> cacheHolder = new ArrayList<TieredLRUCache<Integer, String>>();
+        // reading "v1" back from disk is the moment another writer gets in with "v2"
+        final Codec<String> racingCodec = new Codec<String>() {
+            public int encodedSize(String value) {
+                return Codecs.STRING.encodedSize(value);
+            }
+
+            public void encode(String value, ByteBuffer destination) {
+                Codecs.STRING.encode(value, destination);
+            }
+
+            public String decode(ByteBuffer source) {
+                final String value = Codecs.STRING.decode(source);
+                if (value.equals("v1")) {
+                    cacheHolder.get(0).writeValueToCache(0, "v2");
+                }
+                return value;
+            }
+        };
+        TieredLRUCache<Integer, String> racingCache = new TieredLRUCache<Integer, String>(CACHE_SIZE,
+                folder.getRoot().toPath().resolve("racing"), Codecs.INTEGER, racingCodec, 16 * SEGMENT_SIZE, SEGMENT_SIZE);
+        cacheHolder.add(racingCache);
+        try {
+            racingCache.writeValueToCache(0, "v1");
+            for (int i = 1; i <= CACHE_SIZE; i++) {
+                racingCache.writeValueToCache(i, "value " + i);
+            }
+            Assert.assertTrue(racingCache.getSecondLevel().contains(0));
+
+            Assert.assertEquals("The promotion brought back the older value", "v2", racingCache.getValueFromCache(0));
+            Assert.assertEquals("v2", racingCache.getValueFromCache(0));
+            Assert.assertTrue(!racingCache.getSecondLevel().contains(0));
+        } finally {
+            racingCache.close();
+        }
+    }
+
+    // a read that mistakes the interrupt for a compaction retries forever
+    @Test(timeout = 10000)
+    public void testInterruptedReaderDoesNotBreakTheSegment() {
+
+        for (int i = 0; i < CACHE_SIZE * 2; i++) {
+            testCache.writeValueToCache(i, "value " + i);
+        }
+        LogStructuredStore<Integer, String> store = testCache.getSecondLevel();
+        Assert.assertTrue(store.contains(0));
+
+        // an interrupted read closes the channel for every thread
+        Thread.currentThread().interrupt();
+        try {
+            store.get(0);
+            Assert.fail("Interrupted read succeeded");
+        } catch (UncheckedIOException e) {
+            // expected
+        } finally {
+            Thread.interrupted();
+        }
+
+        Assert.assertEquals("value 0", store.get(0));
+        testCache.writeValueToCache(CACHE_SIZE * 2, "value " + CACHE_SIZE * 2);
+        Assert.assertEquals("value 1", testCache.getValueFromCache(1));
+    }
+
+    @Test
+    public void testStaleSegmentsAreDeleted() throws IOException {
+
+        // what a killed process leaves behind
+        Path directory = folder.newFolder("crashed").toPath();
+        Files.write(directory.resolve("segment-00000000.log"), new byte[]{1, 2, 3});
+        Files.write(directory.resolve("segment-00000001.log"), new byte[]{4, 5, 6});
+
+        TieredLRUCache<Integer, String> restarted = new TieredLRUCache<Integer, String>(CACHE_SIZE, directory,
+                Codecs.INTEGER, Codecs.STRING, 16 * SEGMENT_SIZE, SEGMENT_SIZE);
+        try {
+            for (int i = 0; i < CACHE_SIZE * 2; i++) {
+                restarted.writeValueToCache(i, "value " + i);
+            }
+            Assert.assertEquals("value 0", restarted.getValueFromCache(0));
+            try (Stream<?> files = Files.list(directory)) {
+                Assert.assertEquals("Stale segments were kept", restarted.getSecondLevel().getSegmentCount(), files.count());
+            }
+        } finally {
+            restarted.close();
+        }
+    }
+}
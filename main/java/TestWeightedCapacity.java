@@ -0,0 +1,87 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestWeightedCapacity {
+
+    final static long MAXIMUM_WEIGHT = 100;
+
+    @Test
+    public void testEvictsByWeight() {
+
+        LRUCache<String, String> testCache = LRUCache.<String, String>newBuilder()
+                .maximumWeight(MAXIMUM_WEIGHT)
+                .weigher((key, value) -> value.length())
+                .build();
+
+        testCache.writeValueToCache("KEY_1", repeat('a', 40));
+        testCache.writeValueToCache("KEY_2", repeat('b', 40));
+        Assert.assertEquals(80, testCache.getWeightedSize());
+
+        // KEY_1 is the least recently used and has to go to make room
+        testCache.writeValueToCache("KEY_3", repeat('c', 30));
+        Assert.assertTrue(!testCache.existsInCache("KEY_1"));
+        Assert.assertEquals(70, testCache.getWeightedSize());
+        Assert.assertEquals(2, testCache.getCacheSize());
+
+        // growing a value in place is re-weighed as well
+        testCache.writeValueToCache("KEY_3", repeat('c', 70));
+        Assert.assertTrue(!testCache.existsInCache("KEY_2"));
+        Assert.assertEquals(70, testCache.getWeightedSize());
+    }
+
+    @Test
+    public void testOversizedEntryIsNotKept() {
+
+        LRUCache<String, String> testCache = LRUCache.<String, String>newBuilder()
+                .maximumWeight(MAXIMUM_WEIGHT)
+                .weigher((key, value) -> value.length())
+                .bufferWrites(true)
+                .build();
+
+        testCache.writeValueToCache("KEY_1", repeat('a', 10));
+        testCache.writeValueToCache("KEY_2", repeat('b', (int) MAXIMUM_WEIGHT + 1));
+
+        Assert.assertEquals(1, testCache.getCacheSize());
+        Assert.assertTrue(testCache.existsInCache("KEY_1"));
+        Assert.assertEquals(10, testCache.getWeightedSize());
+    }
+
+    @Test
+    public void testBeyondTheOldCap() {
+
+        final int CACHE_SIZE = 100000;
+        LRUCache<Integer, Integer> testCache = new LRUCache<Integer, Integer>(CACHE_SIZE);
+        for (int i = 0; i < CACHE_SIZE * 2; i++) {
+            testCache.writeValueToCache(i, i);
+        }
+
+        Assert.assertEquals(CACHE_SIZE, testCache.getCacheSize());
+        Assert.assertEquals(CACHE_SIZE, testCache.getWeightedSize());
+        Assert.assertTrue(testCache.existsInCache(CACHE_SIZE * 2 - 1));
+        Assert.assertTrue(!testCache.existsInCache(CACHE_SIZE - 1));
+    }
+
+    @Test
+    public void testSegmentsShareTheWeigher() {
+
+        SegmentedLRUCache<Integer, String> testCache = LRUCache.<Integer, String>newBuilder()
+                .maximumWeight(MAXIMUM_WEIGHT * 4)
+                .weigher((key, value) -> value.length())
+                .buildSegmented(4);
+
+        for (int i = 0; i < 1000; i++) {
+            testCache.writeValueToCache(i, repeat('x', 10));
+        }
+        Assert.assertTrue("Segments did not use the weigher", testCache.getWeightedSize() <= MAXIMUM_WEIGHT * 4);
+        Assert.assertEquals(testCache.getWeightedSize(), testCache.getCacheSize() * 10);
+    }
+
+    private static String repeat(char c, int count) {
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,114 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class TestWindowTinyLfu {
+
+    final static int CACHE_SIZE = 100;
+    final static int HOT_KEYS = 50;
+    final static int SCAN_LENGTH = 10000;
+
+    @Test
+    public void testScanDoesNotFlushHotSet() {
+
+        LRUCache<Integer, Integer> lfuCache = LRUCache.<Integer, Integer>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .evictionMode(EvictionMode.W_TINY_LFU)
+                .build();
+        LRUCache<Integer, Integer> lruCache = new LRUCache<Integer, Integer>(CACHE_SIZE);
+
+        for (LRUCache<Integer, Integer> cache : Arrays.asList(lfuCache, lruCache)) {
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < HOT_KEYS; i++) {
+                    if (cache.getValueFromCache(i) == null) {
+                        cache.writeValueToCache(i, i);
+                    }
+                }
+            }
+            for (int i = 0; i < SCAN_LENGTH; i++) {
+                cache.writeValueToCache(HOT_KEYS + i, i);
+            }
+        }
+
+        Assert.assertEquals(CACHE_SIZE, lfuCache.getCacheSize());
+        Assert.assertTrue("Scan flushed the hot set", countPresent(lfuCache) >= HOT_KEYS * 9 / 10);
+        Assert.assertEquals("LRU is expected to lose the hot set", 0, countPresent(lruCache));
+    }
+
+    @Test
+    public void testNewKeysStillGetIn() {
+
+        LRUCache<Integer, Integer> testCache = LRUCache.<Integer, Integer>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .evictionMode(EvictionMode.W_TINY_LFU)
+                .build();
+
+        // a new key that keeps getting used wins against the least used entries eventually
+        for (int i = 0; i < CACHE_SIZE * 2; i++) {
+            testCache.writeValueToCache(i, i);
+        }
+        for (int round = 0; round < 10; round++) {
+            testCache.writeValueToCache(-1, round);
+            testCache.getValueFromCache(-1);
+            testCache.writeValueToCache(CACHE_SIZE * 10 + round, round);
+        }
+        Assert.assertEquals(Integer.valueOf(9), testCache.getValueFromCache(-1));
+        Assert.assertEquals(CACHE_SIZE, testCache.getCacheSize());
+    }
+
+    @Test
+    public void testInvalidateResizeAndBufferedWrites() {
+
+        LRUCache<Integer, Integer> testCache = LRUCache.<Integer, Integer>newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .evictionMode(EvictionMode.W_TINY_LFU)
+                .bufferWrites(true)
+                .build();
+
+        for (int i = 0; i < CACHE_SIZE * 3; i++) {
+            testCache.writeValueToCache(i % (CACHE_SIZE * 2), i);
+            testCache.getValueFromCache(i % 7);
+        }
+        testCache.invalidate(0);
+        Assert.assertTrue(!testCache.existsInCache(0));
+        Assert.assertTrue(testCache.getCacheSize() <= CACHE_SIZE);
+
+        testCache.resizeContainer(10);
+        Assert.assertEquals(10, testCache.getCacheSize());
+        Assert.assertEquals(10, testCache.getWeightedSize());
+        Assert.assertNull("Orderedlist only exists in LRU mode", testCache.getOrderedList());
+    }
+
+    @Test
+    public void testSketchCountsAndAges() {
+
+        FrequencySketch<String> sketch = new FrequencySketch<String>();
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("KEY_1");
+        }
+        sketch.increment("KEY_2");
+
+        Assert.assertTrue(sketch.frequency("KEY_1") >= 5);
+        Assert.assertTrue(sketch.frequency("KEY_1") > sketch.frequency("KEY_2"));
+
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("KEY_1");
+        }
+        Assert.assertEquals("Counter did not saturate", 15, sketch.frequency("KEY_1"));
+
+        sketch.reset();
+        Assert.assertEquals(7, sketch.frequency("KEY_1"));
+    }
+
+    private static int countPresent(LRUCache<Integer, Integer> cache) {
+
+        int present = 0;
+        for (int i = 0; i < HOT_KEYS; i++) {
+            if (cache.existsInCache(i)) {
+                present++;
+            }
+        }
+        return present;
+    }
+}
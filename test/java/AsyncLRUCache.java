@@ -0,0 +1,128 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/*
+An LRU cache of CompletableFutures, for callers that never want to block on a lookup.
+
+Every entry is a future. A miss puts a future for the load in the cache straight away and runs the loader on the
+executor, so:
+1. get and getIfPresent never wait for a load. A lookup for a key whose load is still running gets the same, still
+   incomplete, future back.
+2. Concurrent misses on the same key share the one future (see LRUCache.get), so the loader runs once per key.
+3. In-flight loads are entries like any other and count towards the maximum size. A burst of slow loads therefore
+   evicts completed entries instead of growing the cache past its limit.
+4. A load that fails, or completes with null, is removed from the cache as soon as it completes, so the next lookup
+   starts a fresh load. The callers holding that future still see the failure.
+
+The default executor runs every load on its own virtual thread when the JVM has them (Java 21 and up), and falls back to
+the common ForkJoinPool otherwise. The cache underneath guards its list with a ReentrantLock rather than a monitor, so a
+virtual thread that has to wait for it unmounts instead of pinning its carrier thread.
+ */
+public class AsyncLRUCache<K, V> {
+
+    static Logger log = Logger.getLogger("AsyncLRUCache.class");
+
+    // Shared by every cache that was not given an executor of its own. Never shut down, its threads are daemons.
+    private static final Executor DEFAULT_EXECUTOR = createDefaultExecutor();
+
+    final LRUCache<K, CompletableFuture<V>> futures;
+    final Executor executor;
+
+    public AsyncLRUCache(long maximumSize) {
+        this(maximumSize, defaultExecutor());
+    }
+
+    public AsyncLRUCache(long maximumSize, Executor executor) {
+        this.futures = new LRUCache<K, CompletableFuture<V>>(maximumSize);
+        this.executor = executor;
+    }
+
+    // The future for the key, done or not, or null if there is none
+    public CompletableFuture<V> getIfPresent(final K key) {
+        return futures.getIfPresent(key);
+    }
+
+    // Returns the cached future for the key, or starts loading it on the executor
+    public CompletableFuture<V> get(final K key, final Function<? super K, ? extends V> loader) {
+
+        final CompletableFuture<V> cached = futures.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        // only the thread whose loader created the future sets up its cleanup, and only after it is in the cache
+        final Object[] started = new Object[1];
+        final CompletableFuture<V> future = futures.get(key, k -> {
+            CompletableFuture<V> load = CompletableFuture.supplyAsync(() -> loader.apply(k), executor);
+            started[0] = load;
+            return load;
+        });
+
+        if (future == started[0]) {
+            removeWhenUnsuccessful(key, future);
+        }
+        return future;
+    }
+
+    // Caches a future produced elsewhere, replacing whatever the key had
+    public void put(final K key, final CompletableFuture<V> future) {
+
+        futures.writeValueToCache(key, future);
+        removeWhenUnsuccessful(key, future);
+    }
+
+    public void put(final K key, final V value) {
+        put(key, CompletableFuture.completedFuture(value));
+    }
+
+    public void invalidate(final K key) {
+        futures.invalidate(key);
+    }
+
+    public boolean existsInCache(final K key) {
+        return futures.existsInCache(key);
+    }
+
+    public void resizeContainer(final long newConfiguredSize) {
+        futures.resizeContainer(newConfiguredSize);
+    }
+
+    // Counts in-flight loads as well
+    public int getCacheSize() {
+        return futures.getCacheSize();
+    }
+
+    private void removeWhenUnsuccessful(final K key, final CompletableFuture<V> future) {
+
+        future.whenComplete((value, failure) -> {
+            // remove(key, future) so that a newer future for the same key is left alone
+            if (failure != null || value == null) {
+                futures.remove(key, future);
+            }
+        });
+    }
+
+    // The executor loads, refreshes, removal notifications and write-back flushes run on unless the builder names one
+    static Executor defaultExecutor() {
+        return DEFAULT_EXECUTOR;
+    }
+
+    /*
+    Executors.newVirtualThreadPerTaskExecutor only exists from Java 21 on, so it is looked up reflectively to keep this
+    compiling on older JDKs.
+     */
+    private static Executor createDefaultExecutor() {
+
+        try {
+            Method factory = Class.forName("java.util.concurrent.Executors").getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.fine("No virtual threads on this JVM, loading on the common pool");
+            return ForkJoinPool.commonPool();
+        }
+    }
+}
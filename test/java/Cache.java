@@ -0,0 +1,41 @@
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The operations every cache implementation in this project supports, so that callers (and benchmarks) can swap a
+ * single-lock {@link LRUCache} for a {@link SegmentedLRUCache} without changing code.
+ */
+public interface Cache<K, V> {
+
+    // Returns null if the key is not in the cache
+    V getValueFromCache(K key);
+
+    // Same as getValueFromCache
+    V getIfPresent(K key);
+
+    /**
+     * Returns the cached value, or loads, caches and returns it on a miss. Concurrent misses on the same key share a
+     * single call to the loader, and the loader never runs while a cache-wide lock is held. If the loader returns null
+     * nothing is cached and null is returned; if it throws, every caller waiting on that load gets the exception.
+     */
+    V get(K key, Function<? super K, ? extends V> loader);
+
+    void writeValueToCache(K key, V value);
+
+    // The keys that are present, mapped to their values. Recency is updated for the whole batch at once.
+    Map<K, V> getAll(Iterable<? extends K> keys);
+
+    // Writes the whole batch under one lock acquisition (per segment, for segmented caches)
+    void putAll(Map<? extends K, ? extends V> entries);
+
+    boolean existsInCache(K key);
+
+    boolean existsInCache(K key, V value);
+
+    // Removes the key, if it is cached
+    void invalidate(K key);
+
+    void resizeContainer(long newConfiguredSize);
+
+    int getCacheSize();
+}
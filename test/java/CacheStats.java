@@ -0,0 +1,152 @@
+/**
+ * An immutable snapshot of what a cache has been doing since it was built. All counts only ever go up, so the activity
+ * over an interval is the difference between two snapshots, see {@link #minus(CacheStats)}.
+ *
+ * Statistics are off unless the cache was built with {@link LRUCache.Builder#recordStats()}, otherwise every count
+ * stays 0.
+ */
+public final class CacheStats {
+
+    private static final CacheStats EMPTY = new CacheStats(0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+    private final long hitCount;
+    private final long missCount;
+    private final long putCount;
+    private final long updateCount;
+    private final long sizeEvictionCount;
+    private final long weightEvictionCount;
+    private final long expiryEvictionCount;
+    private final long resizeEvictionCount;
+    private final long resizeCount;
+    private final long totalWriteTime;
+
+    public CacheStats(long hitCount, long missCount, long putCount, long updateCount, long sizeEvictionCount,
+                      long weightEvictionCount, long expiryEvictionCount, long resizeEvictionCount, long resizeCount,
+                      long totalWriteTime) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.putCount = putCount;
+        this.updateCount = updateCount;
+        this.sizeEvictionCount = sizeEvictionCount;
+        this.weightEvictionCount = weightEvictionCount;
+        this.expiryEvictionCount = expiryEvictionCount;
+        this.resizeEvictionCount = resizeEvictionCount;
+        this.resizeCount = resizeCount;
+        this.totalWriteTime = totalWriteTime;
+    }
+
+    public static CacheStats empty() {
+        return EMPTY;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    // 1.0 when nothing has been requested yet
+    public double getHitRate() {
+
+        final long requestCount = getRequestCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    public double getMissRate() {
+
+        final long requestCount = getRequestCount();
+        return requestCount == 0 ? 0.0 : (double) missCount / requestCount;
+    }
+
+    // Writes of a key that was not in the cache yet
+    public long getPutCount() {
+        return putCount;
+    }
+
+    // Writes that overwrote the value of a key already in the cache
+    public long getUpdateCount() {
+        return updateCount;
+    }
+
+    // Entries that fell off the tail because the cache was full, counting entries
+    public long getSizeEvictionCount() {
+        return sizeEvictionCount;
+    }
+
+    // Entries that fell off the tail because the cache was full, when it is bounded by a weigher
+    public long getWeightEvictionCount() {
+        return weightEvictionCount;
+    }
+
+    public long getExpiryEvictionCount() {
+        return expiryEvictionCount;
+    }
+
+    // Entries evicted by resizeContainer shrinking the cache
+    public long getResizeEvictionCount() {
+        return resizeEvictionCount;
+    }
+
+    public long getEvictionCount() {
+        return sizeEvictionCount + weightEvictionCount + expiryEvictionCount + resizeEvictionCount;
+    }
+
+    public long getResizeCount() {
+        return resizeCount;
+    }
+
+    // Nanoseconds spent in writeValueToCache, summed over all writers
+    public long getTotalWriteTime() {
+        return totalWriteTime;
+    }
+
+    public double getAverageWriteTime() {
+
+        final long writeCount = putCount + updateCount;
+        return writeCount == 0 ? 0.0 : (double) totalWriteTime / writeCount;
+    }
+
+    // Adds up the stats of several caches, e.g. the segments of a SegmentedLRUCache
+    public CacheStats plus(CacheStats other) {
+        return new CacheStats(
+                hitCount + other.hitCount,
+                missCount + other.missCount,
+                putCount + other.putCount,
+                updateCount + other.updateCount,
+                sizeEvictionCount + other.sizeEvictionCount,
+                weightEvictionCount + other.weightEvictionCount,
+                expiryEvictionCount + other.expiryEvictionCount,
+                resizeEvictionCount + other.resizeEvictionCount,
+                resizeCount + other.resizeCount,
+                totalWriteTime + other.totalWriteTime);
+    }
+
+    // The activity between an earlier snapshot and this one
+    public CacheStats minus(CacheStats earlier) {
+        return new CacheStats(
+                hitCount - earlier.hitCount,
+                missCount - earlier.missCount,
+                putCount - earlier.putCount,
+                updateCount - earlier.updateCount,
+                sizeEvictionCount - earlier.sizeEvictionCount,
+                weightEvictionCount - earlier.weightEvictionCount,
+                expiryEvictionCount - earlier.expiryEvictionCount,
+                resizeEvictionCount - earlier.resizeEvictionCount,
+                resizeCount - earlier.resizeCount,
+                totalWriteTime - earlier.totalWriteTime);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats[hits=" + hitCount + ", misses=" + missCount + ", puts=" + putCount + ", updates=" + updateCount +
+                ", evictions(size=" + sizeEvictionCount + ", weight=" + weightEvictionCount + ", expiry=" +
+                expiryEvictionCount + ", resize=" + resizeEvictionCount + "), resizes=" + resizeCount +
+                ", totalWriteTime=" + totalWriteTime + "ns]";
+    }
+}
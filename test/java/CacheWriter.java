@@ -0,0 +1,20 @@
+import java.util.Map;
+
+/**
+ * The backing store behind a cache that owns its writes, see {@link LRUCache.Builder#writeThrough(CacheWriter)} and
+ * {@link LRUCache.Builder#writeBack(CacheWriter, long, java.util.concurrent.TimeUnit)}.
+ *
+ * Values the cache loaded itself (see {@link Cache#get}) or refreshed are never written back, they came from the
+ * backend in the first place.
+ */
+public interface CacheWriter<K, V> {
+
+    void write(K key, V value);
+
+    // Write-back always flushes through this. Override it if the backend takes batches.
+    default void writeAll(Map<K, V> entries) {
+        for (Map.Entry<K, V> entry : entries.entrySet()) {
+            write(entry.getKey(), entry.getValue());
+        }
+    }
+}
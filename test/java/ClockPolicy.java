@@ -0,0 +1,207 @@
+import java.util.function.Consumer;
+
+/*
+CLOCK eviction: an approximation of LRU where a hit costs one plain field write.
+
+The entries sit in a circular array of slots. A hit sets the entry's reference bit, from the reading thread and without
+taking any lock (see onLockFreeAccess), so reads never queue up in the read buffer and never relink anything. To evict,
+the hand sweeps forward from where it stopped last time: a referenced entry has its bit cleared and is skipped (its
+second chance), and the first unreferenced entry is the victim. An entry that is hit at least once per trip of the hand
+is never evicted, which is close to what LRU would keep.
+
+Slots of entries that leave the cache go on a free list and are reused by the next insert. The array doubles when every
+slot is taken, since with a weigher the number of entries is not known up front. Once no more than a quarter of the
+slots ever handed out are still taken, e.g. after a shrinking resize, the entries are packed into the lowest slots in
+the order the hand would reach them, so the hand stops sweeping over empty slots.
+
+Everything except onLockFreeAccess is called with the cache's evictionLock held.
+ */
+final class ClockPolicy<K, V> implements EvictionPolicy<K, V> {
+
+    static final int INITIAL_CAPACITY = 16;
+
+    LRUCache.Node<K, V>[] slots = newSlots(INITIAL_CAPACITY);
+    int[] freeSlots = new int[INITIAL_CAPACITY];
+    int freeSlotCount;
+
+    // slots below this have been handed out at least once
+    int highWaterMark;
+    int hand;
+    int currentSize;
+
+    @Override
+    public void onAdd(LRUCache.Node<K, V> node) {
+
+        final int slot;
+        if (freeSlotCount > 0) {
+            slot = freeSlots[--freeSlotCount];
+        } else {
+            if (highWaterMark == slots.length) {
+                grow();
+            }
+            slot = highWaterMark++;
+        }
+
+        // a new entry starts unreferenced, so it is the first to go if it is never read
+        slots[slot] = node;
+        node.slot = slot;
+        node.referenced = false;
+        currentSize++;
+    }
+
+    @Override
+    public void onAccess(LRUCache.Node<K, V> node) {
+        node.referenced = true;
+    }
+
+    @Override
+    public boolean onLockFreeAccess(LRUCache.Node<K, V> node) {
+
+        // checking first keeps a hot entry's cache line from being written over and over
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        return true;
+    }
+
+    @Override
+    public void onRemove(LRUCache.Node<K, V> node) {
+
+        if (node.slot < 0) {
+            throw new IllegalStateException("Removing a node that is not linked: " + node);
+        }
+
+        slots[node.slot] = null;
+        freeSlots[freeSlotCount++] = node.slot;
+        node.slot = -1;
+        currentSize--;
+
+        if (highWaterMark > INITIAL_CAPACITY && currentSize <= highWaterMark / 4) {
+            compact();
+        }
+    }
+
+    @Override
+    public LRUCache.Node<K, V> evict() {
+
+        if (currentSize == 0) {
+            return null;
+        }
+
+        // one trip clears every bit, but readers keep setting them meanwhile, so after two trips anything goes
+        final int maximumSteps = 2 * highWaterMark;
+        for (int steps = 0; ; steps++) {
+
+            final LRUCache.Node<K, V> node = slots[hand];
+            hand = (hand + 1) % highWaterMark;
+
+            if (node == null) {
+                continue;
+            }
+            if (node.referenced && steps < maximumSteps) {
+                node.referenced = false;
+                continue;
+            }
+
+            onRemove(node);
+            return node;
+        }
+    }
+
+    @Override
+    public boolean contains(LRUCache.Node<K, V> node) {
+        return node.slot >= 0;
+    }
+
+    @Override
+    public int getCurrentSize() {
+        return currentSize;
+    }
+
+    // Entries the hand reaches last count as the most recent, ignoring reference bits
+    @Override
+    public int getIndexOfObject(K key) {
+
+        int entriesBefore = 0;
+        for (int i = 0; i < highWaterMark; i++) {
+            final LRUCache.Node<K, V> node = slots[(hand + i) % highWaterMark];
+            if (node == null) {
+                continue;
+            }
+            if (node.getKey().equals(key)) {
+                return currentSize - 1 - entriesBefore;
+            }
+            entriesBefore++;
+        }
+        return -1;
+    }
+
+    // The hand reaches the last slot before it last, so those go first
+    @Override
+    public void forEachInPriorityOrder(Consumer<LRUCache.Node<K, V>> action) {
+
+        for (int i = highWaterMark - 1; i >= 0; i--) {
+            final LRUCache.Node<K, V> node = slots[(hand + i) % highWaterMark];
+            if (node != null) {
+                action.accept(node);
+            }
+        }
+    }
+
+    private void grow() {
+
+        LRUCache.Node<K, V>[] grownSlots = newSlots(slots.length * 2);
+        System.arraycopy(slots, 0, grownSlots, 0, slots.length);
+        slots = grownSlots;
+
+        int[] grownFreeSlots = new int[grownSlots.length];
+        System.arraycopy(freeSlots, 0, grownFreeSlots, 0, freeSlotCount);
+        freeSlots = grownFreeSlots;
+    }
+
+    /*
+    Moves the entries into slots 0 to currentSize - 1, starting with the one the hand would reach first, so the sweep
+    order and the reference bits survive. Costs O(highWaterMark), and only runs after at least three quarters of the
+    slots were freed.
+     */
+    private void compact() {
+
+        final int capacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(currentSize, 1)) * 2);
+        final LRUCache.Node<K, V>[] packedSlots = newSlots(capacity);
+        int packed = 0;
+        for (int i = 0; i < highWaterMark; i++) {
+            final LRUCache.Node<K, V> node = slots[(hand + i) % highWaterMark];
+            if (node != null) {
+                node.slot = packed;
+                packedSlots[packed++] = node;
+            }
+        }
+
+        slots = packedSlots;
+        freeSlots = new int[capacity];
+        freeSlotCount = 0;
+        highWaterMark = packed;
+        hand = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> LRUCache.Node<K, V>[] newSlots(int capacity) {
+        return (LRUCache.Node<K, V>[]) new LRUCache.Node<?, ?>[capacity];
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < highWaterMark; i++) {
+            final LRUCache.Node<K, V> node = slots[i];
+            if (node != null) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(node.getKey()).append(" : ").append(node.getValue()).append(node.referenced ? " (r)" : "");
+            }
+        }
+        return "clock[hand=" + hand + "] " + sb;
+    }
+}
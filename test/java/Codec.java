@@ -0,0 +1,16 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Turns values into bytes and back, for storage outside of the Java heap or on disk.
+ *
+ * encode must write exactly encodedSize(value) bytes, starting at the buffer's position. decode is handed a buffer
+ * whose remaining bytes are exactly the ones encode wrote.
+ */
+public interface Codec<T> {
+
+    int encodedSize(T value);
+
+    void encode(T value, ByteBuffer destination);
+
+    T decode(ByteBuffer source);
+}
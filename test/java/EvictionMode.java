@@ -0,0 +1,49 @@
+/**
+ * The eviction policies an {@link LRUCache} can be built with, see {@link LRUCache.Builder#evictionMode(EvictionMode)}.
+ */
+public enum EvictionMode {
+
+    /**
+     * Evict the least recently used entry. Cheap, but a single scan over many keys that are never read again flushes
+     * everything else out of the cache.
+     */
+    LRU {
+        <K, V> EvictionPolicy<K, V> newPolicy(long maximumWeight) {
+            return new LRUCache.LRUOptimizedLinkedList<K, V>();
+        }
+    },
+
+    /**
+     * Segmented LRU. New entries start on probation, and only a second hit moves them into the protected area, so a
+     * scan cannot push out entries that were used more than once. Costs about the same as LRU per operation.
+     */
+    SEGMENTED_LRU {
+        <K, V> EvictionPolicy<K, V> newPolicy(long maximumWeight) {
+            return new SegmentedLruPolicy<K, V>(maximumWeight);
+        }
+    },
+
+    /**
+     * CLOCK, an approximation of LRU. A hit only sets a reference bit on the entry, without taking the lock or relinking
+     * anything. To evict, a hand sweeps round the entries, giving every referenced entry a second chance by clearing
+     * its bit, and evicts the first entry it finds unreferenced.
+     */
+    CLOCK {
+        <K, V> EvictionPolicy<K, V> newPolicy(long maximumWeight) {
+            return new ClockPolicy<K, V>();
+        }
+    },
+
+    /**
+     * Window TinyLFU. New entries go through a small LRU window first, and only make it into the main space if they are
+     * used more often than the entry they would push out. Scan resistant, at the cost of a frequency sketch update on
+     * every access.
+     */
+    W_TINY_LFU {
+        <K, V> EvictionPolicy<K, V> newPolicy(long maximumWeight) {
+            return new WindowTinyLfuPolicy<K, V>(maximumWeight);
+        }
+    };
+
+    abstract <K, V> EvictionPolicy<K, V> newPolicy(long maximumWeight);
+}
@@ -0,0 +1,49 @@
+import java.util.function.Consumer;
+
+/*
+Decides which entry leaves the cache when it is over its maximum weight.
+
+The cache owns the hashmap and the weights, the policy owns the order. Every method is called with the cache's
+evictionLock held, so implementations need no synchronization of their own. A node's weight is already set when it is
+handed to onAdd.
+ */
+interface EvictionPolicy<K, V> {
+
+    // A node that was just written for the first time
+    void onAdd(LRUCache.Node<K, V> node);
+
+    // A hit, or an overwrite of a key that is already cached
+    void onAccess(LRUCache.Node<K, V> node);
+
+    // Unlinks a node that leaves the cache for a reason other than eviction, e.g. it was invalidated
+    void onRemove(LRUCache.Node<K, V> node);
+
+    // Picks the node to make room, unlinks it and returns it. Null when there is nothing left to evict.
+    LRUCache.Node<K, V> evict();
+
+    boolean contains(LRUCache.Node<K, V> node);
+
+    int getCurrentSize();
+
+    // O(n). How many entries would have to go before this one in the absence of further accesses, -1 if not present.
+    int getIndexOfObject(K key);
+
+    // O(n). Every linked node in getIndexOfObject order, so the one that would be kept the longest comes first.
+    void forEachInPriorityOrder(Consumer<LRUCache.Node<K, V>> action);
+
+    // The weight of a linked node changed by delta, for policies that keep weight budgets per queue
+    default void onWeightChanged(LRUCache.Node<K, V> node, int delta) {
+    }
+
+    /*
+    Called on a hit without the lock. A policy that can record the access on its own, without relinking anything, does
+    so and returns true. Otherwise it returns false and the access goes through the read buffer to onAccess.
+     */
+    default boolean onLockFreeAccess(LRUCache.Node<K, V> node) {
+        return false;
+    }
+
+    // The cache was resized
+    default void setMaximumWeight(long maximumWeight) {
+    }
+}
@@ -0,0 +1,55 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Works out how long an entry may stay in the cache, per entry. All durations and times are in nanoseconds, as read
+ * from the cache's {@link Ticker}.
+ *
+ * Each method returns how long from now the entry expires. Returning currentDuration leaves the expiration time as it
+ * was, e.g. reads do not extend the lifetime of an entry that expires a fixed time after it was written.
+ */
+public interface Expiry<K, V> {
+
+    long expireAfterCreate(K key, V value, long currentTime);
+
+    long expireAfterUpdate(K key, V value, long currentTime, long currentDuration);
+
+    long expireAfterRead(K key, V value, long currentTime, long currentDuration);
+
+    // Expires a fixed time after the entry was last written
+    static <K, V> Expiry<K, V> afterWrite(final long duration, final TimeUnit unit) {
+
+        final long nanos = unit.toNanos(duration);
+        return new Expiry<K, V>() {
+            public long expireAfterCreate(K key, V value, long currentTime) {
+                return nanos;
+            }
+
+            public long expireAfterUpdate(K key, V value, long currentTime, long currentDuration) {
+                return nanos;
+            }
+
+            public long expireAfterRead(K key, V value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+        };
+    }
+
+    // Expires a fixed time after the entry was last written or read
+    static <K, V> Expiry<K, V> afterAccess(final long duration, final TimeUnit unit) {
+
+        final long nanos = unit.toNanos(duration);
+        return new Expiry<K, V>() {
+            public long expireAfterCreate(K key, V value, long currentTime) {
+                return nanos;
+            }
+
+            public long expireAfterUpdate(K key, V value, long currentTime, long currentDuration) {
+                return nanos;
+            }
+
+            public long expireAfterRead(K key, V value, long currentTime, long currentDuration) {
+                return nanos;
+            }
+        };
+    }
+}
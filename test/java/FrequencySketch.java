@@ -0,0 +1,114 @@
+/*
+Estimates how often each key has been seen recently, in a fixed amount of memory. Used by WindowTinyLfuPolicy to decide
+whether a new entry is worth more than the one it would evict.
+
+It is a count-min sketch of 4-bit counters, sixteen to a long. Each key picks one long-aligned group of four counters
+per hash function (four of them), and its frequency is the smallest of its four counters: collisions only ever inflate a
+count, so the minimum is the closest estimate.
+
+Counters saturate at 15. Once sampleSize increments have been recorded every counter is halved, so old popularity fades
+and a key that used to be hot does not keep its place forever.
+
+Not thread safe. The policy only calls it with the cache's evictionLock held.
+ */
+final class FrequencySketch<E> {
+
+    // Halving 4-bit counters with a shift drags the low bit of each counter into the one below it, this masks it off
+    static final long RESET_MASK = 0x7777777777777777L;
+    static final long ONE_MASK = 0x1111111111111111L;
+    static final int MAXIMUM_CAPACITY = 1 << 22;
+
+    static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    long[] table;
+    int tableMask;
+    int sampleSize;
+    int size;
+
+    FrequencySketch() {
+        ensureCapacity(16);
+    }
+
+    // Grows the table for the expected number of keys. Growing starts the counts over.
+    void ensureCapacity(long expectedKeys) {
+
+        final int capacity = (int) Math.min(Math.max(expectedKeys, 16), MAXIMUM_CAPACITY);
+        if (table != null && table.length >= capacity) {
+            return;
+        }
+
+        table = new long[Integer.highestOneBit(capacity - 1) << 1];
+        tableMask = table.length - 1;
+        sampleSize = 10 * capacity;
+        size = 0;
+    }
+
+    int capacity() {
+        return table.length;
+    }
+
+    int frequency(E e) {
+
+        final int hash = spread(e.hashCode());
+        final int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            final int index = indexOf(hash, i);
+            final int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(E e) {
+
+        final int hash = spread(e.hashCode());
+        final int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    // Adds one to counter j (0-15) of table[i] unless it is already saturated
+    private boolean incrementAt(int i, int j) {
+
+        final int offset = j << 2;
+        final long mask = 0xfL << offset;
+        if ((table[i] & mask) != mask) {
+            table[i] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    // Halves every counter. Counters that were odd lose a fraction, which is taken off size as well.
+    void reset() {
+
+        int oddCounters = 0;
+        for (int i = 0; i < table.length; i++) {
+            oddCounters += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size - (oddCounters >>> 2)) >>> 1;
+    }
+
+    private int indexOf(int item, int i) {
+
+        long hash = (item + SEEDS[i]) * SEEDS[i];
+        hash += (hash >>> 32);
+        return ((int) hash) & tableMask;
+    }
+
+    // Mixes the bits of a possibly weak hashCode
+    private static int spread(int x) {
+
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
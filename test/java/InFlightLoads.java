@@ -0,0 +1,75 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/*
+Makes sure that concurrent misses on the same key end up in a single call to the loader.
+
+The first thread to miss registers a future for the key and runs the loader. Every other thread that misses the same key
+while that load is in flight finds the future and waits on it instead of calling the loader itself. The map only ever
+holds keys that are being loaded right now.
+
+The loader runs on the missing thread and without any cache lock held, so a slow backend only holds up the threads that
+asked for that one key.
+ */
+final class InFlightLoads<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loads = new ConcurrentHashMap<K, CompletableFuture<V>>();
+
+    /*
+    lookup reads the cache without counting a hit or miss. store writes a loaded value into it unless the key was written
+    while the loader ran, and returns whatever the key maps to afterwards; that is what the load returns. A loader that
+    returns null means there is no value for the key, so nothing is stored and every waiter gets null.
+     */
+    V load(final K key, final Function<? super K, ? extends V> loader, final Function<K, V> lookup,
+           final BiFunction<K, V, V> store) {
+
+        final CompletableFuture<V> ownLoad = new CompletableFuture<V>();
+        final CompletableFuture<V> inFlight = loads.putIfAbsent(key, ownLoad);
+        if (inFlight != null) {
+            return await(inFlight);
+        }
+
+        try {
+            // a load that finished between our miss and putIfAbsent has already stored its value
+            V value = lookup.apply(key);
+            if (value == null) {
+                value = loader.apply(key);
+                if (value != null) {
+                    value = store.apply(key, value);
+                }
+            }
+
+            ownLoad.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            ownLoad.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(key, ownLoad);
+        }
+    }
+
+    int getInFlightCount() {
+        return loads.size();
+    }
+
+    // Waiters see the loader's own exception, not the CompletionException wrapped around it
+    private V await(CompletableFuture<V> inFlight) {
+
+        try {
+            return inFlight.join();
+        } catch (CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
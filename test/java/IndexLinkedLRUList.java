@@ -0,0 +1,188 @@
+/*
+A doubly-linked LRU list that lives in two int arrays instead of a chain of heap nodes.
+
+Every element is a slot number between 0 and capacity - 1. previous[slot] and next[slot] hold the neighbouring slots (or
+NONE), so promoting an element only touches a few ints in two arrays that sit next to each other in memory, instead of
+chasing object pointers across the heap. The caller keeps its keys and values in its own arrays, indexed by the same
+slot number.
+
+Unused slots sit on a stack of free slots. The capacity is fixed at construction and nothing is allocated afterwards.
+
+Just like LRUOptimizedLinkedList, this is not thread safe on its own. The owning cache has to hold its lock around every
+call.
+ */
+public class IndexLinkedLRUList {
+
+    public static final int NONE = -1;
+
+    // previous[] value of a slot that is not in the list
+    static final int FREE = -2;
+
+    private final int[] previous;
+    private final int[] next;
+    private final int[] freeSlots;
+    private int freeSlotCount;
+
+    private int head = NONE;
+    private int tail = NONE;
+    private int currentSize;
+
+    public IndexLinkedLRUList(int capacity) {
+
+        if (capacity < 1) {
+            throw new IllegalStateException("Capacity needs to be at least 1");
+        }
+
+        previous = new int[capacity];
+        next = new int[capacity];
+        freeSlots = new int[capacity];
+
+        // hand out the low slots first
+        for (int i = 0; i < capacity; i++) {
+            freeSlots[i] = capacity - 1 - i;
+            previous[i] = FREE;
+            next[i] = NONE;
+        }
+        freeSlotCount = capacity;
+    }
+
+    public int getCapacity() {
+        return previous.length;
+    }
+
+    public int getCurrentSize() {
+        return currentSize;
+    }
+
+    public boolean isFull() {
+        return freeSlotCount == 0;
+    }
+
+    public int getHead() {
+        return head;
+    }
+
+    public int getTail() {
+        return tail;
+    }
+
+    public int getNext(int slot) {
+        return next[slot];
+    }
+
+    public int getPrevious(int slot) {
+        return previous[slot];
+    }
+
+    public boolean contains(int slot) {
+        return slot >= 0 && slot < previous.length && previous[slot] != FREE;
+    }
+
+    // Takes a free slot and links it in as the new head
+    public int allocate() {
+
+        if (freeSlotCount == 0) {
+            throw new IllegalStateException("No free slot left, the list holds " + currentSize + " elements");
+        }
+
+        final int slot = freeSlots[--freeSlotCount];
+        linkAtHead(slot);
+        currentSize++;
+        return slot;
+    }
+
+    // When the list is full, the tail's slot can be handed straight to the new element instead of being freed first
+    public int recycleTail() {
+
+        final int slot = tail;
+        if (slot == NONE) {
+            throw new IllegalStateException("Attempting to recycle the tail of an empty list");
+        }
+
+        moveToHead(slot);
+        return slot;
+    }
+
+    public void moveToHead(int slot) {
+
+        checkInList(slot);
+        if (slot == head) {
+            return;
+        }
+
+        unlink(slot);
+        linkAtHead(slot);
+    }
+
+    // Removes the element and returns its slot to the free stack
+    public void free(int slot) {
+
+        checkInList(slot);
+        unlink(slot);
+        previous[slot] = FREE;
+        next[slot] = NONE;
+        freeSlots[freeSlotCount++] = slot;
+        currentSize--;
+    }
+
+    public int removeTail() {
+
+        final int slot = tail;
+        if (slot == NONE) {
+            throw new IllegalStateException("Attempting to remove the tail of an empty list");
+        }
+
+        free(slot);
+        return slot;
+    }
+
+    // O(n) method to get how far from the head the slot is. -1 if it is not in the list.
+    public int getIndexOfSlot(int slot) {
+
+        int index = 0;
+        for (int current = head; current != NONE; current = next[current]) {
+            if (current == slot) {
+                return index;
+            }
+            index++;
+        }
+        return -1;
+    }
+
+    private void linkAtHead(int slot) {
+
+        previous[slot] = NONE;
+        next[slot] = head;
+        if (head == NONE) {
+            tail = slot;
+        } else {
+            previous[head] = slot;
+        }
+        head = slot;
+    }
+
+    private void unlink(int slot) {
+
+        final int before = previous[slot];
+        final int after = next[slot];
+
+        if (before == NONE) {
+            head = after;
+        } else {
+            next[before] = after;
+        }
+
+        if (after == NONE) {
+            tail = before;
+        } else {
+            previous[after] = before;
+        }
+    }
+
+    private void checkInList(int slot) {
+
+        if (!contains(slot)) {
+            throw new IllegalArgumentException("Slot " + slot + " is not in the list");
+        }
+    }
+}
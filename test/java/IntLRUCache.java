@@ -0,0 +1,45 @@
+/*
+An LRU cache keyed by primitive ints. The keys are widened to long, everything else is LongLRUCache.
+ */
+public class IntLRUCache<V> {
+
+    private final LongLRUCache<V> cache;
+
+    public IntLRUCache(int capacity) {
+        this.cache = new LongLRUCache<V>(capacity);
+    }
+
+    // Returns null on a miss
+    public V getValueFromCache(final int key) {
+        return cache.getValueFromCache(key);
+    }
+
+    public void writeValueToCache(final int key, final V value) {
+        cache.writeValueToCache(key, value);
+    }
+
+    public boolean existsInCache(final int key) {
+        return cache.existsInCache(key);
+    }
+
+    public void invalidate(final int key) {
+        cache.invalidate(key);
+    }
+
+    public int getCacheSize() {
+        return cache.getCacheSize();
+    }
+
+    public int getCapacity() {
+        return cache.getCapacity();
+    }
+
+    public int getPriorityInCacheOfObject(final int key) {
+        return cache.getPriorityInCacheOfObject(key);
+    }
+
+    @Override
+    public String toString() {
+        return cache.toString();
+    }
+}
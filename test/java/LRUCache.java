@@ -1,6 +1,25 @@
-import java.util.HashMap;
-import java.util.HashSet;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 /**
@@ -27,179 +46,1400 @@ Obstacles:
 4. So a list has to be ordered. So we'll use the list for ordering. But, the traditional get() function is O(n).
 5. So we need to create a new list. This list will
 6. Hashmap will have a reference to the object in the list
- */
 
-public class LRUCache<K, V> {
+Concurrency:
+1. The hashmap is a ConcurrentHashMap, so reads look up a value without taking any lock.
+2. The list is only mutated while holding evictionLock. A read cannot promote its node itself, so it records the node in
+   a lossy read buffer instead. The buffer is replayed into the list (drained) by writers, which hold the lock anyway, or
+   by a reader that finds its buffer full and manages to tryLock.
+3. Optionally (see Builder.bufferWrites) writes work the same way: the hashmap is updated right away, and the list
+   insert/promotion is queued in a write buffer that is applied in batches by whichever thread wins the lock. Until the
+   batch is applied the cache may briefly hold a few more entries than its configured size.
+
+Capacity:
+1. Every entry has a weight, computed by the Weigher when it is written. By default every entry weighs 1, so the
+   maximum weight is simply a maximum number of entries.
+2. After every write, entries are evicted from the tail until the total weight fits in the configured maximum. An entry
+   that weighs more than the maximum on its own is evicted right away.
+3. Which entry is evicted is up to the EvictionPolicy (see Builder.evictionMode). The default is plain LRU, where the
+   policy is the LRUOptimizedLinkedList itself and the victim is always its tail.
+4. Evictions happen in batches of at most EVICTION_BATCH_SIZE per lock hold. A shrinking resize takes effect right away
+   (every write from then on evicts towards the new maximum), and the resizing thread works off the excess one batch at
+   a time, letting go of the lock in between. Reads never wait for the lock at all.
+
+Expiration (see Builder.expireAfterWrite, expireAfterAccess and expireAfter):
+1. Every node carries the time it expires at. Reads check it, so an expired entry is a miss from that moment on, even
+   if it has not been reclaimed yet. Reads that extend an entry's lifetime just write the new time into the node.
+2. Nodes are also scheduled in a TimerWheel. Whenever the buffers are drained, the wheel is advanced and whatever has
+   expired is removed from the cache, without looking at the entries that have not. There is no sweeper thread, so on an
+   idle cache expired entries only go away on the next write, a full read buffer, or a read that finds one.
+
+Refreshing (see Builder.refreshAfterWrite):
+1. Every node also remembers when it was last written. The first read that finds it older than the refresh interval
+   still gets the current value right away, and hands a reload of the key to the refresh executor.
+2. Only one reload per key is in flight at a time. When it finishes, its value is swapped into the same node, so the
+   entry keeps its place in the eviction order. A reload that lost a race with a write or a removal is dropped.
+
+Writing to a backend (see Builder.writeThrough and writeBack):
+1. Write-through hands every write to the CacheWriter before the cache itself is touched, so a write the backend
+   rejects never makes it into the cache.
+2. Write-back only marks the node dirty, see WriteBackBuffer. Dirty entries are flushed in batches when the maintenance
+   or the buffer's own timer finds the flush interval has passed, when one is evicted, and on flush().
+
+Enumerating the entries (see asMap):
+1. Iterators and spliterators walk the hashmap, not the policy's links, so they take no lock, do not promote anything
+   and see whatever writes happen during the walk or not, like any ConcurrentHashMap iterator. Expired and evicted
+   entries are skipped.
+2. The map's conditional writes (putIfAbsent, replace, put returning the old value) hold evictionLock from the check to
+   the write. Buffered writes never take it, so with Builder.bufferWrites a plain write can still land in between.
+ */
 
-    public static final int MAX_CACHE_SIZE = 1500;
+public class LRUCache<K, V> implements Cache<K, V> {
 
     Logger log = Logger.getLogger("LRUCache.class");
-    int configuredQueueMaxSize;
+
+    // Both only written under evictionLock. Volatile so the metrics can be read without it.
+    volatile long configuredMaximumWeight;
+    volatile long weightedSize;
+    final Weigher<K, V> weigher;
+
+    // The most entries evicted while holding evictionLock once, so a big shrink never stalls writers for long
+    static final int EVICTION_BATCH_SIZE = 64;
+
+    // Resize metrics, only written under evictionLock
+    volatile long resizeCount;
+    volatile long resizeEvictionCount;
 
     // This is a mapping from the key-value entry, to the node in the doubly-linked-list
-    final HashMap<K, Node> entrySet;
-    final LRUOptimizedLinkedList orderedList;
+    final ConcurrentHashMap<K, Node<K, V>> entrySet;
+    final EvictionPolicy<K, V> policy;
+
+    // The policy itself in the default LRU mode, null for the other modes
+    final LRUOptimizedLinkedList<K, V> orderedList;
+
+    // Guards every structural change to the policy. Reads never take it.
+    final ReentrantLock evictionLock = new ReentrantLock();
+    final ReadBuffer<Node<K, V>> readBuffer = new ReadBuffer<Node<K, V>>();
+
+    // Only used when writes are buffered. Once this many list updates are pending, writers wait for the lock instead
+    // of leaving the work to someone else, so the buffer cannot grow without bound.
+    static final int WRITE_BUFFER_THRESHOLD = 128;
+    final boolean bufferWrites;
+    final ConcurrentLinkedQueue<Runnable> writeBuffer;
+    final AtomicInteger pendingWrites = new AtomicInteger();
+
+    // Told about every value that leaves the cache, either evicted or overwritten. May be null.
+    final RemovalHook<K, V> removalHook;
+
+    // Queues removals for the builder's RemovalListener, null if there is none
+    final RemovalDispatcher<K, V> removalDispatcher;
+
+    // StatsCounter.DISABLED unless the builder asked for stats
+    final StatsCounter statsCounter;
+    final boolean recordingStats;
+    final boolean evictsByWeight;
+
+    final InFlightLoads<K, V> inFlightLoads = new InFlightLoads<K, V>();
+
+    // All three null-or-unused unless the builder set up expiration
+    final Expiry<K, V> expiry;
+    final Ticker ticker;
+    final TimerWheel<K, V> timerWheel;
+
+    // Durations are capped, so that now + duration cannot overflow. This is still over a hundred years.
+    static final long MAXIMUM_EXPIRY = Long.MAX_VALUE >>> 1;
 
-    final static String INVALID_RESIZE_ERROR_MSG = "Size needs to be between 1 and " + MAX_CACHE_SIZE;
+    // -1 and null unless the builder set up refreshing. refreshing holds the keys whose reload is in flight.
+    final long refreshAfterWriteNanos;
+    final Function<? super K, ? extends V> reloader;
+    final Executor refreshExecutor;
+    final Set<K> refreshing;
 
-    public LRUCache(int configuredQueueMaxSize) {
+    // whether nodes need the ticker read at all, for expiration or for refreshing
+    final boolean timed;
 
-        if (configuredQueueMaxSize < 1 || configuredQueueMaxSize > MAX_CACHE_SIZE) {
-            final String ERROR_MSG = "Size needs to be between 1 and \" + MAX_CACHE_SIZE";
-            log.severe(ERROR_MSG);
-            throw new IllegalStateException(ERROR_MSG);
+    // At most one of the two is set, depending on how the builder set up the CacheWriter
+    final CacheWriter<K, V> writeThrough;
+    final WriteBackBuffer<K, V> writeBack;
+
+    final LRUCacheMapView<K, V> mapView;
+
+    final static String INVALID_RESIZE_ERROR_MSG = "Size needs to be between 1 and " + Long.MAX_VALUE;
+
+    public LRUCache(long maximumSize) {
+        this(LRUCache.<K, V>newBuilder().maximumSize(maximumSize));
+    }
+
+    LRUCache(Builder<K, V> builder) {
+
+        if (builder.maximumWeight < 1) {
+            log.severe(INVALID_RESIZE_ERROR_MSG);
+            throw new IllegalStateException(INVALID_RESIZE_ERROR_MSG);
+        }
+        this.configuredMaximumWeight = builder.maximumWeight;
+        this.weigher = builder.weigher == null ? Weigher.<K, V>singletonWeigher() : builder.weigher;
+        this.evictsByWeight = builder.weigher != null;
+        this.recordingStats = builder.recordStats;
+        this.statsCounter = builder.recordStats ? new StatsCounter.Concurrent() : StatsCounter.DISABLED;
+        this.bufferWrites = builder.bufferWrites;
+        this.writeBuffer = bufferWrites ? new ConcurrentLinkedQueue<Runnable>() : null;
+        this.removalHook = builder.removalHook;
+        this.removalDispatcher = builder.removalListener == null ? null : new RemovalDispatcher<K, V>(
+                builder.removalListener,
+                builder.removalListenerExecutor == null ? AsyncLRUCache.defaultExecutor() : builder.removalListenerExecutor);
+        this.expiry = builder.buildExpiry();
+        this.ticker = builder.ticker;
+        this.timerWheel = expiry == null ? null : new TimerWheel<K, V>(ticker.read());
+        this.refreshAfterWriteNanos = builder.refreshAfterWriteNanos;
+        this.reloader = builder.reloader;
+        this.refreshExecutor = reloader == null ? null :
+                builder.refreshExecutor == null ? AsyncLRUCache.defaultExecutor() : builder.refreshExecutor;
+        this.refreshing = reloader == null ? null : ConcurrentHashMap.<K>newKeySet();
+        this.timed = expiry != null || reloader != null;
+        this.writeThrough = builder.writeBack ? null : builder.cacheWriter;
+        this.writeBack = builder.writeBack ? new WriteBackBuffer<K, V>(builder.cacheWriter, builder.flushIntervalNanos,
+                builder.writeBackExecutor == null ? AsyncLRUCache.defaultExecutor() : builder.writeBackExecutor,
+                evictionLock, ticker) : null;
+        entrySet = new ConcurrentHashMap<K, Node<K, V>>();
+        policy = builder.evictionMode.newPolicy(builder.maximumWeight);
+        orderedList = policy instanceof LRUOptimizedLinkedList ? (LRUOptimizedLinkedList<K, V>) policy : null;
+        mapView = new LRUCacheMapView<K, V>(this);
+        if (builder.trackRanks) {
+            if (orderedList == null) {
+                final String ERROR_MSG = "Ranks can only be tracked in the LRU eviction mode";
+                log.severe(ERROR_MSG);
+                throw new IllegalStateException(ERROR_MSG);
+            }
+            orderedList.trackRanks();
         }
-        this.configuredQueueMaxSize = configuredQueueMaxSize;
-        entrySet = new HashMap<K, Node>();
-        orderedList = new LRUOptimizedLinkedList(configuredQueueMaxSize);
     }
 
-    public synchronized void resizeContainer(final int newConfiguredSize) {
+    public static <K, V> Builder<K, V> newBuilder() {
+        return new Builder<K, V>();
+    }
 
-        if (newConfiguredSize < 1 || newConfiguredSize > MAX_CACHE_SIZE) {
+    /*
+    The new size is a maximum weight. With the default weigher that is the same as a number of entries.
+     */
+    @Override
+    public void resizeContainer(final long newConfiguredSize) {
+
+        if (newConfiguredSize < 1) {
             log.severe(INVALID_RESIZE_ERROR_MSG);
             throw new IllegalStateException(INVALID_RESIZE_ERROR_MSG);
 
         }
 
         //Logic: If the size is greater than the current size, then there isn't much to do
-        //       If the size is less than the current size, we need to expel items from the queue
-        //TODO: Implement this
+        //       If the size is less than the current size, we need to expel items from the queue, starting at the tail,
+        //       until what is left fits
+
+        // The new maximum takes effect right away, so from here on every write also evicts towards it
+        evictionLock.lock();
+        try {
+            drainBuffers();
+            this.configuredMaximumWeight = newConfiguredSize;
+            policy.setMaximumWeight(newConfiguredSize);
+            resizeCount++;
+            statsCounter.recordResize();
+        } finally {
+            evictionLock.unlock();
+        }
+
+        // Then work off the excess one batch per lock hold. Other writers get the lock in between.
+        boolean overweight = true;
+        while (overweight) {
+
+            evictionLock.lock();
+            try {
+                // a later resize may have grown the cache again, in which case there is nothing left to do
+                overweight = evictIfNeeded(EVICTION_BATCH_SIZE, true);
+            } finally {
+                evictionLock.unlock();
+            }
+
+            if (overweight) {
+                Thread.yield();
+            }
+        }
+
+        log.fine("Resized to " + newConfiguredSize + ", " + resizeEvictionCount + " entries evicted by resizes so far");
+
+        evictionLock.lock();
+        try {
+            if (!bufferWrites && entrySet.size() != policy.getCurrentSize()) {
+                final String ERROR_MSG = "Set and List diverged in terms of size. Set size is " + entrySet.size() +
+                        " and list contains " + policy.getCurrentSize() + " items";
+                log.severe(ERROR_MSG);
+                throw new IllegalStateException(ERROR_MSG);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
 
-        synchronized (this) {
+    // How much weight the cache is still above its maximum, e.g. while a shrinking resize is being worked off
+    public long getExcessWeight() {
+        return Math.max(weightedSize - configuredMaximumWeight, 0);
+    }
 
-            if (this.configuredQueueMaxSize < newConfiguredSize) {
+    // Always empty unless the cache was built with Builder.recordStats()
+    public CacheStats getStats() {
+        return statsCounter.snapshot();
+    }
+
+    public long getResizeCount() {
+        return resizeCount;
+    }
 
-                this.configuredQueueMaxSize = newConfiguredSize;
+    // Entries evicted by resizeContainer itself, rather than by writes
+    public long getResizeEvictionCount() {
+        return resizeEvictionCount;
+    }
+
+    @Override
+    public V getValueFromCache(final K key) {
+
+        if (policy == null || entrySet == null) {
+            throw new RuntimeException("Cache not initialized yet.");
+        }
+
+        Node<K, V> node = entrySet.get(key);
+        V value = liveValue(node, true);
+        if (value != null) {
+            statsCounter.recordHit();
+            recordRead(node);
+        } else {
+            statsCounter.recordMiss();
+        }
+        return value;
+    }
+
+    /*
+    The node's value, or null if there is none to be had: no node, a node that was already evicted (see retire), or one
+    that has expired. A read also gives the Expiry the chance to push the expiration time back, and starts a refresh if
+    the value is due for one.
+     */
+    private V liveValue(final Node<K, V> node, final boolean isRead) {
+
+        final V value = node == null ? null : node.getValue();
+        if (value == null || !timed) {
+            return value;
+        }
+
+        final long now = ticker.read();
+        if (expiry != null) {
+            final long currentDuration = node.expirationTime - now;
+            if (currentDuration <= 0) {
+                // the wheel will get to it, but there is no reason to wait if nobody is busy with the lock
+                cleanUpIfIdle();
+                return null;
+            }
+
+            if (isRead) {
+                final long newDuration = expiry.expireAfterRead(node.getKey(), value, now, currentDuration);
+                if (newDuration != currentDuration) {
+                    node.expirationTime = now + Math.min(newDuration, MAXIMUM_EXPIRY);
+                }
+            }
+        }
+
+        if (isRead && reloader != null && now - node.writeTime >= refreshAfterWriteNanos) {
+            refresh(node, value);
+        }
+        return value;
+    }
+
+    // Reloads the key in the background, unless a reload for it is in flight already. Never blocks the reader.
+    private void refresh(final Node<K, V> node, final V oldValue) {
+
+        final K key = node.getKey();
+        if (!refreshing.add(key)) {
+            return;
+        }
+
+        try {
+            CompletableFuture.supplyAsync(() -> reloader.apply(key), refreshExecutor).whenComplete((newValue, error) -> {
+                try {
+                    if (error != null) {
+                        log.warning("Refreshing " + key + " failed, keeping the old value: " + error);
+                    } else if (newValue != null) {
+                        swapRefreshed(node, oldValue, newValue);
+                    }
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RuntimeException e) {
+            // the executor turned the reload down, the next read will ask again
+            refreshing.remove(key);
+            log.warning("Refreshing " + key + " could not be started: " + e);
+        }
+    }
+
+    /*
+    Puts a reloaded value into the node it was loaded for, leaving the node where it is in the eviction order. Nothing
+    happens if the node was written, evicted or removed while the reload ran, that newer state wins.
+     */
+    private void swapRefreshed(final Node<K, V> node, final V oldValue, final V newValue) {
+
+        evictionLock.lock();
+        try {
+            drainBuffers();
+            // a dirty value has not reached the backend yet, so whatever the reload found there is older
+            if (entrySet.get(node.getKey()) != node || node.dirty ||
+                    !node.getEntry().compareAndSetValue(oldValue, newValue)) {
                 return;
             }
 
-            // find how many nodes we need to delete and go from the tail forwards to delete them
-            final int NUM_NODES_TO_DELETE = configuredQueueMaxSize - newConfiguredSize;
-            this.configuredQueueMaxSize = newConfiguredSize;
+            setTimesAfterUpdate(node, newValue);
+            if (policy.contains(node)) {
+                updateWeight(node);
+                schedule(node);
+                evictIfOversized(node);
+            }
+            if (newValue != oldValue) {
+                notifyRemoval(node.getKey(), oldValue, RemovalCause.REPLACED);
+            }
+            evictIfNeeded(EVICTION_BATCH_SIZE, false);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
 
-            log.info("Need to remove " + NUM_NODES_TO_DELETE + " nodes");
-            Set<Node> nodesToRemove = orderedList.trimList(NUM_NODES_TO_DELETE);
+    private void cleanUpIfIdle() {
 
-            log.info("We have " + nodesToRemove.size() + " nodes we need to remove from entrySet");
-            for (Node n : nodesToRemove) {
-                entrySet.remove(n.getEntry().getKey());
+        if (evictionLock.tryLock()) {
+            try {
+                drainBuffers();
+            } finally {
+                evictionLock.unlock();
             }
+        }
+    }
 
-            if (entrySet.size() != orderedList.getCurrentSize()) {
-                final String ERROR_MSG = "Set and List diverged in terms of size. Set size is " + entrySet.size() +
-                        " and list contains " + orderedList.currentSize + " items";
-                log.severe(ERROR_MSG);
-                throw new IllegalStateException(ERROR_MSG);
+    @Override
+    public V getIfPresent(final K key) {
+        return getValueFromCache(key);
+    }
+
+    @Override
+    public V get(final K key, final Function<? super K, ? extends V> loader) {
+
+        final V value = getValueFromCache(key);
+        if (value != null) {
+            return value;
+        }
+
+        return inFlightLoads.load(key, loader, this::peek, this::storeLoaded);
+    }
+
+    // A write that landed while the loader ran is newer than what the loader read, so it is kept
+    private V storeLoaded(final K key, final V loadedValue) {
+
+        final V current = storeIf(key, loadedValue, Objects::isNull, false);
+        return current != null ? current : loadedValue;
+    }
+
+    /*
+    Looks every key up without the lock, then promotes all the hits with a single lock acquisition instead of one read
+    buffer offer per key. If another thread holds the lock, the promotions go through the read buffer like single reads.
+    Returns the keys that are present, in the order they were asked for.
+     */
+    @Override
+    public Map<K, V> getAll(final Iterable<? extends K> keys) {
+
+        final Map<K, V> present = new LinkedHashMap<K, V>();
+        final List<Node<K, V>> hits = new ArrayList<Node<K, V>>();
+        for (K key : keys) {
+            Node<K, V> node = entrySet.get(key);
+            V value = liveValue(node, true);
+            if (value != null) {
+                statsCounter.recordHit();
+                present.put(key, value);
+                hits.add(node);
+            } else {
+                statsCounter.recordMiss();
+            }
+        }
+
+        if (evictionLock.tryLock()) {
+            try {
+                drainBuffers();
+                for (Node<K, V> node : hits) {
+                    if (policy.contains(node)) {
+                        policy.onAccess(node);
+                    }
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+        } else {
+            for (Node<K, V> node : hits) {
+                recordRead(node);
             }
         }
+        return present;
     }
 
-    public synchronized V getValueFromCache(final K key) {
+    // Reads a value without promoting it or counting a hit or miss
+    private V peek(final K key) {
+        return liveValue(entrySet.get(key), false);
+    }
+
+    // Called without the lock. Only drains if the buffer asks for it and nobody else is already holding the lock.
+    void recordRead(Node<K, V> node) {
+
+        // policies like CLOCK mark the node themselves and never need the lock for a hit
+        if (policy.onLockFreeAccess(node)) {
+            return;
+        }
+
+        if (readBuffer.offer(node) == ReadBuffer.OfferResult.FULL && evictionLock.tryLock()) {
+            try {
+                drainBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    // Replays the buffered writes and reads into the list. Must hold evictionLock.
+    void drainBuffers() {
+
+        if (bufferWrites) {
+            drainWriteBuffer();
+        }
+
+        readBuffer.drainTo(node -> {
+            // the node may have been evicted since it was read, in which case it is no longer in the list
+            if (policy.contains(node)) {
+                policy.onAccess(node);
+            }
+        });
+
+        if (timerWheel != null) {
+            timerWheel.advance(ticker.read(), this::expire);
+        }
+        if (writeBack != null) {
+            writeBack.flushIfDue(ticker.read());
+        }
+    }
+
+    // Called by the timer wheel for a node whose time is up, already taken off the wheel. Must hold evictionLock.
+    private void expire(Node<K, V> node) {
+
+        if (policy.contains(node)) {
+            policy.onRemove(node);
+            weightedSize -= node.weight;
+        }
+        if (entrySet.remove(node.getKey(), node)) {
+            statsCounter.recordExpiryEviction();
+            notifyRemoval(node.getKey(), retire(node), RemovalCause.EXPIRED);
+        }
+    }
+
+    // True once the node's time is up, whether or not the timer wheel has got to it yet
+    private boolean hasExpired(Node<K, V> node) {
+        return expiry != null && node.expirationTime - ticker.read() <= 0;
+    }
+
+    // Takes a node that is leaving the cache off the timer wheel. Must hold evictionLock.
+    private void deschedule(Node<K, V> node) {
+
+        if (timerWheel != null) {
+            timerWheel.deschedule(node);
+        }
+    }
+
+    // Puts a node on the timer wheel, or moves it after its expiration time was changed. Must hold evictionLock.
+    private void schedule(Node<K, V> node) {
+
+        if (timerWheel != null) {
+            timerWheel.reschedule(node);
+        }
+    }
+
+    // For a new entry. Called before the node is published, so no lock needed.
+    private void setTimesAfterCreate(Node<K, V> node, V value) {
+
+        if (timed) {
+            final long now = ticker.read();
+            node.writeTime = now;
+            if (expiry != null) {
+                node.expirationTime = now + Math.min(expiry.expireAfterCreate(node.getKey(), value, now), MAXIMUM_EXPIRY);
+            }
+        }
+    }
+
+    private void setTimesAfterUpdate(Node<K, V> node, V value) {
+
+        if (timed) {
+            final long now = ticker.read();
+            node.writeTime = now;
+            if (expiry != null) {
+                final long duration = expiry.expireAfterUpdate(node.getKey(), value, now, node.expirationTime - now);
+                node.expirationTime = now + Math.min(duration, MAXIMUM_EXPIRY);
+            }
+        }
+    }
+
+    private void drainWriteBuffer() {
+
+        Runnable task;
+        while ((task = writeBuffer.poll()) != null) {
+            pendingWrites.decrementAndGet();
+            task.run();
+        }
+
+        evictIfNeeded(EVICTION_BATCH_SIZE, false);
+    }
+
+    /*
+    Evicts at most maxEvictions nodes, picked by the policy, stopping early once the total weight fits again. Returns
+    whether the cache is still above its maximum afterwards. Must hold evictionLock.
+     */
+    private boolean evictIfNeeded(final int maxEvictions, final boolean forResize) {
+
+        int evictions = 0;
+        while (weightedSize > configuredMaximumWeight && evictions < maxEvictions) {
+
+            Node<K, V> evicted = policy.evict();
+            if (evicted == null) {
+                break;
+            }
+            unlinkEvicted(evicted, forResize);
+            evictions++;
+        }
+
+        if (forResize) {
+            resizeEvictionCount += evictions;
+        }
+        return weightedSize > configuredMaximumWeight && policy.getCurrentSize() > 0;
+    }
+
+    /*
+    Evicts the entry the policy would pick next, even though the cache is within its maximum, and returns whether there
+    was one. For a cache that runs out of something the weigher does not see, like OffHeapLRUCache's off-heap memory.
+     */
+    boolean evictOne() {
+
+        evictionLock.lock();
+        try {
+            drainBuffers();
+            final Node<K, V> evicted = policy.evict();
+            if (evicted == null) {
+                return false;
+            }
+            unlinkEvicted(evicted, false);
+            return true;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // The rest of an eviction, once the policy has let go of the node. Must hold evictionLock.
+    private void unlinkEvicted(Node<K, V> evicted, final boolean forResize) {
+
+        deschedule(evicted);
+        weightedSize -= evicted.weight;
+        if (entrySet.remove(evicted.getEntry().getKey(), evicted)) {
+            recordEviction(forResize);
+            notifyRemoval(evicted.getKey(), retire(evicted), forResize ? RemovalCause.RESIZE : RemovalCause.SIZE);
+        }
+    }
+
+    // An entry that could never fit goes straight away, instead of flushing everything older than it first
+    private void evictIfOversized(Node<K, V> node) {
+
+        if (node.weight > configuredMaximumWeight && policy.contains(node)) {
+            policy.onRemove(node);
+            deschedule(node);
+            weightedSize -= node.weight;
+            if (entrySet.remove(node.getKey(), node)) {
+                recordEviction(false);
+                notifyRemoval(node.getKey(), retire(node), RemovalCause.SIZE);
+            }
+        }
+    }
+
+    private void recordEviction(final boolean forResize) {
+
+        if (forResize) {
+            statsCounter.recordResizeEviction();
+        } else if (evictsByWeight) {
+            statsCounter.recordWeightEviction();
+        } else {
+            statsCounter.recordSizeEviction();
+        }
+    }
+
+    // Evicts everything above the maximum, for callers that need an exact size. Must hold evictionLock.
+    private void evictFully() {
+        while (evictIfNeeded(EVICTION_BATCH_SIZE, false)) {
+            // keep going
+        }
+    }
+
+    private int weigh(K key, V value) {
+
+        final int weight = weigher.weigh(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight of " + key + " is negative: " + weight);
+        }
+        return weight;
+    }
+
+    // Re-weighs a node whose value may have changed. Must hold evictionLock.
+    private void updateWeight(Node<K, V> node) {
+
+        final V value = node.getValue();
+        if (value != null) {
+            final int newWeight = weigh(node.getKey(), value);
+            final int delta = newWeight - node.weight;
+            weightedSize += delta;
+            node.weight = newWeight;
+            if (delta != 0 && policy.contains(node)) {
+                policy.onWeightChanged(node, delta);
+            }
+        }
+    }
+
+    private void afterBufferedWrite(Runnable task) {
+
+        writeBuffer.add(task);
+        if (pendingWrites.incrementAndGet() >= WRITE_BUFFER_THRESHOLD) {
+            evictionLock.lock();
+        } else if (!evictionLock.tryLock()) {
+            return;
+        }
+
+        try {
+            drainBuffers();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean existsInCache(K key) {
+
+        if (expiry != null) {
+            return liveValue(entrySet.get(key), false) != null;
+        }
+        return entrySet.containsKey(key);
+    }
+
+    @Override
+    public boolean existsInCache(K key, V value) {
+
+        // Let's assume null is not a valid value
+        if (value == null) {
+
+            throw new RuntimeException("Value cannot be null");
+        }
+
+        Node<K, V> keyEntry = entrySet.get(key);
+        if (keyEntry == null) {
+            return false;
+        }
+
+        if (value.equals(liveValue(keyEntry, false))) {
+            return true;
+        }
+
+        return false;
+    }
+
+    /*
+    How many entries would be evicted before this one if nothing else happened, 0 being the most recently used. -1 if
+    it is not in the cache. A walk over the policy's links, unless the cache was built with Builder.trackRanks.
+     */
+    public int getPriorityInCacheOfObject(K key) {
+
+        evictionLock.lock();
+        try {
+            drainBuffers();
+            evictFully();
+            if (orderedList != null && orderedList.tracksRanks()) {
+                final Node<K, V> node = entrySet.get(key);
+                return node == null ? -1 : orderedList.getIndexOfNode(node);
+            }
+            return policy.getIndexOfObject(key);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // The keys of the n entries that would be kept the longest, hottest first
+    public List<K> hottest(final int n) {
+        return keysInPriorityOrder(n, true);
+    }
+
+    // The keys of the n entries that would be evicted next, coldest first
+    public List<K> coldest(final int n) {
+        return keysInPriorityOrder(n, false);
+    }
+
+    /*
+    In LRU mode this walks n nodes in from either end of the list, so the lock is held for O(n) in what was asked for,
+    not in the size of the cache. The other policies have no single list to walk and go through
+    forEachInPriorityOrder, which visits every node, but still only the n keys are copied.
+     */
+    private List<K> keysInPriorityOrder(final int n, final boolean hottestFirst) {
+
+        if (n < 0) {
+            throw new IllegalArgumentException("Cannot list " + n + " entries");
+        }
+
+        final ArrayList<K> keys = new ArrayList<K>(Math.min(n, 1024));
+        evictionLock.lock();
+        try {
+            drainBuffers();
+            evictFully();
+
+            if (orderedList != null) {
+                Node<K, V> node = hottestFirst ? orderedList.getHead() : orderedList.getTail();
+                while (node != null && keys.size() < n) {
+                    keys.add(node.getKey());
+                    node = hottestFirst ? node.getNext() : node.getPrevious();
+                }
+            } else if (hottestFirst) {
+                policy.forEachInPriorityOrder(node -> {
+                    if (keys.size() < n) {
+                        keys.add(node.getKey());
+                    }
+                });
+            } else {
+                // the last n in priority order, kept in a ring so that nothing else is copied
+                final ArrayDeque<K> last = new ArrayDeque<K>(Math.min(n, 1024));
+                policy.forEachInPriorityOrder(node -> {
+                    if (n > 0) {
+                        if (last.size() == n) {
+                            last.removeFirst();
+                        }
+                        last.addLast(node.getKey());
+                    }
+                });
+                for (Iterator<K> coldestFirst = last.descendingIterator(); coldestFirst.hasNext(); ) {
+                    keys.add(coldestFirst.next());
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+        return keys;
+    }
+
+    // Only in the default LRU mode, null otherwise
+    public LRUOptimizedLinkedList<K, V> getOrderedList() {
+        return this.orderedList;
+    }
+
+    public long getMaximumWeight() {
+
+        evictionLock.lock();
+        try {
+            return configuredMaximumWeight;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // The sum of the weights of the entries currently linked into the list
+    public long getWeightedSize() {
+
+        evictionLock.lock();
+        try {
+            drainBuffers();
+            evictFully();
+            return weightedSize;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public int getCacheSize() {
+
+        evictionLock.lock();
+        try {
+            drainBuffers();
+            evictFully();
+            final int entrySetSize = entrySet.size();
+            final int llSize = policy.getCurrentSize();
+
+            // with buffered writes, other threads may have published entries that are not linked into the list yet
+            if (!bufferWrites && llSize != entrySetSize) {
+                throw new RuntimeException("Mismatch in data structure sizes - " + entrySetSize + " vs. " + llSize);
+            }
+
+            return entrySetSize;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /*
+    The purpose and scope of this function is to coordinate the two data structures. It will tell both of them to either
+    add or remove an element.
+
+    The important thing here is to avoid leaking implementation details. Only problem is that it may have more visibility to do things
+    in the right time-complexity that the function itself does not have.
+     */
+    @Override
+    public void writeValueToCache(K key, V value) {
+
+        // null marks an evicted node, so it cannot be a cached value
+        if (value == null) {
+            throw new RuntimeException("Value cannot be null");
+        }
+
+        if (writeThrough != null) {
+            writeThrough.write(key, value);
+        }
+        storeValue(key, value, writeBack != null);
+    }
+
+    // dirty is whether the value still has to go to the write-back backend, i.e. did not come from it
+    private void storeValue(K key, V value, boolean dirty) {
+
+        // no clock reads at all unless someone is looking at the numbers
+        final long startTime = recordingStats ? System.nanoTime() : 0L;
+
+        if (bufferWrites) {
+            writeValueBuffered(key, value, dirty);
+        } else {
+            evictionLock.lock();
+            try {
+                drainBuffers();
+                linkUnderLock(key, value, dirty);
+                evictIfNeeded(EVICTION_BATCH_SIZE, false);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+
+        if (recordingStats) {
+            statsCounter.recordWriteTime(System.nanoTime() - startTime);
+        }
+    }
+
+    /*
+    Writes every entry with a single lock acquisition, and evicts once at the end for the whole batch. In buffered mode
+    the entries are published one by one as usual, the write buffer already batches the list updates.
+     */
+    @Override
+    public void putAll(final Map<? extends K, ? extends V> entries) {
+
+        // reject the whole batch before anything is written
+        for (V value : entries.values()) {
+            if (value == null) {
+                throw new RuntimeException("Value cannot be null");
+            }
+        }
+
+        if (writeThrough != null) {
+            writeThrough.writeAll(new LinkedHashMap<K, V>(entries));
+        }
+
+        final long startTime = recordingStats ? System.nanoTime() : 0L;
+
+        if (bufferWrites) {
+            for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+                writeValueBuffered(entry.getKey(), entry.getValue(), writeBack != null);
+            }
+        } else {
+            evictionLock.lock();
+            try {
+                drainBuffers();
+                for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+                    linkUnderLock(entry.getKey(), entry.getValue(), writeBack != null);
+                }
+                evictFully();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+
+        if (recordingStats) {
+            statsCounter.recordWriteTime(System.nanoTime() - startTime);
+        }
+    }
+
+    /*
+    The hashmap is updated immediately, so the new value is visible to readers as soon as this returns. Linking the node
+    into the list, and evicting from the tail, happen later when the write buffer is drained.
+     */
+    private void writeValueBuffered(K key, V value, boolean dirty) {
+
+        while (true) {
+
+            Node<K, V> existingListNode = entrySet.get(key);
+            if (existingListNode == null) {
+
+                final Node<K, V> newNode = new Node<K, V>(key, value);
+                setTimesAfterCreate(newNode, value);
+                if (dirty) {
+                    // before publishing, so an invalidate that gets to the node right away still leaves its value behind
+                    writeBack.markDirty(newNode);
+                }
+                if (entrySet.putIfAbsent(key, newNode) == null) {
+                    statsCounter.recordPut();
+                    afterBufferedWrite(() -> {
+                        // it may have been evicted again before ever making it into the list
+                        if (entrySet.get(key) == newNode && !policy.contains(newNode)) {
+                            newNode.weight = 0;
+                            updateWeight(newNode);
+                            policy.onAdd(newNode);
+                            schedule(newNode);
+                            evictIfOversized(newNode);
+                        }
+                    });
+                    return;
+                }
+
+                // another writer published first. Our node never made it into the cache, so it must not reach the
+                // backend either; our value goes around and into the winner's node instead.
+                if (dirty) {
+                    writeBack.discard(newNode);
+                }
+            } else if (hasExpired(existingListNode)) {
+
+                // not an update of the expired entry: it goes as EXPIRED first, then we go around and insert a new node
+                expireUnderLock(existingListNode);
+            } else {
+
+                // an evicted node has its value cleared (see retire), in which case our write did not land and we go
+                // around and insert a new node. Otherwise the write happened before any eviction, even a concurrent one.
+                V replacedValue = existingListNode.getEntry().getAndSetValue(value);
+                if (replacedValue != null) {
+
+                    if (dirty) {
+                        writeBack.markDirty(existingListNode);
+                    }
+                    setTimesAfterUpdate(existingListNode, value);
+                    statsCounter.recordUpdate();
+                    if (replacedValue != value) {
+                        notifyRemoval(key, replacedValue, RemovalCause.REPLACED);
+                    }
+                    afterBufferedWrite(() -> {
+                        if (policy.contains(existingListNode)) {
+                            updateWeight(existingListNode);
+                            policy.onAccess(existingListNode);
+                            schedule(existingListNode);
+                            evictIfOversized(existingListNode);
+                        }
+                    });
+                    return;
+                }
+            }
+        }
+    }
+
+    // For a buffered writer that found the key's node expired. Rare enough to just take the lock.
+    private void expireUnderLock(Node<K, V> node) {
+
+        evictionLock.lock();
+        try {
+            drainBuffers();
+            // the wheel may have got to it while we waited for the lock, or a write given it a new lifetime
+            if (entrySet.get(node.getKey()) == node && hasExpired(node)) {
+                deschedule(node);
+                expire(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // Inserts or overwrites the entry and moves it to the head, without evicting anything. Must hold evictionLock.
+    private void linkUnderLock(K key, V value, boolean dirty) {
+
+        Node<K, V> existingListNode = entrySet.get(key);
+        if (existingListNode != null && hasExpired(existingListNode)) {
+            // the wheel only ticks about once a second. The old entry still goes as EXPIRED, and the key starts afresh.
+            deschedule(existingListNode);
+            expire(existingListNode);
+            existingListNode = null;
+        }
+
+        if (existingListNode == null) {
+
+            // creating a new node. The policy links it in, whatever no longer fits is evicted afterwards.
+            Node<K, V> newNode = new Node<K, V>(key, value);
+            setTimesAfterCreate(newNode, value);
+            if (dirty) {
+                writeBack.markDirty(newNode);
+            }
+            entrySet.put(key, newNode);
+            updateWeight(newNode);
+            policy.onAdd(newNode);
+            schedule(newNode);
+            statsCounter.recordPut();
+            evictIfOversized(newNode);
+        } else {
+
+            statsCounter.recordUpdate();
+
+            // updating an existing entry
+            V existingValue = existingListNode.getEntry().getValue();
+            if (!existingValue.equals(value)) {
+
+                // it's already there, just need to add it to the front
+                existingListNode.getEntry().setValue(value);
+                updateWeight(existingListNode);
+                notifyRemoval(key, existingValue, RemovalCause.REPLACED);
+            }
+            if (dirty) {
+                writeBack.markDirty(existingListNode);
+            }
+
+            setTimesAfterUpdate(existingListNode, value);
+            policy.onAccess(existingListNode);
+            schedule(existingListNode);
+            evictIfOversized(existingListNode);
+        }
+    }
+
+    @Override
+    public void invalidate(final K key) {
+        removeIf(key, null);
+    }
+
+    // Removes the key only while it still maps to the given value. Returns whether it did.
+    public boolean remove(final K key, final V value) {
+
+        if (value == null) {
+            throw new RuntimeException("Value cannot be null");
+        }
+        return removeIf(key, value) != null;
+    }
+
+    // A null expectedValue matches any value. Returns the value that was removed, null if nothing was.
+    V removeIf(final K key, final Object expectedValue) {
+
+        evictionLock.lock();
+        try {
+            drainBuffers();
+
+            Node<K, V> node = entrySet.get(key);
+            if (node == null || (expectedValue != null && !expectedValue.equals(node.getValue()))) {
+                return null;
+            }
+
+            if (!entrySet.remove(key, node)) {
+                return null;
+            }
+
+            // with buffered writes the node may still be waiting to be linked, in which case it never will be now
+            if (policy.contains(node)) {
+                policy.onRemove(node);
+                weightedSize -= node.weight;
+            }
+            deschedule(node);
+
+            final V removedValue = retire(node);
+            if (removedValue != null) {
+                notifyRemoval(key, removedValue, RemovalCause.EXPLICIT);
+            }
+            return removedValue;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /*
+    Writes the value only if check accepts the key's current value (null if there is none), and returns the current
+    value either way. Used for the conditional writes of asMap, so check and write have to be one atomic step.
+
+    The check is made under the lock, which keeps out every write that takes it. Buffered writers do not, so the write
+    itself is a check-and-set on the node (see linkIfUnchanged): a putIfAbsent of the new node if there was no value, a
+    compare-and-set of the node's value otherwise. If another write got in since the check, the check is made again on
+    the value it left.
+
+    Like writeValueToCache, the CacheWriter is called outside the lock, so a slow backend does not hold up every other
+    write. The value goes to the backend between the check and the write. Two writers racing like this can reach the
+    backend in the opposite order to the cache, the same as two plain writes can.
+     */
+    V writeIf(final K key, final V value, final Predicate<V> check) {
+        return storeIf(key, value, check, true);
+    }
+
+    // toBackend is false for values that came from the backend in the first place, like a loader's
+    private V storeIf(final K key, final V value, final Predicate<V> check, final boolean toBackend) {
+
+        if (value == null) {
+            throw new NullPointerException("Value cannot be null");
+        }
+
+        final long startTime = recordingStats ? System.nanoTime() : 0L;
+        final boolean writesThrough = toBackend && writeThrough != null;
+
+        V current = null;
+        boolean writtenThrough = false;
+        while (true) {
+            evictionLock.lock();
+            try {
+                drainBuffers();
+                final V seen = peek(key);
+                if (!writtenThrough || seen != current) {
+                    current = seen;
+                    writtenThrough = false;
+                    if (!check.test(current)) {
+                        return current;
+                    }
+                }
+
+                if (writtenThrough || !writesThrough) {
+                    if (linkIfUnchanged(key, current, value, toBackend && writeBack != null)) {
+                        evictIfNeeded(EVICTION_BATCH_SIZE, false);
+                        break;
+                    }
+                    // a buffered writer got in since the check
+                    continue;
+                }
+            } finally {
+                evictionLock.unlock();
+            }
 
-        if (orderedList == null || entrySet == null) {
-            throw new RuntimeException("Cache not initialized yet.");
+            writeThrough.write(key, value);
+            writtenThrough = true;
         }
 
-        return (V) entrySet.get(key).getEntry().getValue();
+        if (recordingStats) {
+            statsCounter.recordWriteTime(System.nanoTime() - startTime);
+        }
+        return current;
     }
 
-    public boolean existsInCache(K key) {
-
-        return entrySet.containsKey(key);
-    }
+    /*
+    Stores the value only if the key still maps to expected, null meaning no live entry, and returns whether it did. The
+    check is made on the node itself, so that it also holds against buffered writers, which never take the lock. Must
+    hold evictionLock.
+     */
+    private boolean linkIfUnchanged(K key, V expected, V value, boolean dirty) {
 
-    public boolean existsInCache(K key, V value) {
+        final Node<K, V> existingListNode = entrySet.get(key);
+        if (expected == null) {
 
-        // Let's assume null is not a valid value
-        if (value == null) {
+            if (existingListNode != null) {
+                if (!hasExpired(existingListNode)) {
+                    return false;
+                }
+                deschedule(existingListNode);
+                expire(existingListNode);
+            }
 
-            throw new RuntimeException("Value cannot be null");
+            final Node<K, V> newNode = new Node<K, V>(key, value);
+            setTimesAfterCreate(newNode, value);
+            if (dirty) {
+                writeBack.markDirty(newNode);
+            }
+            if (entrySet.putIfAbsent(key, newNode) != null) {
+                if (dirty) {
+                    writeBack.discard(newNode);
+                }
+                return false;
+            }
+            updateWeight(newNode);
+            policy.onAdd(newNode);
+            schedule(newNode);
+            statsCounter.recordPut();
+            evictIfOversized(newNode);
+            return true;
         }
 
-        Node keyEntry = entrySet.get(key);
-        if (keyEntry == null) {
+        if (existingListNode == null || !existingListNode.getEntry().compareAndSetValue(expected, value)) {
             return false;
         }
-
-        if (keyEntry.getEntry().getValue().equals(value)) {
-            return true;
+        if (dirty) {
+            writeBack.markDirty(existingListNode);
+        }
+        setTimesAfterUpdate(existingListNode, value);
+        statsCounter.recordUpdate();
+        if (expected != value) {
+            notifyRemoval(key, expected, RemovalCause.REPLACED);
+        }
+        // a buffered writer's node may still be waiting to be linked, its own task weighs it when it is
+        if (policy.contains(existingListNode)) {
+            updateWeight(existingListNode);
+            policy.onAccess(existingListNode);
+            schedule(existingListNode);
+            evictIfOversized(existingListNode);
         }
+        return true;
+    }
 
-        return false;
+    /*
+    A view of the cache as a ConcurrentMap, see LRUCacheMapView. Reads and writes through it are reads and writes of the
+    cache. Iterating over it takes no lock and leaves the eviction order alone.
+     */
+    public ConcurrentMap<K, V> asMap() {
+        return mapView;
     }
 
-    public int getPriorityInCacheOfObject(K key) {
+    /*
+    The node's value for a scan over the cache: null once it was evicted or has expired. Unlike liveValue this never
+    extends a lifetime, starts a refresh or cleans up, so a scan does not touch the lock.
+     */
+    V scanValue(final Node<K, V> node) {
 
-        return orderedList.getIndexOfObject(key);
+        final V value = node.getValue();
+        if (value == null || expiry == null) {
+            return value;
+        }
+        return node.expirationTime - ticker.read() <= 0 ? null : value;
     }
 
-    public LRUOptimizedLinkedList getOrderedList() {
-        return this.orderedList;
+    /*
+    Clears the value of a node that has just been taken out of the hashmap and hands back the last value it held. A
+    buffered writer that raced with the eviction and finds null knows its value never made it into the cache.
+     */
+    private V retire(Node<K, V> node) {
+
+        final V value = node.getAndSetValue(null);
+        if (writeBack != null) {
+            writeBack.onRetire(node, value);
+        }
+        return value;
     }
 
-    public int getCacheSize() {
+    /*
+    Writes every dirty entry to the CacheWriter right now, on the calling thread, and returns how many there were. Only
+    does anything for a write-back cache. If the backend throws, the entries stay dirty and the exception is passed on.
+     */
+    public int flush() {
+        return writeBack == null ? 0 : writeBack.flush();
+    }
 
-        final int entrySetSize = entrySet.size();
-        final int llSize = orderedList.getCurrentSize();
+    /*
+    Writes every entry to a snapshot file, hottest first (see SnapshotFile), and returns how many were written. The lock
+    is only held while the nodes are collected, which is a pass over the policy's links. The values are read and
+    encoded afterwards, so entries written during the dump may or may not make it into the snapshot.
+     */
+    public int saveSnapshot(final Path path, final Codec<K> keyCodec, final Codec<V> valueCodec) throws IOException {
+
+        final List<Node<K, V>> nodes = new ArrayList<Node<K, V>>();
+        evictionLock.lock();
+        try {
+            drainBuffers();
+            evictFully();
+            policy.forEachInPriorityOrder(nodes::add);
+        } finally {
+            evictionLock.unlock();
+        }
 
-        if (llSize != entrySetSize) {
-            throw new RuntimeException("Mismatch in data structure sizes - " + entrySetSize + " vs. " + llSize);
+        final List<K> keys = new ArrayList<K>(nodes.size());
+        final List<V> values = new ArrayList<V>(nodes.size());
+        for (Node<K, V> node : nodes) {
+            // evicted or expired since they were collected
+            final V value = liveValue(node, false);
+            if (value != null) {
+                keys.add(node.getKey());
+                values.add(value);
+            }
         }
 
-        return entrySet.size();
+        SnapshotFile.write(path, keys, values, keyCodec, valueCodec);
+        return keys.size();
     }
 
     /*
-    The purpose and scope of this function is to coordinate the two data structures. It will tell both of them to either
-    add or remove an element.
+    Reads a snapshot written by saveSnapshot into the cache, and returns how many entries were added. The coldest
+    entries go in first, so the order the snapshot was taken in is restored. Keys the cache already holds keep their
+    current value. Loaded entries start a fresh lifetime for expiration, and are not written back to a CacheWriter.
 
-    The important thing here is to avoid leaking implementation details. Only problem is that it may have more visibility to do things
-    in the right time-complexity that the function itself does not have.
+    Only the room the cache has left is filled. The file is hottest first, so loading stops at the first entry that
+    would not fit, and nothing is loaded just to be evicted again. Entries already in the cache are never pushed out.
      */
-    public synchronized void writeValueToCache(K key, V value) {
-
-        Entry entryToWrite = new Entry(key, value);
+    public int loadSnapshot(final Path path, final Codec<K> keyCodec, final Codec<V> valueCodec) throws IOException {
+
+        final List<K> keys = new ArrayList<K>();
+        final List<V> values = new ArrayList<V>();
+        SnapshotFile.read(path, keyCodec, valueCodec, keys, values);
+
+        final int fitting;
+        evictionLock.lock();
+        try {
+            drainBuffers();
+            fitting = countFitting(keys, values, configuredMaximumWeight - weightedSize);
+        } finally {
+            evictionLock.unlock();
+        }
 
-        Node existingListNode = entrySet.get(key);
-        if (existingListNode == null) {
+        int loaded = 0;
+        for (int end = fitting; end > 0; end -= EVICTION_BATCH_SIZE) {
+
+            // one batch per lock hold, so readers' buffers get drained and writers get a turn in between
+            evictionLock.lock();
+            try {
+                drainBuffers();
+                for (int i = end - 1; i >= Math.max(0, end - EVICTION_BATCH_SIZE); i--) {
+                    if (!entrySet.containsKey(keys.get(i))) {
+                        linkUnderLock(keys.get(i), values.get(i), false);
+                        loaded++;
+                    }
+                }
+                // only does anything if writers filled the room in the meantime
+                evictFully();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        return loaded;
+    }
 
-            // creating a new node
-            Node tailNodeToBeDeletedUponSuccessfulInsert = orderedList.getTail();
-            Node newNode = null;
-            if (this.getCacheSize() == this.configuredQueueMaxSize) {
+    // How many of the hottest snapshot entries fit in room, skipping keys the cache has. Must hold evictionLock.
+    private int countFitting(final List<K> keys, final List<V> values, final long room) {
 
-                entrySet.remove(tailNodeToBeDeletedUponSuccessfulInsert.getEntry().getKey());
+        long weight = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            if (entrySet.containsKey(keys.get(i))) {
+                continue;
             }
-
-            // the insert will remove the node if the size limit is exceeded
-            newNode = orderedList.insert(entryToWrite);
-            if (newNode == null) {
-                throw new RuntimeException("The outcome of insert produced a null node. This is not supposed to happen. Exiting.");
+            weight += weigh(keys.get(i), values.get(i));
+            if (weight > room) {
+                return i;
             }
+        }
+        return keys.size();
+    }
 
-            entrySet.put(key, newNode);
-        } else {
-
-            // updating an existing entry
-            V existingValue = (V) existingListNode.getEntry().getValue();
-            if (!existingValue.equals(value)) {
-
-                // it's already there, just need to add it to the front
-                existingListNode.getEntry().setValue(value);
-            }
+    // The hook runs right here, the listener later on its executor. Usually called with evictionLock held.
+    private void notifyRemoval(K key, V value, RemovalCause cause) {
 
-            orderedList.setHead(existingListNode);
+        if (removalHook != null) {
+            removalHook.onRemoval(key, value, cause);
+        }
+        if (removalDispatcher != null) {
+            removalDispatcher.enqueue(key, value, cause);
         }
     }
 
     @Override
-    public synchronized String toString() {
+    public String toString() {
+
+        evictionLock.lock();
+        try {
+            drainBuffers();
+            evictFully();
+            return describeList();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private String describeList() {
+
+        if (orderedList == null) {
+            return policy.toString();
+        }
 
         StringBuilder sb = new StringBuilder();
-        final int EXPECTED_NODES_TO_SEE = this.getCacheSize();
+        final int EXPECTED_NODES_TO_SEE = orderedList.getCurrentSize();
         if (orderedList != null) {
-            Node currentNode = orderedList.getHead();
+            Node<K, V> currentNode = orderedList.getHead();
             int nodesSeen = 0; // in case currentNode is not initialized, 0 is the correct size
             while (currentNode != null) {
 
@@ -242,31 +1482,64 @@ public class LRUCache<K, V> {
         return sb.toString();
     }
 
-    protected class Node {
+    /*
+    The list node is the cache entry itself: it carries the key and value (inherited from Entry) plus the list links, so
+    every cached item is a single object besides the hashmap's own bucket node. Updating the value of an existing key
+    writes into this node and allocates nothing.
+     */
+    protected static class Node<K, V> extends Entry<K, V> {
 
-        private Entry entry;
-        private Node next;
-        private Node previous;
+        private Node<K, V> next;
+        private Node<K, V> previous;
 
-        public Node(Entry entry, Node next, Node previous) {
-            this.entry = entry;
-            this.next = next;
-            this.previous = previous;
+        // what the entry counts towards the cache's maximum weight. Guarded by evictionLock.
+        int weight;
+
+        // which queue the node is in, for policies that keep more than one list. 0 when not linked. Guarded by evictionLock.
+        byte queue;
+
+        // ClockPolicy only: the node's index in the clock, -1 when not in it, and whether it was hit since the hand last
+        // passed. referenced is set by readers without any lock; losing such a write only costs the node its second chance.
+        int slot = -1;
+        boolean referenced;
+
+        // Expiration only: when the entry expires, in Ticker time, and its links in the timer wheel. expirationTime is
+        // written by readers for expireAfterAccess, without the lock. The links are guarded by evictionLock.
+        volatile long expirationTime = Long.MAX_VALUE;
+
+        // Refreshing only: when the value was last written, in Ticker time
+        volatile long writeTime;
+
+        // Write-back only: the value has not been handed to the CacheWriter yet, see WriteBackBuffer
+        volatile boolean dirty;
+        Node<K, V> previousInWheel;
+        Node<K, V> nextInWheel;
+
+        // Rank tracking only: the node's access stamp in the RankTracker, 0 when not tracked. Guarded by evictionLock.
+        int rankStamp;
+
+        public Node(K key, V value) {
+            super(key, value);
         }
 
-        public Entry getEntry() {
-            return this.entry;
+        // Kept so callers can keep treating the node and its key/value pair as two things
+        public Entry<K, V> getEntry() {
+            return this;
         }
 
-        public Node getNext() {
+        public Node<K, V> getNext() {
             return this.next;
         }
 
-        public Node getPrevious() {
+        public Node<K, V> getPrevious() {
             return this.previous;
         }
 
-        public void setNext(Node next) {
+        public int getWeight() {
+            return this.weight;
+        }
+
+        public void setNext(Node<K, V> next) {
 
             if (this == next) {
                 throw new IllegalStateException("Attempted to produce a loop at " + this.toString());
@@ -275,7 +1548,7 @@ public class LRUCache<K, V> {
             this.next = next;
         }
 
-        public void setPrevious(Node previous) {
+        public void setPrevious(Node<K, V> previous) {
 
             if (this == previous) {
                 throw new IllegalStateException("Attempted to produce a loop at " + this.toString());
@@ -284,8 +1557,15 @@ public class LRUCache<K, V> {
             this.previous = previous;
         }
 
-        public void setEntry(Entry entry) {
-            this.entry = entry;
+        // Nodes are compared by identity, two different nodes holding equal key/value pairs are still different nodes
+        @Override
+        public boolean equals(Object o) {
+            return this == o;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
         }
 
         @Override
@@ -296,7 +1576,7 @@ public class LRUCache<K, V> {
             final String previousNodeString;
             if (this.getPrevious() != null) {
 
-                previousNodeString = this.getPrevious().getEntry().toString();
+                previousNodeString = this.getPrevious().getKey() + " : " + this.getPrevious().getValue();
             } else {
                 previousNodeString = "X";
             }
@@ -304,14 +1584,14 @@ public class LRUCache<K, V> {
             final String nextNodeString;
             if (this.getNext() != null) {
 
-                nextNodeString = this.getNext().getEntry().toString();
+                nextNodeString = this.getNext().getKey() + " : " + this.getNext().getValue();
             } else {
                 nextNodeString = "X";
             }
 
             sb.append(previousNodeString);
             sb.append(" <-- ");
-            sb.append(this.entry.toString());
+            sb.append(super.toString());
             sb.append(" --> ");
             sb.append(nextNodeString);
             return sb.toString();
@@ -320,8 +1600,11 @@ public class LRUCache<K, V> {
 
     public static class Entry<K, V> {
 
-        private K key;
-        private V value;
+        private static final AtomicReferenceFieldUpdater<Entry<?, ?>, Object> VALUE_UPDATER = newValueUpdater();
+
+        private final K key;
+        // volatile, because reads pick up values without holding the cache lock
+        private volatile V value;
 
         public Entry(K key, V value) {
 
@@ -342,6 +1625,25 @@ public class LRUCache<K, V> {
             this.value = value;
         }
 
+        // Lets two writers racing on the same entry each find out exactly which value they replaced
+        V getAndSetValue(V value) {
+
+            // only ever V is stored in the field
+            @SuppressWarnings("unchecked")
+            final V replaced = (V) VALUE_UPDATER.getAndSet(this, value);
+            return replaced;
+        }
+
+        boolean compareAndSetValue(V expectedValue, V value) {
+            return VALUE_UPDATER.compareAndSet(this, expectedValue, value);
+        }
+
+        // Entry.class can only be named raw, the updater works on every parameterization alike
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        private static AtomicReferenceFieldUpdater<Entry<?, ?>, Object> newValueUpdater() {
+            return (AtomicReferenceFieldUpdater) AtomicReferenceFieldUpdater.newUpdater(Entry.class, Object.class, "value");
+        }
+
         @Override
         public String toString() {
 
@@ -371,36 +1673,160 @@ public class LRUCache<K, V> {
 
             return true;
         }
+
+        // Goes with equals. Node overrides both, nodes are compared by identity.
+        @Override
+        public int hashCode() {
+            return Objects.hash(key, value);
+        }
     }
 
-    // This is an implementation of a doubly-linked-list
-    public class LRUOptimizedLinkedList {
+    // This is an implementation of a doubly-linked-list. It is only ever touched while holding the owning cache's
+    // evictionLock, so it does not take a second lock of its own.
+    public static class LRUOptimizedLinkedList<K, V> implements EvictionPolicy<K, V> {
+
+        static Logger log = Logger.getLogger("LRUOptimizedLinkedList.class");
 
-        private Node head;
-        private Node tail;
+        private Node<K, V> head;
+        private Node<K, V> tail;
         int currentSize;
-        int maxSize;
 
-        public LRUOptimizedLinkedList(int maxSize) {
+        // null unless trackRanks was called
+        RankTracker<K, V> ranks;
+
+        // The list does not enforce a size limit itself, the cache evicts by weight
+        public LRUOptimizedLinkedList() {
             this.currentSize = 0;
-            this.maxSize = maxSize;
             this.head = null;
             this.tail = null;
         }
 
-        public Node getHead() {
+        public Node<K, V> getHead() {
             return head;
         }
 
-        public Node getTail() {
+        public Node<K, V> getTail() {
             return tail;
         }
 
+        // From now on, keep track of every node's position so getIndexOfNode is O(log n). Costs O(log n) per change.
+        public void trackRanks() {
+
+            if (ranks == null) {
+                ranks = new RankTracker<K, V>();
+                ranks.restamp(this);
+            }
+        }
+
+        public boolean tracksRanks() {
+            return ranks != null;
+        }
+
+        // O(1): a node is in the list if it is the head or something points back to it
+        public boolean contains(Node<K, V> node) {
+            return node == head || node.getPrevious() != null;
+        }
+
+        // Links a node that is not in the list yet at the head, without the sanity checks insert does
+        public void addToHead(Node<K, V> newHead) {
+
+            if (head == null) {
+                head = newHead;
+                tail = newHead;
+            } else {
+                newHead.setNext(head);
+                head.setPrevious(newHead);
+                head = newHead;
+            }
+            currentSize++;
+            if (ranks != null) {
+                ranks.stamp(newHead, this);
+            }
+        }
+
+        public Node<K, V> removeTail() {
+
+            Node<K, V> oldTail = tail;
+            if (oldTail == null) {
+                throw new IllegalStateException("Attempting to remove the tail of an empty list");
+            }
+
+            tail = oldTail.getPrevious();
+            if (tail == null) {
+                head = null;
+            } else {
+                tail.setNext(null);
+                oldTail.setPrevious(null);
+            }
+            currentSize--;
+            if (ranks != null) {
+                ranks.unstamp(oldTail);
+            }
+            return oldTail;
+        }
+
+        // Unlinks a node from anywhere in the list
+        public void remove(Node<K, V> node) {
+
+            if (node == tail) {
+                removeTail();
+                return;
+            }
+
+            if (node == head) {
+                head = node.getNext();
+            } else {
+                node.getPrevious().setNext(node.getNext());
+            }
+            node.getNext().setPrevious(node.getPrevious());
+            node.setNext(null);
+            node.setPrevious(null);
+            currentSize--;
+            if (ranks != null) {
+                ranks.unstamp(node);
+            }
+        }
+
         public int getCurrentSize() {
             return currentSize;
         }
 
-        public synchronized void setHead(Node newHead) {
+        // As an eviction policy the list is plain LRU: new and accessed nodes go to the head, the tail is the victim
+
+        @Override
+        public void onAdd(Node<K, V> node) {
+            insert(node);
+        }
+
+        @Override
+        public void onAccess(Node<K, V> node) {
+            setHead(node);
+        }
+
+        @Override
+        public void onRemove(Node<K, V> node) {
+            remove(node);
+        }
+
+        @Override
+        public Node<K, V> evict() {
+            return tail == null ? null : removeTail();
+        }
+
+        @Override
+        public String toString() {
+
+            StringBuilder sb = new StringBuilder();
+            for (Node<K, V> current = head; current != null; current = current.getNext()) {
+                sb.append(current.getKey()).append(" : ").append(current.getValue());
+                if (current.getNext() != null) {
+                    sb.append(" -> ");
+                }
+            }
+            return sb.toString();
+        }
+
+        public void setHead(Node<K, V> newHead) {
 
             if (this.getHead() == newHead) {
 
@@ -412,6 +1838,9 @@ public class LRUCache<K, V> {
             if (this.getHead() == null) {
 
                 this.head = newHead;
+                if (ranks != null) {
+                    ranks.stamp(newHead, this);
+                }
                 return;
 
             } else {
@@ -441,33 +1870,39 @@ public class LRUCache<K, V> {
                 this.head.setPrevious(newHead);
                 newHead.setPrevious(null);
                 this.head = newHead;
+                if (ranks != null) {
+                    ranks.stamp(newHead, this);
+                }
             }
         }
 
-        public synchronized void setTail(Node tail) {
+        public void setTail(Node<K, V> tail) {
             this.tail = tail;
         }
 
         // By definition only called for a new node
-        public synchronized Node insert(Entry e) {
+        public Node<K, V> insert(Node<K, V> newNode) {
 
             // On insert, there are two options. First option is that the item is already there. We know it's there, because
-            Node listEntry = entrySet.get(e);
-            if (listEntry == null) {
+            // it is linked into the list.
+            if (!contains(newNode)) {
                 // it's not there. Let's add it then.
                 // get the head node, and make it the node after this node is to be inserted
 
                 if (head == null) {
 
                     // this is the first entry into the list
-                    head = new Node(e, null, null);
+                    head = newNode;
                     tail = head; //if there is no head entry, head and tail are one
                     currentSize++;
+                    if (ranks != null) {
+                        ranks.stamp(newNode, this);
+                    }
                     return head;
                 } else {
 
                     // this is a new entry into a list with at least one item
-                    Node newNode = new Node(e, head, null);
+                    newNode.setNext(head);
                     setHead(newNode);
 
                     // do some sanity checks
@@ -485,24 +1920,6 @@ public class LRUCache<K, V> {
                     }
                     currentSize++;
 
-                    //after this insertion, check if we've exceeded size
-                    if (this.currentSize > this.maxSize) {
-
-                        //move to tail, move it back up one, and then cut the last node loose
-
-                        if (tail.getNext() != null) {
-                            throw new IllegalStateException("The tail's next node seems to not be null.");
-                        }
-
-                        Node newTail = tail.getPrevious();
-                        if (newTail != null) {
-                            newTail.setNext(null);
-                        }
-                        tail.setPrevious(null);
-                        tail = newTail;
-                        currentSize--;
-                    }
-
                     return newNode;
                 }
             } else {
@@ -514,40 +1931,12 @@ public class LRUCache<K, V> {
             }
         }
 
-        public synchronized Set<Node> trimList(final int TRIM_COUNT) {
-
-            Node currentTail = tail;
-            Set<Node> nodesToDelete = new HashSet<Node>();
-
-            for (int nodesTrimmed = 0; nodesTrimmed < TRIM_COUNT; nodesTrimmed++) {
-
-                if (currentTail == null) {
-                    throw new IllegalStateException("We have more nodes to delete, yet list is empty!?");
-                }
-
-                if (currentTail.getPrevious() == null && currentTail != head) {
-                    throw new IllegalStateException("Attempting to delete node but cannot back up to previous. We're also not at head");
-                }
-
-                Node nodeToDelete = currentTail;
-                nodesToDelete.add(nodeToDelete);
-                currentTail = currentTail.getPrevious();
-                nodeToDelete.setNext(null);
-                nodeToDelete.setPrevious(null);
-                currentSize--;
-                tail = currentTail;
-                tail.setNext(null);
-            }
-
-            return nodesToDelete;
-        }
-
         // O(n) method to get how far into the queue the object is. Used as a test hook.
         public int getIndexOfObject(final K keyToLookup) {
 
             int returnIndex = 0;
 
-            Node current = head;
+            Node<K, V> current = head;
             while (current != null) {
 
                 if (current.getEntry().getKey().equals(keyToLookup))
@@ -560,5 +1949,243 @@ public class LRUCache<K, V> {
             // -1 indicates that the item was not found
             return -1;
         }
+
+        // How far into the list the node is, -1 if it is not in it. O(log n) when ranks are tracked, O(n) otherwise.
+        public int getIndexOfNode(final Node<K, V> node) {
+
+            if (ranks != null) {
+                return ranks.rankOf(node);
+            }
+
+            int returnIndex = 0;
+            for (Node<K, V> current = head; current != null; current = current.getNext()) {
+                if (current == node) {
+                    return returnIndex;
+                }
+                returnIndex++;
+            }
+            return -1;
+        }
+
+        public void forEachInPriorityOrder(Consumer<Node<K, V>> action) {
+
+            for (Node<K, V> current = head; current != null; current = current.getNext()) {
+                action.accept(current);
+            }
+        }
+    }
+
+    /*
+    Internal callback for caches built on top of this one that need to release something when a value goes away. Unlike
+    a RemovalListener it runs synchronously, usually under evictionLock, so it has to be cheap.
+     */
+    interface RemovalHook<K, V> {
+        void onRemoval(K key, V value, RemovalCause cause);
+    }
+
+    public static class Builder<K, V> {
+
+        long maximumWeight = -1;
+        // null means every entry weighs 1
+        Weigher<K, V> weigher = null;
+        EvictionMode evictionMode = EvictionMode.LRU;
+        boolean bufferWrites = false;
+        boolean recordStats = false;
+        boolean trackRanks = false;
+        RemovalHook<K, V> removalHook = null;
+        RemovalListener<K, V> removalListener = null;
+        // null means AsyncLRUCache.defaultExecutor()
+        Executor removalListenerExecutor = null;
+        CacheWriter<K, V> cacheWriter = null;
+        boolean writeBack = false;
+        long flushIntervalNanos = -1;
+        // null means AsyncLRUCache.defaultExecutor()
+        Executor writeBackExecutor = null;
+        long expireAfterWriteNanos = -1;
+        long expireAfterAccessNanos = -1;
+        Expiry<K, V> expiry = null;
+        Ticker ticker = Ticker.systemTicker();
+        long refreshAfterWriteNanos = -1;
+        Function<? super K, ? extends V> reloader = null;
+        // null means AsyncLRUCache.defaultExecutor()
+        Executor refreshExecutor = null;
+
+        // The maximum number of entries. Same as maximumWeight with the default weigher.
+        public Builder<K, V> maximumSize(long maximumSize) {
+            this.maximumWeight = maximumSize;
+            return this;
+        }
+
+        public Builder<K, V> maximumWeight(long maximumWeight) {
+            this.maximumWeight = maximumWeight;
+            return this;
+        }
+
+        public Builder<K, V> weigher(Weigher<K, V> weigher) {
+            this.weigher = weigher;
+            return this;
+        }
+
+        // Which entry makes room for a new one. LRU unless set.
+        public Builder<K, V> evictionMode(EvictionMode evictionMode) {
+            this.evictionMode = evictionMode;
+            return this;
+        }
+
+        // Publish writes through the hashmap right away and apply the list updates in batches
+        public Builder<K, V> bufferWrites(boolean bufferWrites) {
+            this.bufferWrites = bufferWrites;
+            return this;
+        }
+
+        // Entries expire this long after they were last written
+        public Builder<K, V> expireAfterWrite(long duration, TimeUnit unit) {
+            this.expireAfterWriteNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        // Entries expire this long after they were last written or read
+        public Builder<K, V> expireAfterAccess(long duration, TimeUnit unit) {
+            this.expireAfterAccessNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        // A lifetime per entry. Cannot be combined with expireAfterWrite or expireAfterAccess.
+        public Builder<K, V> expireAfter(Expiry<K, V> expiry) {
+            this.expiry = expiry;
+            return this;
+        }
+
+        /*
+        Entries read this long after they were last written are reloaded in the background with the reloader, while
+        the read itself still gets the current value. A reload that fails or returns null keeps the current value.
+         */
+        public Builder<K, V> refreshAfterWrite(long duration, TimeUnit unit, Function<? super K, ? extends V> reloader) {
+            this.refreshAfterWriteNanos = unit.toNanos(duration);
+            this.reloader = reloader;
+            return this;
+        }
+
+        // Where refreshAfterWrite reloads run
+        public Builder<K, V> refreshExecutor(Executor refreshExecutor) {
+            this.refreshExecutor = refreshExecutor;
+            return this;
+        }
+
+        // Where expiration and refreshing read the time from. System.nanoTime unless set.
+        public Builder<K, V> ticker(Ticker ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        Expiry<K, V> buildExpiry() {
+
+            final int configured = (expireAfterWriteNanos >= 0 ? 1 : 0) + (expireAfterAccessNanos >= 0 ? 1 : 0) +
+                    (expiry != null ? 1 : 0);
+            if (configured > 1) {
+                final String ERROR_MSG = "Only one of expireAfterWrite, expireAfterAccess and expireAfter can be set";
+                throw new IllegalStateException(ERROR_MSG);
+            }
+
+            if (expireAfterWriteNanos >= 0) {
+                return Expiry.afterWrite(expireAfterWriteNanos, TimeUnit.NANOSECONDS);
+            }
+            if (expireAfterAccessNanos >= 0) {
+                return Expiry.afterAccess(expireAfterAccessNanos, TimeUnit.NANOSECONDS);
+            }
+            return expiry;
+        }
+
+        // Count hits, misses, writes and evictions, see getStats. Costs a few striped counter increments per operation.
+        public Builder<K, V> recordStats() {
+            this.recordStats = true;
+            return this;
+        }
+
+        /*
+        Keep an order-statistics index over the LRU list (see RankTracker), so getPriorityInCacheOfObject is O(log n)
+        instead of a walk over the list. Every promotion pays O(log n) for it under the lock. LRU mode only.
+         */
+        public Builder<K, V> trackRanks() {
+            this.trackRanks = true;
+            return this;
+        }
+
+        // Told about every entry that is evicted, expires, is overwritten or removed, see RemovalListener
+        public Builder<K, V> removalListener(RemovalListener<K, V> removalListener) {
+            this.removalListener = removalListener;
+            return this;
+        }
+
+        // Where the removal listener runs
+        public Builder<K, V> removalListenerExecutor(Executor removalListenerExecutor) {
+            this.removalListenerExecutor = removalListenerExecutor;
+            return this;
+        }
+
+        // Every write goes to the writer first, on the writing thread
+        public Builder<K, V> writeThrough(CacheWriter<K, V> cacheWriter) {
+            this.cacheWriter = cacheWriter;
+            this.writeBack = false;
+            return this;
+        }
+
+        /*
+        Writes only mark the entry dirty, and the writer gets them in batches once flushInterval has passed since the
+        last flush. A timer checks that every flushInterval even when the cache sees no traffic, so a dirty entry reaches
+        the writer within about two intervals of being written.
+         */
+        public Builder<K, V> writeBack(CacheWriter<K, V> cacheWriter, long flushInterval, TimeUnit unit) {
+            this.cacheWriter = cacheWriter;
+            this.writeBack = true;
+            this.flushIntervalNanos = unit.toNanos(flushInterval);
+            return this;
+        }
+
+        // Where write-back flushes run. Has to hand the flush to another thread, not run it on the caller's.
+        public Builder<K, V> writeBackExecutor(Executor writeBackExecutor) {
+            this.writeBackExecutor = writeBackExecutor;
+            return this;
+        }
+
+        Builder<K, V> removalHook(RemovalHook<K, V> removalHook) {
+            this.removalHook = removalHook;
+            return this;
+        }
+
+        public LRUCache<K, V> build() {
+            return new LRUCache<K, V>(this);
+        }
+
+        // Spreads the maximum weight over independently locked segments, see SegmentedLRUCache
+        public SegmentedLRUCache<K, V> buildSegmented(int segmentCount) {
+            return new SegmentedLRUCache<K, V>(this, segmentCount);
+        }
+
+        Builder<K, V> copyWithMaximumWeight(long maximumWeight) {
+
+            Builder<K, V> copy = new Builder<K, V>();
+            copy.maximumWeight = maximumWeight;
+            copy.weigher = this.weigher;
+            copy.evictionMode = this.evictionMode;
+            copy.bufferWrites = this.bufferWrites;
+            copy.recordStats = this.recordStats;
+            copy.trackRanks = this.trackRanks;
+            copy.removalHook = this.removalHook;
+            copy.removalListener = this.removalListener;
+            copy.removalListenerExecutor = this.removalListenerExecutor;
+            copy.cacheWriter = this.cacheWriter;
+            copy.writeBack = this.writeBack;
+            copy.flushIntervalNanos = this.flushIntervalNanos;
+            copy.writeBackExecutor = this.writeBackExecutor;
+            copy.expireAfterWriteNanos = this.expireAfterWriteNanos;
+            copy.expireAfterAccessNanos = this.expireAfterAccessNanos;
+            copy.expiry = this.expiry;
+            copy.ticker = this.ticker;
+            copy.refreshAfterWriteNanos = this.refreshAfterWriteNanos;
+            copy.reloader = this.reloader;
+            copy.refreshExecutor = this.refreshExecutor;
+            return copy;
+        }
     }
 }
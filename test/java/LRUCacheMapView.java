@@ -0,0 +1,377 @@
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/*
+The ConcurrentMap an LRUCache hands out from asMap.
+
+Lookups and writes go to the cache: get is a cache read (it promotes and counts as a hit or miss), put and putAll are
+cache writes, remove invalidates. The conditional writes are atomic, buffered writes included: the check is made under
+the cache's lock and the write is a check-and-set on the entry, see LRUCache.writeIf.
+
+The collection views are backed by the cache's hashmap, and their iterators and spliterators by the hashmap's own:
+1. Weakly consistent. They never throw ConcurrentModificationException, and see each entry that is present for the
+   whole walk exactly once, but may or may not see entries written or removed while it goes on.
+2. No lock is taken and nothing is promoted, so a scan over the whole cache neither holds up writers nor disturbs the
+   eviction order. Entries that were evicted or have expired are skipped.
+3. The spliterators split like the hashmap's do, so parallel streams over the views spread over the table.
+
+Like ConcurrentHashMap, the map takes neither null keys nor null values.
+ */
+final class LRUCacheMapView<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+    final LRUCache<K, V> cache;
+
+    private Set<Map.Entry<K, V>> entries;
+    private Set<K> keys;
+    private Collection<V> values;
+
+    LRUCacheMapView(LRUCache<K, V> cache) {
+        this.cache = cache;
+    }
+
+    // The number of entries in the hashmap, without taking the lock. May count a few that have expired.
+    @Override
+    public int size() {
+        return cache.entrySet.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return cache.entrySet.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key, false) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        return get(key, true);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return cache.writeIf(key, value, current -> true);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return cache.writeIf(key, value, current -> current == null);
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        return cache.writeIf(key, value, current -> current != null);
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+
+        if (oldValue == null) {
+            throw new NullPointerException("Value cannot be null");
+        }
+        return oldValue.equals(cache.writeIf(key, newValue, oldValue::equals));
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map) {
+        cache.putAll(map);
+    }
+
+    // a key of the wrong type is never in the hashmap, so the cast only decides which key misses
+    @SuppressWarnings("unchecked")
+    @Override
+    public V remove(Object key) {
+        return cache.removeIf((K) key, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean remove(Object key, Object value) {
+        return value != null && cache.removeIf((K) key, value) != null;
+    }
+
+    // Removes every key that is present when the walk gets to it
+    @Override
+    public void clear() {
+
+        for (K key : cache.entrySet.keySet()) {
+            cache.invalidate(key);
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+
+        if (entries == null) {
+            entries = new AbstractSet<Map.Entry<K, V>>() {
+
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new ViewIterator<Map.Entry<K, V>>(WriteThroughEntry::new);
+                }
+
+                @Override
+                public Spliterator<Map.Entry<K, V>> spliterator() {
+                    return new ViewSpliterator<Map.Entry<K, V>>(cache.entrySet.values().spliterator(),
+                            WriteThroughEntry::new, Spliterator.DISTINCT);
+                }
+
+                @Override
+                public boolean contains(Object o) {
+
+                    if (!(o instanceof Map.Entry)) {
+                        return false;
+                    }
+                    final Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                    final V value = LRUCacheMapView.this.get(entry.getKey(), false);
+                    return value != null && value.equals(entry.getValue());
+                }
+
+                @Override
+                public boolean remove(Object o) {
+
+                    if (!(o instanceof Map.Entry)) {
+                        return false;
+                    }
+                    final Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                    return LRUCacheMapView.this.remove(entry.getKey(), entry.getValue());
+                }
+
+                @Override
+                public int size() {
+                    return LRUCacheMapView.this.size();
+                }
+
+                @Override
+                public void clear() {
+                    LRUCacheMapView.this.clear();
+                }
+            };
+        }
+        return entries;
+    }
+
+    @Override
+    public Set<K> keySet() {
+
+        if (keys == null) {
+            keys = new AbstractSet<K>() {
+
+                @Override
+                public Iterator<K> iterator() {
+                    return new ViewIterator<K>((key, value) -> key);
+                }
+
+                @Override
+                public Spliterator<K> spliterator() {
+                    return new ViewSpliterator<K>(cache.entrySet.values().spliterator(), (key, value) -> key,
+                            Spliterator.DISTINCT);
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    return containsKey(o);
+                }
+
+                @Override
+                public boolean remove(Object o) {
+                    return LRUCacheMapView.this.remove(o) != null;
+                }
+
+                @Override
+                public int size() {
+                    return LRUCacheMapView.this.size();
+                }
+
+                @Override
+                public void clear() {
+                    LRUCacheMapView.this.clear();
+                }
+            };
+        }
+        return keys;
+    }
+
+    @Override
+    public Collection<V> values() {
+
+        if (values == null) {
+            values = new AbstractCollection<V>() {
+
+                @Override
+                public Iterator<V> iterator() {
+                    return new ViewIterator<V>((key, value) -> value);
+                }
+
+                @Override
+                public Spliterator<V> spliterator() {
+                    return new ViewSpliterator<V>(cache.entrySet.values().spliterator(), (key, value) -> value, 0);
+                }
+
+                @Override
+                public int size() {
+                    return LRUCacheMapView.this.size();
+                }
+
+                @Override
+                public void clear() {
+                    LRUCacheMapView.this.clear();
+                }
+            };
+        }
+        return values;
+    }
+
+    // A read counts for the eviction order and the stats, a peek does neither
+    @SuppressWarnings("unchecked")
+    private V get(Object key, boolean isRead) {
+
+        if (isRead) {
+            return cache.getValueFromCache((K) key);
+        }
+        final LRUCache.Node<K, V> node = cache.entrySet.get(key);
+        return node == null ? null : cache.scanValue(node);
+    }
+
+    // Walks the hashmap's nodes, skipping the ones without a live value
+    private final class ViewIterator<T> implements Iterator<T> {
+
+        final Iterator<LRUCache.Node<K, V>> nodes = cache.entrySet.values().iterator();
+        final BiFunction<K, V, T> mapper;
+        T next;
+        K nextKey;
+        K lastKey;
+
+        ViewIterator(BiFunction<K, V, T> mapper) {
+            this.mapper = mapper;
+            advance();
+        }
+
+        private void advance() {
+
+            next = null;
+            while (next == null && nodes.hasNext()) {
+                final LRUCache.Node<K, V> node = nodes.next();
+                final V value = cache.scanValue(node);
+                if (value != null) {
+                    nextKey = node.getKey();
+                    next = mapper.apply(nextKey, value);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            final T current = next;
+            lastKey = nextKey;
+            advance();
+            return current;
+        }
+
+        @Override
+        public void remove() {
+
+            if (lastKey == null) {
+                throw new IllegalStateException();
+            }
+            cache.invalidate(lastKey);
+            lastKey = null;
+        }
+    }
+
+    private final class ViewSpliterator<T> implements Spliterator<T> {
+
+        final Spliterator<LRUCache.Node<K, V>> nodes;
+        final BiFunction<K, V, T> mapper;
+        final int characteristics;
+        boolean found;
+
+        ViewSpliterator(Spliterator<LRUCache.Node<K, V>> nodes, BiFunction<K, V, T> mapper, int characteristics) {
+            this.nodes = nodes;
+            this.mapper = mapper;
+            this.characteristics = characteristics | Spliterator.CONCURRENT | Spliterator.NONNULL;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+
+            found = false;
+            while (!found && nodes.tryAdvance(node -> {
+                final V value = cache.scanValue(node);
+                if (value != null) {
+                    found = true;
+                    action.accept(mapper.apply(node.getKey(), value));
+                }
+            })) {
+                // skipped an evicted or expired node
+            }
+            return found;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+
+            nodes.forEachRemaining(node -> {
+                final V value = cache.scanValue(node);
+                if (value != null) {
+                    action.accept(mapper.apply(node.getKey(), value));
+                }
+            });
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+
+            final Spliterator<LRUCache.Node<K, V>> split = nodes.trySplit();
+            return split == null ? null : new ViewSpliterator<T>(split, mapper, characteristics);
+        }
+
+        @Override
+        public long estimateSize() {
+            return nodes.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return characteristics;
+        }
+    }
+
+    // Writes through to the cache on setValue, like ConcurrentHashMap's entries do
+    private final class WriteThroughEntry extends AbstractMap.SimpleEntry<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        WriteThroughEntry(K key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+}
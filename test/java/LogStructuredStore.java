@@ -0,0 +1,385 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/*
+A key-value store on local disk, made of append-only segment files and an in-memory index.
+
+Every put appends a record to the active segment and points the index at it. Overwriting or removing a key only moves
+or drops its index entry, so the old record becomes garbage in place. Once the active segment reaches segmentSize it is
+sealed and a new one is started.
+
+Disk space is reclaimed two ways:
+1. Compaction. A sealed segment whose live records take up less than half of it has them copied to the active segment,
+   and is then deleted.
+2. Eviction. While the segments take more than maximumBytes, the oldest one is dropped along with every key still in
+   it. Oldest segment first is roughly least recently written first.
+
+Record layout: key length (int) | value length (int) | key bytes | value bytes.
+
+The store is a cache of its own, so nothing survives a restart: the segment files belong to this instance and are
+deleted on close. Segment files left behind by an instance that never got to close, e.g. because the process was
+killed, are deleted when the next store is opened on the directory. So the directory must not be shared with another
+live store.
+
+Concurrency:
+1. Writes, removals, compaction and eviction are synchronized on the store.
+2. Reads take no lock. They look the key up in the index and do a positional read from the segment's channel. If the
+   segment was deleted in the meantime the channel is closed, and the read looks the key up again.
+3. A FileChannel is closed for every thread when one thread is interrupted in the middle of using it. The interrupted
+   thread gets its ClosedByInterruptException, and the next read or write of the segment opens the file again.
+ */
+public class LogStructuredStore<K, V> {
+
+    static Logger log = Logger.getLogger("LogStructuredStore.class");
+
+    static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+    final Path directory;
+    final long segmentSize;
+    final long maximumBytes;
+    final Codec<K> keyCodec;
+    final Codec<V> valueCodec;
+
+    private final ConcurrentHashMap<K, Location> index = new ConcurrentHashMap<K, Location>();
+
+    // guarded by this. Oldest first, the last one is the active segment.
+    private final Deque<Segment> segments = new ArrayDeque<Segment>();
+    private long diskBytes;
+    private long nextSegmentId;
+    private long compactionCount;
+
+    public LogStructuredStore(Path directory, long segmentSize, long maximumBytes, Codec<K> keyCodec, Codec<V> valueCodec) {
+
+        if (segmentSize < 1 || maximumBytes < segmentSize) {
+            final String ERROR_MSG = "Need a positive segment size and room for at least one segment";
+            log.severe(ERROR_MSG);
+            throw new IllegalStateException(ERROR_MSG);
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maximumBytes = maximumBytes;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+
+        try {
+            Files.createDirectories(directory);
+            deleteStaleSegments();
+            openSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Returns null if the key is not stored
+    public V get(final K key) {
+
+        while (true) {
+
+            final Location location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+
+            final ByteBuffer record;
+            try {
+                record = location.segment.read(location.offset, location.length);
+            } catch (ClosedByInterruptException e) {
+                // this thread was interrupted, which is not something to retry
+                throw new UncheckedIOException(e);
+            } catch (ClosedChannelException e) {
+                // compacted or evicted under our feet, the index already says where the record went
+                if (index.get(key) != location) {
+                    continue;
+                }
+                throw new UncheckedIOException(e);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            final int keyLength = record.getInt();
+            final int valueLength = record.getInt();
+            record.position(RECORD_HEADER_SIZE + keyLength);
+            record.limit(RECORD_HEADER_SIZE + keyLength + valueLength);
+            return valueCodec.decode(record.slice());
+        }
+    }
+
+    public boolean contains(final K key) {
+        return index.containsKey(key);
+    }
+
+    public synchronized void put(final K key, final V value) {
+
+        final int keyLength = keyCodec.encodedSize(key);
+        final int valueLength = valueCodec.encodedSize(value);
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + keyLength + valueLength);
+        record.putInt(keyLength).putInt(valueLength);
+        keyCodec.encode(key, record);
+        valueCodec.encode(value, record);
+        if (record.hasRemaining()) {
+            throw new IllegalStateException("Codec wrote fewer bytes than it announced for " + key);
+        }
+        record.flip();
+
+        try {
+            append(key, record);
+            evictIfNeeded();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public synchronized boolean remove(final K key) {
+
+        final Location location = index.remove(key);
+        if (location == null) {
+            return false;
+        }
+
+        location.segment.liveBytes -= location.length;
+        try {
+            compactIfSparse(location.segment);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    public int getEntryCount() {
+        return index.size();
+    }
+
+    public synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public synchronized long getCompactionCount() {
+        return compactionCount;
+    }
+
+    // Closes and deletes every segment file
+    public synchronized void close() {
+
+        index.clear();
+        for (Segment segment : segments) {
+            segment.delete();
+        }
+        segments.clear();
+        diskBytes = 0;
+    }
+
+    private void append(final K key, final ByteBuffer record) throws IOException {
+
+        Segment active = segments.peekLast();
+        if (active.size > 0 && active.size + record.remaining() > segmentSize) {
+            active = openSegment();
+        }
+
+        final long offset = active.size;
+        final int length = record.remaining();
+        active.write(record, offset);
+        active.size += length;
+        active.liveBytes += length;
+        diskBytes += length;
+
+        final Location previous = index.put(key, new Location(active, offset, length));
+        if (previous != null) {
+            previous.segment.liveBytes -= previous.length;
+            compactIfSparse(previous.segment);
+        }
+    }
+
+    private void compactIfSparse(final Segment segment) throws IOException {
+
+        if (segment == segments.peekLast() || segment.liveBytes * 2 >= segment.size || !segments.contains(segment)) {
+            return;
+        }
+
+        // taken out of the list first, so that moving its records away does not compact it again
+        segments.remove(segment);
+
+        // copy whatever the index still points at in this segment to the active one
+        forEachRecord(segment, (key, offset, record) -> {
+            final Location location = index.get(key);
+            if (location != null && location.segment == segment && location.offset == offset) {
+                append(key, record);
+            }
+        });
+        diskBytes -= segment.size;
+        segment.delete();
+        compactionCount++;
+    }
+
+    private void evictIfNeeded() throws IOException {
+
+        while (diskBytes > maximumBytes && segments.size() > 1) {
+            final Segment oldest = segments.peekFirst();
+            forEachRecord(oldest, (key, offset, record) -> {
+                final Location location = index.get(key);
+                if (location != null && location.segment == oldest && location.offset == offset) {
+                    index.remove(key, location);
+                }
+            });
+            segments.removeFirst();
+            diskBytes -= oldest.size;
+            oldest.delete();
+        }
+    }
+
+    // Segment files of an earlier store on this directory that was never closed. Nothing points at them any more.
+    private void deleteStaleSegments() throws IOException {
+
+        try (DirectoryStream<Path> staleSegments = Files.newDirectoryStream(directory, "segment-*.log")) {
+            for (Path path : staleSegments) {
+                log.info("Deleting stale segment " + path);
+                Files.delete(path);
+            }
+        }
+    }
+
+    private Segment openSegment() throws IOException {
+
+        final Path path = directory.resolve(String.format("segment-%08d.log", nextSegmentId++));
+        final Segment segment = new Segment(path, FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE));
+        segments.addLast(segment);
+        return segment;
+    }
+
+    private void forEachRecord(final Segment segment, final RecordVisitor<K> visitor) throws IOException {
+
+        long offset = 0;
+        while (offset < segment.size) {
+            final ByteBuffer header = segment.read(offset, RECORD_HEADER_SIZE);
+            final int keyLength = header.getInt();
+            final int length = RECORD_HEADER_SIZE + keyLength + header.getInt();
+
+            final ByteBuffer record = segment.read(offset, length);
+            final ByteBuffer keyBytes = record.duplicate();
+            keyBytes.position(RECORD_HEADER_SIZE);
+            keyBytes.limit(RECORD_HEADER_SIZE + keyLength);
+            visitor.visit(keyCodec.decode(keyBytes.slice()), offset, record);
+            offset += length;
+        }
+    }
+
+    private interface RecordVisitor<K> {
+        void visit(K key, long offset, ByteBuffer record) throws IOException;
+    }
+
+    // Where a key's current record is
+    private static final class Location {
+
+        final Segment segment;
+        final long offset;
+        final int length;
+
+        Location(Segment segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final class Segment {
+
+        final Path path;
+        // replaced once it was closed by an interrupt, see channel()
+        private volatile FileChannel channel;
+        private volatile boolean deleted;
+        // guarded by the store
+        long size;
+        long liveBytes;
+
+        Segment(Path path, FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+
+        ByteBuffer read(long offset, int length) throws IOException {
+
+            final ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                final int read;
+                try {
+                    read = channel().read(buffer, offset + buffer.position());
+                } catch (ClosedByInterruptException e) {
+                    throw e;
+                } catch (ClosedChannelException e) {
+                    if (deleted) {
+                        throw e;
+                    }
+                    // another thread was interrupted while using the channel, go again on a reopened one
+                    continue;
+                }
+                if (read < 0) {
+                    throw new IOException("Unexpected end of " + path);
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        void write(ByteBuffer record, long offset) throws IOException {
+
+            long position = offset;
+            while (record.hasRemaining()) {
+                try {
+                    position += channel().write(record, position);
+                } catch (ClosedByInterruptException e) {
+                    throw e;
+                } catch (ClosedChannelException e) {
+                    if (deleted) {
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        // The open channel, reopened if an interrupt closed it. A deleted segment's channel stays closed.
+        private FileChannel channel() throws IOException {
+
+            final FileChannel current = channel;
+            if (current.isOpen() || deleted) {
+                return current;
+            }
+            synchronized (this) {
+                if (!channel.isOpen() && !deleted) {
+                    channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                }
+                return channel;
+            }
+        }
+
+        // Readers still holding on to the segment get a ClosedChannelException
+        void delete() {
+
+            try {
+                synchronized (this) {
+                    deleted = true;
+                    channel.close();
+                }
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warning("Could not delete " + path + ": " + e);
+            }
+        }
+    }
+}
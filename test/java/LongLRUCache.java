@@ -0,0 +1,237 @@
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/*
+An LRU cache keyed by primitive longs, for the many caches keyed by numeric IDs.
+
+LRUCache<Long, V> boxes every key on every call, hashes the Long, and keeps a hashmap entry, a list node and the boxed
+key alive per cached value. Here there are no per-entry objects at all besides the values themselves:
+
+1. Keys are found through an open-addressed hash table of two parallel arrays: tableKeys holds the key, tableSlots the
+   slot (plus one, so that 0 means empty). Collisions probe linearly. The table is at least twice the capacity, so
+   probes stay short, and removals shift the following entries back instead of leaving tombstones behind.
+2. The recency order is an IndexLinkedLRUList over the same slot numbers. slotKeys and slotValues hold the key and
+   value of each slot.
+
+Once the cache is warm a get or a put touches a handful of array elements and allocates nothing. When the cache is
+full, the tail's slot is handed straight to the new entry.
+
+Concurrency: every call takes the cache's lock, the reads as well, since they promote. The critical sections are a few
+array operations. Spread the keys over several instances (like SegmentedLRUCache does) if that lock gets contended.
+
+The capacity is fixed at construction.
+ */
+public class LongLRUCache<V> {
+
+    static Logger log = Logger.getLogger("LongLRUCache.class");
+
+    // 0 in tableSlots marks an empty table entry
+    private static final int EMPTY = 0;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // guarded by lock
+    private final IndexLinkedLRUList list;
+    private final long[] slotKeys;
+    private final Object[] slotValues;
+    private final long[] tableKeys;
+    private final int[] tableSlots;
+    private final int tableMask;
+    private final int tableShift;
+
+    public LongLRUCache(int capacity) {
+
+        if (capacity < 1 || capacity > (1 << 29)) {
+            final String ERROR_MSG = "Capacity needs to be between 1 and " + (1 << 29);
+            log.severe(ERROR_MSG);
+            throw new IllegalStateException(ERROR_MSG);
+        }
+
+        list = new IndexLinkedLRUList(capacity);
+        slotKeys = new long[capacity];
+        slotValues = new Object[capacity];
+
+        final int tableSize = Integer.highestOneBit(capacity - 1 | 1) << 2;
+        tableKeys = new long[tableSize];
+        tableSlots = new int[tableSize];
+        tableMask = tableSize - 1;
+        tableShift = 64 - Integer.numberOfTrailingZeros(tableSize);
+    }
+
+    // Returns null on a miss
+    public V getValueFromCache(final long key) {
+
+        lock.lock();
+        try {
+            final int index = find(key);
+            if (index < 0) {
+                return null;
+            }
+
+            final int slot = tableSlots[index] - 1;
+            list.moveToHead(slot);
+            // only ever V is stored in slotValues
+            @SuppressWarnings("unchecked")
+            final V value = (V) slotValues[slot];
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void writeValueToCache(final long key, final V value) {
+
+        // Let's assume null is not a valid value
+        if (value == null) {
+            throw new RuntimeException("Value cannot be null");
+        }
+
+        lock.lock();
+        try {
+            final int index = find(key);
+            if (index >= 0) {
+                final int slot = tableSlots[index] - 1;
+                slotValues[slot] = value;
+                list.moveToHead(slot);
+                return;
+            }
+
+            final int slot;
+            if (list.isFull()) {
+                // the evicted entry's slot goes straight to the new one
+                deleteFromTable(find(slotKeys[list.getTail()]));
+                slot = list.recycleTail();
+            } else {
+                slot = list.allocate();
+            }
+
+            slotKeys[slot] = key;
+            slotValues[slot] = value;
+            insertIntoTable(key, slot);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean existsInCache(final long key) {
+
+        lock.lock();
+        try {
+            return find(key) >= 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(final long key) {
+
+        lock.lock();
+        try {
+            final int index = find(key);
+            if (index >= 0) {
+                final int slot = tableSlots[index] - 1;
+                deleteFromTable(index);
+                list.free(slot);
+                slotValues[slot] = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCacheSize() {
+
+        lock.lock();
+        try {
+            return list.getCurrentSize();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return slotKeys.length;
+    }
+
+    // O(n) method to get the priority of a key, 0 being the most recently used. -1 if it is not in the cache.
+    public int getPriorityInCacheOfObject(final long key) {
+
+        lock.lock();
+        try {
+            final int index = find(key);
+            return index < 0 ? -1 : list.getIndexOfSlot(tableSlots[index] - 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Table index of the key, or -1
+    private int find(final long key) {
+
+        for (int index = indexFor(key); ; index = (index + 1) & tableMask) {
+            if (tableSlots[index] == EMPTY) {
+                return -1;
+            }
+            if (tableKeys[index] == key) {
+                return index;
+            }
+        }
+    }
+
+    private void insertIntoTable(final long key, final int slot) {
+
+        int index = indexFor(key);
+        while (tableSlots[index] != EMPTY) {
+            index = (index + 1) & tableMask;
+        }
+        tableKeys[index] = key;
+        tableSlots[index] = slot + 1;
+    }
+
+    /*
+    Empties the table entry, then moves back every entry after it in the same run that would otherwise no longer be
+    found: one whose home index does not lie cyclically between the hole and its current index.
+     */
+    private void deleteFromTable(int hole) {
+
+        int index = hole;
+        while (true) {
+            index = (index + 1) & tableMask;
+            if (tableSlots[index] == EMPTY) {
+                break;
+            }
+
+            final int home = indexFor(tableKeys[index]);
+            final boolean reachableWithoutHole = hole <= index ? (hole < home && home <= index) : (hole < home || home <= index);
+            if (!reachableWithoutHole) {
+                tableKeys[hole] = tableKeys[index];
+                tableSlots[hole] = tableSlots[index];
+                hole = index;
+            }
+        }
+        tableSlots[hole] = EMPTY;
+    }
+
+    // Fibonacci hashing: spreads sequential IDs over the whole table, taking the top bits of the product
+    private int indexFor(final long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> tableShift);
+    }
+
+    @Override
+    public String toString() {
+
+        lock.lock();
+        try {
+            final StringBuilder sb = new StringBuilder();
+            for (int slot = list.getHead(); slot != IndexLinkedLRUList.NONE; slot = list.getNext(slot)) {
+                sb.append(slotKeys[slot] + " : " + slotValues[slot]);
+                if (list.getNext(slot) != IndexLinkedLRUList.NONE) {
+                    sb.append(", ");
+                }
+            }
+            return sb.toString();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/*
+An LRU cache whose values live outside of the Java heap.
+
+Values are serialized with the given codec into an OffHeapStore, and the LRUCache underneath only keeps the small
+handle pointing at them. So the garbage collector only ever sees the keys, the list nodes and the handles, however big
+the cached values are.
+
+Whenever the LRUCache lets go of a handle (the entry fell off the tail, was trimmed by a resize, or was overwritten), the
+chunk behind it goes back to the store to be reused.
+
+The cache is bounded twice: by maximumSize entries, and by the off-heap bytes. When the store has no room for a value,
+the least recently used entries are evicted until it has, so a write never fails just because the store is full.
+ */
+public class OffHeapLRUCache<K, V> implements Cache<K, V> {
+
+    final OffHeapStore store;
+    final Codec<V> codec;
+    final LRUCache<K, OffHeapStore.Handle> handles;
+
+    // Loads are coalesced on the decoded values, the handle cache underneath never sees a loader
+    final InFlightLoads<K, V> inFlightLoads = new InFlightLoads<K, V>();
+
+    public OffHeapLRUCache(long maximumSize, Codec<V> codec, long maximumOffHeapBytes) {
+
+        this.store = new OffHeapStore(maximumOffHeapBytes);
+        this.codec = codec;
+        this.handles = LRUCache.<K, OffHeapStore.Handle>newBuilder()
+                .maximumSize(maximumSize)
+                .removalHook((key, handle, cause) -> store.free(handle))
+                .build();
+    }
+
+    @Override
+    public V getValueFromCache(final K key) {
+
+        while (true) {
+
+            // getIfPresent, because a miss has to come back as null and not as an exception
+            OffHeapStore.Handle handle = handles.getIfPresent(key);
+            if (handle == null) {
+                return null;
+            }
+
+            // null means the handle was released while we were copying, so look up whatever replaced it
+            V value = store.read(handle, codec);
+            if (value != null) {
+                return value;
+            }
+        }
+    }
+
+    @Override
+    public V getIfPresent(final K key) {
+        return getValueFromCache(key);
+    }
+
+    @Override
+    public V get(final K key, final Function<? super K, ? extends V> loader) {
+
+        final V value = getValueFromCache(key);
+        if (value != null) {
+            return value;
+        }
+
+        return inFlightLoads.load(key, loader, this::getValueFromCache, this::storeLoaded);
+    }
+
+    // Like LRUCache.get, a value written while the loader ran wins over the loaded one
+    private V storeLoaded(final K key, final V loadedValue) {
+
+        final OffHeapStore.Handle handle = writeToStore(loadedValue);
+        final OffHeapStore.Handle current;
+        try {
+            current = handles.writeIf(key, handle, Objects::isNull);
+        } catch (RuntimeException e) {
+            store.free(handle);
+            throw e;
+        }
+        if (current == null) {
+            return loadedValue;
+        }
+
+        store.free(handle);
+        final V currentValue = getValueFromCache(key);
+        return currentValue != null ? currentValue : loadedValue;
+    }
+
+    @Override
+    public void writeValueToCache(K key, V value) {
+
+        OffHeapStore.Handle handle = writeToStore(value);
+        try {
+            handles.writeValueToCache(key, handle);
+        } catch (RuntimeException e) {
+            store.free(handle);
+            throw e;
+        }
+    }
+
+    @Override
+    public Map<K, V> getAll(final Iterable<? extends K> keys) {
+
+        final Map<K, V> present = new LinkedHashMap<K, V>();
+        for (Map.Entry<K, OffHeapStore.Handle> entry : handles.getAll(keys).entrySet()) {
+
+            V value = store.read(entry.getValue(), codec);
+            if (value == null) {
+                // overwritten or evicted since the batch lookup, look it up on its own
+                value = getValueFromCache(entry.getKey());
+            }
+            if (value != null) {
+                present.put(entry.getKey(), value);
+            }
+        }
+        return present;
+    }
+
+    /*
+    Everything is encoded first, then the handles go into the cache in one batch. Encoding evicts cached entries where it
+    needs the room. If the batch on its own does not fit in the store, the chunks already written are given back and
+    nothing is cached.
+     */
+    @Override
+    public void putAll(final Map<? extends K, ? extends V> entries) {
+
+        final Map<K, OffHeapStore.Handle> encoded = new LinkedHashMap<K, OffHeapStore.Handle>();
+        try {
+            for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+                if (entry.getValue() == null) {
+                    throw new RuntimeException("Value cannot be null");
+                }
+                encoded.put(entry.getKey(), writeToStore(entry.getValue()));
+            }
+        } catch (RuntimeException e) {
+            for (OffHeapStore.Handle handle : encoded.values()) {
+                store.free(handle);
+            }
+            throw e;
+        }
+
+        handles.putAll(encoded);
+    }
+
+    /*
+    Evicts from the cold end until the value fits. Only throws if the cache is already empty and the store is still full,
+    i.e. values other writers have not put into the cache yet take up the whole store.
+     */
+    private OffHeapStore.Handle writeToStore(final V value) {
+
+        while (true) {
+            final OffHeapStore.Handle handle = store.tryWrite(value, codec);
+            if (handle != null) {
+                return handle;
+            }
+            if (!handles.evictOne()) {
+                return store.write(value, codec);
+            }
+        }
+    }
+
+    @Override
+    public boolean existsInCache(K key) {
+        return handles.existsInCache(key);
+    }
+
+    @Override
+    public boolean existsInCache(K key, V value) {
+
+        // Let's assume null is not a valid value
+        if (value == null) {
+            throw new RuntimeException("Value cannot be null");
+        }
+
+        LRUCache.Node<K, OffHeapStore.Handle> node = handles.entrySet.get(key);
+        if (node == null) {
+            return false;
+        }
+
+        OffHeapStore.Handle handle = node.getValue();
+        return handle != null && value.equals(store.read(handle, codec));
+    }
+
+    // The chunk goes back to the store through the removal hook
+    @Override
+    public void invalidate(K key) {
+        handles.invalidate(key);
+    }
+
+    @Override
+    public void resizeContainer(final long newConfiguredSize) {
+        handles.resizeContainer(newConfiguredSize);
+    }
+
+    @Override
+    public int getCacheSize() {
+        return handles.getCacheSize();
+    }
+
+    public OffHeapStore getOffHeapStore() {
+        return store;
+    }
+
+    @Override
+    public String toString() {
+        return handles.toString();
+    }
+}
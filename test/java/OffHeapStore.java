@@ -0,0 +1,261 @@
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/*
+Slab allocator for serialized values kept outside of the Java heap.
+
+Memory is reserved from ByteBuffer.allocateDirect in slabs of SLAB_SIZE bytes. Each slab is cut into equally sized
+chunks of one size class (16, 32, 64, ... SLAB_SIZE bytes), and a value goes into the smallest chunk that fits it. Freed
+chunks go back on the free list of their size class and are handed out again before any new slab is reserved, so a cache
+that keeps evicting and inserting reaches a steady state and stops asking the OS for memory.
+
+A slab is not tied to its size class for good. Once every slab allowed by maximumBytes has been reserved, a size class
+that runs out of chunks takes over a slab of another class that has nothing live in it, and carves it up again. An empty
+slab is only taken back when it is needed, so a class that keeps freeing and reusing its last chunk does not have its
+slab carved over and over. When no slab is empty the store is full, see tryWrite.
+
+Only the small Handle lives on-heap.
+
+Concurrency:
+1. Allocating and freeing chunks is synchronized on the store. Both are a few array operations.
+2. Encoding into a freshly allocated chunk happens outside the lock, since nobody else can see that chunk yet.
+3. Reads take no lock. A reader copies the bytes out and then checks that the handle was not released in the meantime,
+   in which case the chunk may already belong to someone else and the copy is thrown away.
+ */
+public class OffHeapStore {
+
+    public static final int SLAB_SIZE = 1 << 20;
+    static final int MIN_CHUNK_SHIFT = 4;
+    static final int SIZE_CLASS_COUNT = Integer.numberOfTrailingZeros(SLAB_SIZE) - MIN_CHUNK_SHIFT + 1;
+
+    Logger log = Logger.getLogger("OffHeapStore.class");
+
+    final long maximumBytes;
+
+    // guarded by this
+    private final List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+    private final long[][] freeChunks = new long[SIZE_CLASS_COUNT][];
+    private final int[] freeChunkCounts = new int[SIZE_CLASS_COUNT];
+    // per slab, indexed like slabs
+    private int[] slabSizeClasses = new int[16];
+    private int[] liveChunkCounts = new int[16];
+    private long reservedBytes;
+    private long usedBytes;
+
+    public OffHeapStore(long maximumBytes) {
+
+        if (maximumBytes < SLAB_SIZE) {
+            final String ERROR_MSG = "Off-heap capacity needs to be at least one slab of " + SLAB_SIZE + " bytes";
+            log.severe(ERROR_MSG);
+            throw new IllegalStateException(ERROR_MSG);
+        }
+
+        this.maximumBytes = maximumBytes;
+        for (int i = 0; i < SIZE_CLASS_COUNT; i++) {
+            freeChunks[i] = new long[16];
+        }
+    }
+
+    public <T> Handle write(T value, Codec<T> codec) {
+
+        final Handle handle = tryWrite(value, codec);
+        if (handle == null) {
+            final String ERROR_MSG = "Off-heap store is full: " + getUsedBytes() + " bytes in use, " + getReservedBytes()
+                    + " of " + maximumBytes + " bytes reserved";
+            log.severe(ERROR_MSG);
+            throw new IllegalStateException(ERROR_MSG);
+        }
+        return handle;
+    }
+
+    // Like write, but returns null if there is no room for the value, so the caller can free some and try again
+    public <T> Handle tryWrite(T value, Codec<T> codec) {
+
+        final int length = codec.encodedSize(value);
+        if (length > SLAB_SIZE) {
+            throw new IllegalArgumentException("Value of " + length + " bytes does not fit in a slab of " + SLAB_SIZE + " bytes");
+        }
+
+        final Handle handle = allocate(length);
+        if (handle == null) {
+            return null;
+        }
+        final ByteBuffer target = handle.slab.duplicate();
+        target.limit(handle.offset + length);
+        target.position(handle.offset);
+        codec.encode(value, target);
+
+        if (target.position() != handle.offset + length) {
+            free(handle);
+            throw new IllegalStateException("Codec announced " + length + " bytes but wrote " + (target.position() - handle.offset));
+        }
+        return handle;
+    }
+
+    // Returns null if the handle has been freed
+    public <T> T read(Handle handle, Codec<T> codec) {
+
+        if (handle.released) {
+            return null;
+        }
+
+        final byte[] copy = new byte[handle.length];
+        final ByteBuffer source = handle.slab.duplicate();
+        source.position(handle.offset);
+        source.get(copy);
+
+        // the copy has to be complete before we look at the flag again
+        VarHandle.acquireFence();
+        if (handle.released) {
+            return null;
+        }
+
+        return codec.decode(ByteBuffer.wrap(copy));
+    }
+
+    public synchronized void free(Handle handle) {
+
+        if (handle.released) {
+            return;
+        }
+
+        handle.released = true;
+        push(handle.sizeClass, chunkAddress(handle.slabIndex, handle.offset));
+        liveChunkCounts[handle.slabIndex]--;
+        usedBytes -= chunkSize(handle.sizeClass);
+    }
+
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    // Returns null if the store is full
+    private synchronized Handle allocate(int length) {
+
+        final int sizeClass = sizeClassOf(length);
+        if (freeChunkCounts[sizeClass] == 0 && !reserveSlab(sizeClass)) {
+            return null;
+        }
+
+        final long address = freeChunks[sizeClass][--freeChunkCounts[sizeClass]];
+        final int slabIndex = (int) (address >>> 32);
+        liveChunkCounts[slabIndex]++;
+        usedBytes += chunkSize(sizeClass);
+        return new Handle(slabs.get(slabIndex), slabIndex, (int) address, length, sizeClass);
+    }
+
+    // A new slab while maximumBytes allows one, otherwise an empty slab of another size class. False if neither exists.
+    private boolean reserveSlab(int sizeClass) {
+
+        final int slabIndex;
+        if (reservedBytes + SLAB_SIZE <= maximumBytes) {
+            slabIndex = slabs.size();
+            slabs.add(ByteBuffer.allocateDirect(SLAB_SIZE));
+            reservedBytes += SLAB_SIZE;
+            if (slabIndex == liveChunkCounts.length) {
+                liveChunkCounts = Arrays.copyOf(liveChunkCounts, slabIndex * 2);
+                slabSizeClasses = Arrays.copyOf(slabSizeClasses, slabIndex * 2);
+            }
+        } else {
+            slabIndex = findEmptySlab();
+            if (slabIndex < 0) {
+                return false;
+            }
+            dropFreeChunks(slabSizeClasses[slabIndex], slabIndex);
+        }
+        slabSizeClasses[slabIndex] = sizeClass;
+
+        final int chunkSize = chunkSize(sizeClass);
+        for (int offset = SLAB_SIZE - chunkSize; offset >= 0; offset -= chunkSize) {
+            push(sizeClass, chunkAddress(slabIndex, offset));
+        }
+        return true;
+    }
+
+    private int findEmptySlab() {
+
+        for (int i = 0; i < slabs.size(); i++) {
+            if (liveChunkCounts[i] == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Takes the chunks of a slab that is being carved up for another size class off its old free list
+    private void dropFreeChunks(int sizeClass, int slabIndex) {
+
+        final long[] chunks = freeChunks[sizeClass];
+        int kept = 0;
+        for (int i = 0; i < freeChunkCounts[sizeClass]; i++) {
+            if ((int) (chunks[i] >>> 32) != slabIndex) {
+                chunks[kept++] = chunks[i];
+            }
+        }
+        freeChunkCounts[sizeClass] = kept;
+    }
+
+    private void push(int sizeClass, long address) {
+
+        if (freeChunkCounts[sizeClass] == freeChunks[sizeClass].length) {
+            long[] grown = new long[freeChunks[sizeClass].length * 2];
+            System.arraycopy(freeChunks[sizeClass], 0, grown, 0, freeChunkCounts[sizeClass]);
+            freeChunks[sizeClass] = grown;
+        }
+        freeChunks[sizeClass][freeChunkCounts[sizeClass]++] = address;
+    }
+
+    static int sizeClassOf(int length) {
+
+        if (length <= (1 << MIN_CHUNK_SHIFT)) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(length - 1) - MIN_CHUNK_SHIFT;
+    }
+
+    static int chunkSize(int sizeClass) {
+        return 1 << (sizeClass + MIN_CHUNK_SHIFT);
+    }
+
+    private static long chunkAddress(int slabIndex, int offset) {
+        return ((long) slabIndex << 32) | offset;
+    }
+
+    /*
+    Where a value lives off-heap. This is the only per-value object left on the heap.
+     */
+    public static final class Handle {
+
+        final ByteBuffer slab;
+        final int slabIndex;
+        final int offset;
+        final int length;
+        final int sizeClass;
+        volatile boolean released;
+
+        Handle(ByteBuffer slab, int slabIndex, int offset, int length, int sizeClass) {
+            this.slab = slab;
+            this.slabIndex = slabIndex;
+            this.offset = offset;
+            this.length = length;
+            this.sizeClass = sizeClass;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        @Override
+        public String toString() {
+            return "off-heap[" + slabIndex + ":" + offset + ", " + length + " bytes]";
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+Knows how far into an LRUOptimizedLinkedList a node is in O(log n), instead of walking the list up to it. See
+LRUCache.Builder.trackRanks.
+
+Every node that goes to the head of the list is given the next access stamp, so the list order is the stamp order,
+highest stamp first. A Fenwick tree over the stamps counts which of them are in use. A node's rank is then the number of
+tracked nodes minus the number of stamps up to and including its own. Stamping, unstamping and ranking a node are each
+O(log capacity).
+
+Stamps only ever go up. Once they run out, the list is stamped afresh from 1, tail to head, into a tree of at least
+twice the list's size. That is O(n), but leaves at least n promotions until the next one.
+
+Guarded by whatever guards the list, in the cache that is evictionLock.
+ */
+final class RankTracker<K, V> {
+
+    static final int MINIMUM_CAPACITY = 16;
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    // 1-based, tree[i] counts the stamps in use in (i - lowestOneBit(i), i]
+    private int[] tree = new int[MINIMUM_CAPACITY + 1];
+    private int nextStamp = 1;
+    private int size;
+
+    // A node that was just linked in at the head of the list, or moved there
+    void stamp(final LRUCache.Node<K, V> node, final LRUCache.LRUOptimizedLinkedList<K, V> list) {
+
+        unstamp(node);
+        if (nextStamp == tree.length) {
+            // the restamp picks up the node where it now is, at the head
+            restamp(list);
+            return;
+        }
+
+        node.rankStamp = nextStamp;
+        add(nextStamp++, 1);
+        size++;
+    }
+
+    // A node that was unlinked from the list
+    void unstamp(final LRUCache.Node<K, V> node) {
+
+        if (node.rankStamp != 0) {
+            add(node.rankStamp, -1);
+            node.rankStamp = 0;
+            size--;
+        }
+    }
+
+    // How many tracked nodes were promoted after this one, i.e. 0 for the head. -1 if it is not tracked.
+    int rankOf(final LRUCache.Node<K, V> node) {
+
+        final int stamp = node.rankStamp;
+        return stamp == 0 ? -1 : size - prefixCount(stamp);
+    }
+
+    // Gives every node in the list a stamp from 1 upwards, in list order, and rebuilds the tree around them
+    void restamp(final LRUCache.LRUOptimizedLinkedList<K, V> list) {
+
+        // currentSize may be one short while a new node is being inserted, hence the + 1
+        final int bound = list.getCurrentSize() + 1;
+        final int capacity = (int) Math.min(MAXIMUM_CAPACITY, Math.max(MINIMUM_CAPACITY, (long) Integer.highestOneBit(bound) << 2));
+
+        int stamp = 0;
+        for (LRUCache.Node<K, V> node = list.getTail(); node != null; node = node.getPrevious()) {
+            node.rankStamp = ++stamp;
+        }
+
+        // with stamps 1..count all in use, every tree entry is just how much of its range lies within them
+        tree = new int[capacity + 1];
+        for (int i = 1; i <= capacity; i++) {
+            tree[i] = Math.max(0, Math.min(i, stamp) - (i - Integer.lowestOneBit(i)));
+        }
+        nextStamp = stamp + 1;
+        size = stamp;
+    }
+
+    int getCapacity() {
+        return tree.length - 1;
+    }
+
+    private void add(int stamp, final int delta) {
+
+        for (; stamp < tree.length; stamp += Integer.lowestOneBit(stamp)) {
+            tree[stamp] += delta;
+        }
+    }
+
+    // How many stamps in use are <= stamp
+    private int prefixCount(int stamp) {
+
+        int count = 0;
+        for (; stamp > 0; stamp -= Integer.lowestOneBit(stamp)) {
+            count += tree[stamp];
+        }
+        return count;
+    }
+}
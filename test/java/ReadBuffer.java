@@ -0,0 +1,89 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/*
+A lossy, striped ring buffer used to record cache reads without taking the cache lock.
+
+Readers pick a stripe from their thread id and claim a slot with a single CAS. If the stripe is full, or another reader
+won the race for the slot, the access is simply dropped: losing a few recency updates only makes the LRU order slightly
+less precise, which is much cheaper than blocking the reader.
+
+The buffer is drained by a single thread at a time (whoever holds the cache lock), so the read counters are only ever
+written by the drainer.
+ */
+final class ReadBuffer<E> {
+
+    enum OfferResult { SUCCESS, FULL, FAILED }
+
+    static final int BUFFER_SIZE = 16;
+    static final int BUFFER_MASK = BUFFER_SIZE - 1;
+    static final int MAX_STRIPES = 64;
+
+    final Stripe<E>[] stripes;
+    final int stripeMask;
+
+    ReadBuffer() {
+
+        // a power of two somewhat above the core count, so concurrent readers rarely share a stripe
+        final int stripeCount = Math.min(MAX_STRIPES,
+                Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) << 1);
+        this.stripeMask = stripeCount - 1;
+        @SuppressWarnings("unchecked")
+        final Stripe<E>[] stripes = (Stripe<E>[]) new Stripe<?>[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe<E>();
+        }
+        this.stripes = stripes;
+    }
+
+    OfferResult offer(E e) {
+
+        final long threadId = Thread.currentThread().getId();
+        final int hash = (int) (threadId ^ (threadId >>> 32)) * 0x9E3779B9;
+        final Stripe<E> stripe = stripes[(hash >>> 16) & stripeMask];
+
+        final long head = stripe.readCounter;
+        final long tail = stripe.writeCounter.get();
+        final long size = tail - head;
+        if (size >= BUFFER_SIZE) {
+            return OfferResult.FULL;
+        }
+
+        if (!stripe.writeCounter.compareAndSet(tail, tail + 1)) {
+            return OfferResult.FAILED;
+        }
+
+        stripe.buffer.lazySet((int) (tail & BUFFER_MASK), e);
+        return (size + 1 == BUFFER_SIZE) ? OfferResult.FULL : OfferResult.SUCCESS;
+    }
+
+    // Must only be called by one thread at a time
+    void drainTo(Consumer<E> consumer) {
+
+        for (Stripe<E> stripe : stripes) {
+
+            long head = stripe.readCounter;
+            final long tail = stripe.writeCounter.get();
+            for (; head < tail; head++) {
+
+                final int index = (int) (head & BUFFER_MASK);
+                final E e = stripe.buffer.get(index);
+                if (e == null) {
+                    // the reader claimed the slot but has not published its element yet, pick it up next time
+                    break;
+                }
+                stripe.buffer.lazySet(index, null);
+                consumer.accept(e);
+            }
+            stripe.readCounter = head;
+        }
+    }
+
+    static final class Stripe<E> {
+
+        final AtomicLong writeCounter = new AtomicLong();
+        volatile long readCounter;
+        final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<E>(BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * Why an entry left the cache, as told to a {@link RemovalListener}.
+ */
+public enum RemovalCause {
+
+    /**
+     * Removed by invalidate or remove.
+     */
+    EXPLICIT(false),
+
+    /**
+     * The value was overwritten by a write or a refresh. The key is still in the cache, with the new value.
+     */
+    REPLACED(false),
+
+    /**
+     * Evicted to keep the cache within its maximum size or weight.
+     */
+    SIZE(true),
+
+    /**
+     * Evicted because resizeContainer shrank the cache.
+     */
+    RESIZE(true),
+
+    /**
+     * Its expiration time passed, see {@link Expiry}.
+     */
+    EXPIRED(true);
+
+    private final boolean evicted;
+
+    RemovalCause(boolean evicted) {
+        this.evicted = evicted;
+    }
+
+    // Whether the cache itself decided to drop the entry, rather than somebody writing or removing it
+    public boolean wasEvicted() {
+        return evicted;
+    }
+}
@@ -0,0 +1,87 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/*
+Hands removals to a RemovalListener on an executor, so that no listener ever runs while the cache holds its lock.
+
+The cache only appends an event to a queue, which is cheap enough to do under the lock. The first event to find the
+dispatcher idle submits a delivery task, and every event queued while that task is pending or running rides along with
+it. A task delivers at most DELIVERY_BATCH_SIZE events and then submits a fresh one for the rest, so a burst of
+evictions does not hog an executor thread for ever. Only one task runs at a time, so the listener sees the events in
+order and never concurrently.
+ */
+final class RemovalDispatcher<K, V> {
+
+    static final int DELIVERY_BATCH_SIZE = 256;
+
+    static Logger log = Logger.getLogger("RemovalDispatcher.class");
+
+    private final RemovalListener<K, V> listener;
+    private final Executor executor;
+    private final ConcurrentLinkedQueue<Removal<K, V>> pending = new ConcurrentLinkedQueue<Removal<K, V>>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    RemovalDispatcher(RemovalListener<K, V> listener, Executor executor) {
+        this.listener = listener;
+        this.executor = executor;
+    }
+
+    void enqueue(K key, V value, RemovalCause cause) {
+
+        pending.add(new Removal<K, V>(key, value, cause));
+        scheduleIfIdle();
+    }
+
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    private void scheduleIfIdle() {
+
+        if (!pending.isEmpty() && scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::deliver);
+            } catch (RuntimeException e) {
+                // the events stay queued, the next removal tries again
+                scheduled.set(false);
+                log.warning("Could not schedule removal delivery: " + e);
+            }
+        }
+    }
+
+    private void deliver() {
+
+        try {
+            for (int i = 0; i < DELIVERY_BATCH_SIZE; i++) {
+                final Removal<K, V> removal = pending.poll();
+                if (removal == null) {
+                    break;
+                }
+                try {
+                    listener.onRemoval(removal.key, removal.value, removal.cause);
+                } catch (RuntimeException e) {
+                    log.warning("Removal listener failed for " + removal.key + ": " + e);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            // whatever was left over, or came in after the last poll
+            scheduleIfIdle();
+        }
+    }
+
+    private static final class Removal<K, V> {
+
+        final K key;
+        final V value;
+        final RemovalCause cause;
+
+        Removal(K key, V value, RemovalCause cause) {
+            this.key = key;
+            this.value = value;
+            this.cause = cause;
+        }
+    }
+}
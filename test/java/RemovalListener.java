@@ -0,0 +1,11 @@
+/**
+ * Told about every value that leaves the cache, see {@link LRUCache.Builder#removalListener(RemovalListener)}.
+ *
+ * Calls happen on the listener executor, after the entry is gone and without any cache lock held, so a listener may
+ * take its time (e.g. to flush a dirty value) and may use the cache itself. They arrive one at a time, in the order
+ * the removals happened in.
+ */
+public interface RemovalListener<K, V> {
+
+    void onRemoval(K key, V value, RemovalCause cause);
+}
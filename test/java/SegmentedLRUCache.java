@@ -0,0 +1,274 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/*
+A lock-striped LRU cache.
+
+The single LRUCache serializes every operation on one monitor. This cache splits the key space into N segments, each of
+which is a fully independent LRUCache (own HashMap, own LRUOptimizedLinkedList, own monitor). A key always maps to the
+same segment, so operations on keys in different segments never contend.
+
+Trade-offs:
+1. The global capacity is split evenly between segments, so the total size is still bounded by the configured size.
+   With a weigher the same goes for the maximum weight, see LRUCache.Builder.buildSegmented.
+2. Eviction happens per segment, so the entry evicted is the least recently used one of its segment, not necessarily of
+   the whole cache. With a reasonable hash spread this is a close approximation of LRU.
+ */
+public class SegmentedLRUCache<K, V> implements Cache<K, V> {
+
+    public static final int DEFAULT_SEGMENT_COUNT = 16;
+
+    Logger log = Logger.getLogger("SegmentedLRUCache.class");
+    long configuredMaximumWeight;
+
+    final LRUCache<K, V>[] segments;
+    final int segmentMask;
+
+    final static String INVALID_SEGMENT_COUNT_ERROR_MSG = "Segment count needs to be a positive number";
+
+    public SegmentedLRUCache(long maximumSize) {
+        this(maximumSize, DEFAULT_SEGMENT_COUNT);
+    }
+
+    public SegmentedLRUCache(long maximumSize, int requestedSegmentCount) {
+        this(LRUCache.<K, V>newBuilder().maximumSize(maximumSize), requestedSegmentCount);
+    }
+
+    // Every segment is built from the same settings, with its share of the maximum weight
+    SegmentedLRUCache(LRUCache.Builder<K, V> builder, int requestedSegmentCount) {
+
+        if (requestedSegmentCount < 1) {
+            log.severe(INVALID_SEGMENT_COUNT_ERROR_MSG);
+            throw new IllegalStateException(INVALID_SEGMENT_COUNT_ERROR_MSG);
+        }
+
+        // Never create more segments than entries, otherwise some segments would have a capacity of 0
+        final long maximumWeight = builder.maximumWeight;
+        final int segmentCount = segmentCountFor((int) Math.min(requestedSegmentCount, Math.max(maximumWeight, 1)));
+        validateSize(maximumWeight, segmentCount);
+
+        this.configuredMaximumWeight = maximumWeight;
+        this.segmentMask = segmentCount - 1;
+        @SuppressWarnings("unchecked")
+        final LRUCache<K, V>[] segments = (LRUCache<K, V>[]) new LRUCache<?, ?>[segmentCount];
+        this.segments = segments;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = builder.copyWithMaximumWeight(segmentCapacity(maximumWeight, i)).build();
+        }
+    }
+
+    @Override
+    public V getValueFromCache(final K key) {
+        return segmentFor(key).getValueFromCache(key);
+    }
+
+    @Override
+    public V getIfPresent(final K key) {
+        return segmentFor(key).getIfPresent(key);
+    }
+
+    // Each segment coalesces the loads of its own keys
+    @Override
+    public V get(final K key, final Function<? super K, ? extends V> loader) {
+        return segmentFor(key).get(key, loader);
+    }
+
+    @Override
+    public void writeValueToCache(K key, V value) {
+        segmentFor(key).writeValueToCache(key, value);
+    }
+
+    // The keys are grouped by segment, so each segment's lock is taken once for the batch
+    @Override
+    public Map<K, V> getAll(final Iterable<? extends K> keys) {
+
+        @SuppressWarnings("unchecked")
+        final List<K>[] keysBySegment = (List<K>[]) new List<?>[segments.length];
+        final List<K> order = new ArrayList<K>();
+        for (K key : keys) {
+            final int segment = segmentIndexFor(key);
+            if (keysBySegment[segment] == null) {
+                keysBySegment[segment] = new ArrayList<K>();
+            }
+            keysBySegment[segment].add(key);
+            order.add(key);
+        }
+
+        final Map<K, V> found = new HashMap<K, V>();
+        for (int i = 0; i < segments.length; i++) {
+            if (keysBySegment[i] != null) {
+                found.putAll(segments[i].getAll(keysBySegment[i]));
+            }
+        }
+
+        // hand them back in the order they were asked for, like LRUCache.getAll
+        final Map<K, V> present = new LinkedHashMap<K, V>();
+        for (K key : order) {
+            V value = found.get(key);
+            if (value != null) {
+                present.put(key, value);
+            }
+        }
+        return present;
+    }
+
+    @Override
+    public void putAll(final Map<? extends K, ? extends V> entries) {
+
+        // reject the whole batch before any segment is written, like LRUCache.putAll
+        for (V value : entries.values()) {
+            if (value == null) {
+                throw new RuntimeException("Value cannot be null");
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        final Map<K, V>[] entriesBySegment = (Map<K, V>[]) new Map<?, ?>[segments.length];
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+            final int segment = segmentIndexFor(entry.getKey());
+            if (entriesBySegment[segment] == null) {
+                entriesBySegment[segment] = new LinkedHashMap<K, V>();
+            }
+            entriesBySegment[segment].put(entry.getKey(), entry.getValue());
+        }
+
+        for (int i = 0; i < segments.length; i++) {
+            if (entriesBySegment[i] != null) {
+                segments[i].putAll(entriesBySegment[i]);
+            }
+        }
+    }
+
+    @Override
+    public boolean existsInCache(K key) {
+        return segmentFor(key).existsInCache(key);
+    }
+
+    @Override
+    public boolean existsInCache(K key, V value) {
+        return segmentFor(key).existsInCache(key, value);
+    }
+
+    @Override
+    public void invalidate(K key) {
+        segmentFor(key).invalidate(key);
+    }
+
+    /*
+    Each segment is resized independently, one lock at a time. Between two segment resizes the total may briefly be
+    above the new size, but it never exceeds the larger of the old and new sizes.
+     */
+    @Override
+    public synchronized void resizeContainer(final long newConfiguredSize) {
+
+        validateSize(newConfiguredSize, segments.length);
+
+        this.configuredMaximumWeight = newConfiguredSize;
+        for (int i = 0; i < segments.length; i++) {
+            segments[i].resizeContainer(segmentCapacity(newConfiguredSize, i));
+        }
+    }
+
+    @Override
+    public int getCacheSize() {
+
+        int size = 0;
+        for (LRUCache<K, V> segment : segments) {
+            size += segment.getCacheSize();
+        }
+        return size;
+    }
+
+    public long getWeightedSize() {
+
+        long weightedSize = 0;
+        for (LRUCache<K, V> segment : segments) {
+            weightedSize += segment.getWeightedSize();
+        }
+        return weightedSize;
+    }
+
+    public long getExcessWeight() {
+
+        long excessWeight = 0;
+        for (LRUCache<K, V> segment : segments) {
+            excessWeight += segment.getExcessWeight();
+        }
+        return excessWeight;
+    }
+
+    // The stats of all segments added up
+    public CacheStats getStats() {
+
+        CacheStats stats = CacheStats.empty();
+        for (LRUCache<K, V> segment : segments) {
+            stats = stats.plus(segment.getStats());
+        }
+        return stats;
+    }
+
+    // Flushes the write-back entries of every segment, see LRUCache.flush
+    public int flush() {
+
+        int flushed = 0;
+        for (LRUCache<K, V> segment : segments) {
+            flushed += segment.flush();
+        }
+        return flushed;
+    }
+
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    LRUCache<K, V> segmentFor(K key) {
+        return segments[segmentIndexFor(key)];
+    }
+
+    int segmentIndexFor(K key) {
+
+        // spread the high bits down, so that keys whose hashes only differ in the upper bits still land apart
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return h & segmentMask;
+    }
+
+    // The remainder of the division is handed out one by one to the first segments, so the capacities add up exactly
+    private long segmentCapacity(final long totalSize, final int segmentIndex) {
+
+        final long base = totalSize / segments.length;
+        return segmentIndex < (totalSize % segments.length) ? base + 1 : base;
+    }
+
+    private void validateSize(final long size, final int segmentCount) {
+
+        if (size < segmentCount) {
+            final String ERROR_MSG = "Size needs to be at least the segment count of " + segmentCount;
+            log.severe(ERROR_MSG);
+            throw new IllegalStateException(ERROR_MSG);
+        }
+    }
+
+    // Rounds down to a power of two, so that a segment can be picked with a mask instead of a modulo
+    private static int segmentCountFor(final int requestedSegmentCount) {
+        return Integer.highestOneBit(requestedSegmentCount);
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < segments.length; i++) {
+            if (i > 0) {
+                sb.append(" | ");
+            }
+            sb.append(segments[i].toString());
+        }
+        return sb.toString();
+    }
+}
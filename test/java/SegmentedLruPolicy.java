@@ -0,0 +1,155 @@
+import java.util.function.Consumer;
+
+/*
+Segmented LRU eviction: LRU with a second chance for entries that have proven themselves.
+
+The entries are split over two LRU lists:
+1. Probation. Every new entry starts here, and the victim is always probation's oldest entry.
+2. Protected, about 80% of the maximum weight. An entry hit while on probation moves here. When protected overflows, its
+   least recent entries are demoted back to the head of probation, so they get another full pass before being evicted.
+
+A scan of keys that are only seen once never gets past probation, so it cannot push out what is in protected. The
+bookkeeping is the same pointer relinking plain LRU does, just in one of two lists.
+
+Also the main space of WindowTinyLfuPolicy. All methods are called with the cache's evictionLock held.
+ */
+final class SegmentedLruPolicy<K, V> implements EvictionPolicy<K, V> {
+
+    static final byte PROBATION = 2;
+    static final byte PROTECTED = 3;
+
+    static final int PROTECTED_PERCENT = 80;
+
+    final LRUCache.LRUOptimizedLinkedList<K, V> probation = new LRUCache.LRUOptimizedLinkedList<K, V>();
+    final LRUCache.LRUOptimizedLinkedList<K, V> protectedList = new LRUCache.LRUOptimizedLinkedList<K, V>();
+
+    long probationWeight;
+    long protectedWeight;
+    long maximumProtectedWeight;
+
+    SegmentedLruPolicy(long maximumWeight) {
+        setMaximumWeight(maximumWeight);
+    }
+
+    @Override
+    public void setMaximumWeight(long maximumWeight) {
+
+        this.maximumProtectedWeight = maximumWeight * PROTECTED_PERCENT / 100;
+        demoteProtectedOverflow();
+    }
+
+    @Override
+    public void onAdd(LRUCache.Node<K, V> node) {
+
+        probation.addToHead(node);
+        node.queue = PROBATION;
+        probationWeight += node.weight;
+    }
+
+    @Override
+    public void onAccess(LRUCache.Node<K, V> node) {
+
+        if (node.queue == PROBATION) {
+            // a second hit: promote it into protected, which may push protected's oldest back down
+            probation.remove(node);
+            probationWeight -= node.weight;
+            protectedList.addToHead(node);
+            node.queue = PROTECTED;
+            protectedWeight += node.weight;
+            demoteProtectedOverflow();
+        } else if (node.queue == PROTECTED) {
+            protectedList.setHead(node);
+        } else {
+            throw new IllegalStateException("Accessed a node that is not linked: " + node);
+        }
+    }
+
+    @Override
+    public void onRemove(LRUCache.Node<K, V> node) {
+
+        if (node.queue == PROBATION) {
+            probation.remove(node);
+            probationWeight -= node.weight;
+        } else if (node.queue == PROTECTED) {
+            protectedList.remove(node);
+            protectedWeight -= node.weight;
+        } else {
+            throw new IllegalStateException("Removing a node that is not linked: " + node);
+        }
+        node.queue = 0;
+    }
+
+    @Override
+    public void onWeightChanged(LRUCache.Node<K, V> node, int delta) {
+
+        if (node.queue == PROBATION) {
+            probationWeight += delta;
+        } else if (node.queue == PROTECTED) {
+            protectedWeight += delta;
+            demoteProtectedOverflow();
+        }
+    }
+
+    @Override
+    public LRUCache.Node<K, V> evict() {
+
+        final LRUCache.Node<K, V> victim = peekVictim();
+        if (victim != null) {
+            onRemove(victim);
+        }
+        return victim;
+    }
+
+    // The node evict would pick, without unlinking it
+    LRUCache.Node<K, V> peekVictim() {
+        return probation.getTail() != null ? probation.getTail() : protectedList.getTail();
+    }
+
+    @Override
+    public boolean contains(LRUCache.Node<K, V> node) {
+        return node.queue == PROBATION || node.queue == PROTECTED;
+    }
+
+    @Override
+    public int getCurrentSize() {
+        return probation.getCurrentSize() + protectedList.getCurrentSize();
+    }
+
+    long getWeight() {
+        return probationWeight + protectedWeight;
+    }
+
+    // Protected first, then probation, which is the order entries would be kept in
+    @Override
+    public int getIndexOfObject(K key) {
+
+        final int index = protectedList.getIndexOfObject(key);
+        if (index >= 0) {
+            return index;
+        }
+
+        final int probationIndex = probation.getIndexOfObject(key);
+        return probationIndex < 0 ? -1 : protectedList.getCurrentSize() + probationIndex;
+    }
+
+    @Override
+    public void forEachInPriorityOrder(Consumer<LRUCache.Node<K, V>> action) {
+
+        protectedList.forEachInPriorityOrder(action);
+        probation.forEachInPriorityOrder(action);
+    }
+
+    private void demoteProtectedOverflow() {
+
+        while (protectedWeight > maximumProtectedWeight && protectedList.getTail() != null) {
+            LRUCache.Node<K, V> demoted = protectedList.removeTail();
+            protectedWeight -= demoted.weight;
+            onAdd(demoted);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "protected[" + protectedList + "] probation[" + probation + "]";
+    }
+}
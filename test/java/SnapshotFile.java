@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/*
+Reads and writes cache snapshots, see LRUCache.saveSnapshot.
+
+The format is a header followed by the entries, hottest first:
+
+    magic (int) | version (int) | entry count (int)
+    key length (int) | key bytes | value length (int) | value bytes     (once per entry)
+
+The file is written and read through memory-mapped windows of at most WINDOW_SIZE bytes, so the copying is done by the
+page cache rather than through a stream, and snapshots bigger than a single 2GB mapping still work. No entry may be
+bigger than a window.
+
+A snapshot is written to a temporary file next to the target and moved over it at the end, so a crash half way
+through a dump leaves the previous snapshot in place.
+ */
+final class SnapshotFile {
+
+    static final int MAGIC = 0x4C525553;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 3 * Integer.BYTES;
+    static final int WINDOW_SIZE = 1 << 30;
+
+    private SnapshotFile() {
+    }
+
+    static <K, V> void write(final Path path, final List<K> keys, final List<V> values, final Codec<K> keyCodec,
+                             final Codec<V> valueCodec) throws IOException {
+
+        // sizes first, the mapping has to know how big the file gets
+        final int count = keys.size();
+        final int[] keySizes = new int[count];
+        final int[] valueSizes = new int[count];
+        long fileSize = HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            keySizes[i] = keyCodec.encodedSize(keys.get(i));
+            valueSizes[i] = valueCodec.encodedSize(values.get(i));
+            final long entrySize = 2L * Integer.BYTES + keySizes[i] + valueSizes[i];
+            if (entrySize > WINDOW_SIZE) {
+                throw new IOException("Entry of " + entrySize + " bytes does not fit in a snapshot window");
+            }
+            fileSize += entrySize;
+        }
+
+        final Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            final Window window = new Window(channel, FileChannel.MapMode.READ_WRITE, fileSize);
+            ByteBuffer buffer = window.reserve(HEADER_SIZE);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(count);
+
+            for (int i = 0; i < count; i++) {
+                buffer = window.reserve(2L * Integer.BYTES + keySizes[i] + valueSizes[i]);
+                buffer.putInt(keySizes[i]);
+                encode(keyCodec, keys.get(i), keySizes[i], buffer);
+                buffer.putInt(valueSizes[i]);
+                encode(valueCodec, values.get(i), valueSizes[i], buffer);
+            }
+            window.force();
+        }
+
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Fills keys and values in file order, i.e. hottest first
+    static <K, V> void read(final Path path, final Codec<K> keyCodec, final Codec<V> valueCodec, final List<K> keys,
+                            final List<V> values) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            final Window window = new Window(channel, FileChannel.MapMode.READ_ONLY, channel.size());
+            try {
+                ByteBuffer buffer = window.reserve(HEADER_SIZE);
+                if (buffer.getInt() != MAGIC) {
+                    throw new IOException(path + " is not a cache snapshot");
+                }
+                final int version = buffer.getInt();
+                if (version != VERSION) {
+                    throw new IOException(path + " is a version " + version + " snapshot, expected " + VERSION);
+                }
+
+                final int count = buffer.getInt();
+                for (int i = 0; i < count; i++) {
+                    buffer = window.reserve(Integer.BYTES);
+                    final int keySize = buffer.getInt();
+                    buffer = window.reserve((long) keySize + Integer.BYTES);
+                    keys.add(decode(keyCodec, keySize, buffer));
+
+                    final int valueSize = buffer.getInt();
+                    buffer = window.reserve(valueSize);
+                    values.add(decode(valueCodec, valueSize, buffer));
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException(path + " is truncated or corrupt", e);
+            }
+        }
+    }
+
+    private static <T> void encode(Codec<T> codec, T value, int size, ByteBuffer buffer) {
+
+        final int start = buffer.position();
+        codec.encode(value, buffer);
+        if (buffer.position() != start + size) {
+            throw new IllegalStateException("Codec announced " + size + " bytes but wrote " + (buffer.position() - start));
+        }
+    }
+
+    private static <T> T decode(Codec<T> codec, int size, ByteBuffer buffer) {
+
+        if (size < 0 || size > buffer.remaining()) {
+            throw new IllegalArgumentException("Bad length " + size);
+        }
+
+        final ByteBuffer source = buffer.slice();
+        source.limit(size);
+        buffer.position(buffer.position() + size);
+        return codec.decode(source);
+    }
+
+    /*
+    The part of the file that is mapped right now. reserve moves the mapping along whenever the next item would not fit
+    into what is left of it.
+     */
+    private static final class Window {
+
+        final FileChannel channel;
+        final FileChannel.MapMode mode;
+        final long fileSize;
+        MappedByteBuffer mapped;
+        long mappedStart;
+
+        Window(FileChannel channel, FileChannel.MapMode mode, long fileSize) {
+            this.channel = channel;
+            this.mode = mode;
+            this.fileSize = fileSize;
+        }
+
+        ByteBuffer reserve(long bytes) throws IOException {
+
+            if (mapped == null || mapped.remaining() < bytes) {
+                final long position = mapped == null ? 0 : mappedStart + mapped.position();
+                if (position + bytes > fileSize) {
+                    throw new BufferUnderflowException();
+                }
+                force();
+                mappedStart = position;
+                mapped = channel.map(mode, position, Math.min(WINDOW_SIZE, fileSize - position));
+            }
+            return mapped;
+        }
+
+        void force() {
+            if (mapped != null && mode == FileChannel.MapMode.READ_WRITE) {
+                mapped.force();
+            }
+        }
+    }
+}
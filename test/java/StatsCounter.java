@@ -0,0 +1,133 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Collects the numbers behind CacheStats.
+
+Recording happens on the hot paths, so the counters are LongAdders: each one is striped over cells, and threads that
+would contend on a single AtomicLong increment different cells instead. Reading them (snapshot) is the slow part, which
+is fine since it only happens when someone asks for the stats.
+
+A cache that does not record stats uses DISABLED, whose methods do nothing and get inlined away by the JIT. The cache
+also skips the System.nanoTime calls around writes in that case.
+ */
+interface StatsCounter {
+
+    void recordHit();
+
+    void recordMiss();
+
+    void recordPut();
+
+    void recordUpdate();
+
+    void recordSizeEviction();
+
+    void recordWeightEviction();
+
+    void recordExpiryEviction();
+
+    void recordResizeEviction();
+
+    void recordResize();
+
+    void recordWriteTime(long nanos);
+
+    CacheStats snapshot();
+
+    StatsCounter DISABLED = new StatsCounter() {
+        public void recordHit() {
+        }
+
+        public void recordMiss() {
+        }
+
+        public void recordPut() {
+        }
+
+        public void recordUpdate() {
+        }
+
+        public void recordSizeEviction() {
+        }
+
+        public void recordWeightEviction() {
+        }
+
+        public void recordExpiryEviction() {
+        }
+
+        public void recordResizeEviction() {
+        }
+
+        public void recordResize() {
+        }
+
+        public void recordWriteTime(long nanos) {
+        }
+
+        public CacheStats snapshot() {
+            return CacheStats.empty();
+        }
+    };
+
+    final class Concurrent implements StatsCounter {
+
+        private final LongAdder hitCount = new LongAdder();
+        private final LongAdder missCount = new LongAdder();
+        private final LongAdder putCount = new LongAdder();
+        private final LongAdder updateCount = new LongAdder();
+        private final LongAdder sizeEvictionCount = new LongAdder();
+        private final LongAdder weightEvictionCount = new LongAdder();
+        private final LongAdder expiryEvictionCount = new LongAdder();
+        private final LongAdder resizeEvictionCount = new LongAdder();
+        private final LongAdder resizeCount = new LongAdder();
+        private final LongAdder totalWriteTime = new LongAdder();
+
+        public void recordHit() {
+            hitCount.increment();
+        }
+
+        public void recordMiss() {
+            missCount.increment();
+        }
+
+        public void recordPut() {
+            putCount.increment();
+        }
+
+        public void recordUpdate() {
+            updateCount.increment();
+        }
+
+        public void recordSizeEviction() {
+            sizeEvictionCount.increment();
+        }
+
+        public void recordWeightEviction() {
+            weightEvictionCount.increment();
+        }
+
+        public void recordExpiryEviction() {
+            expiryEvictionCount.increment();
+        }
+
+        public void recordResizeEviction() {
+            resizeEvictionCount.increment();
+        }
+
+        public void recordResize() {
+            resizeCount.increment();
+        }
+
+        public void recordWriteTime(long nanos) {
+            totalWriteTime.add(nanos);
+        }
+
+        // Not atomic across counters, each one is read on its own
+        public CacheStats snapshot() {
+            return new CacheStats(hitCount.sum(), missCount.sum(), putCount.sum(), updateCount.sum(),
+                    sizeEvictionCount.sum(), weightEvictionCount.sum(), expiryEvictionCount.sum(),
+                    resizeEvictionCount.sum(), resizeCount.sum(), totalWriteTime.sum());
+        }
+    }
+}
@@ -0,0 +1,12 @@
+/**
+ * A source of nanosecond timestamps for expiration. Only differences between two readings matter, like
+ * {@link System#nanoTime()}. Tests swap in a ticker they can move forward by hand.
+ */
+public interface Ticker {
+
+    long read();
+
+    static Ticker systemTicker() {
+        return System::nanoTime;
+    }
+}
@@ -0,0 +1,234 @@
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/*
+A two level cache: an LRUCache in the heap (L1), and a LogStructuredStore on local disk (L2) that catches whatever L1
+evicts.
+
+1. Entries evicted from L1 for size go to L2 instead of being dropped. Expired entries are dropped for good.
+2. A miss in L1 looks in L2. A hit there is promoted back into L1 (and out of L2, so each entry lives in exactly one
+   level), which can in turn push L1's coldest entry down to L2.
+3. Writes go to L1, and remove any older copy from L2.
+
+Spilling to disk happens outside of L1's lock. L1's removal hook only parks the evicted entry in spilling, and the
+thread that caused the eviction writes it to L2 once its own operation on L1 is done. A parked entry is still found by
+reads. Promotions go through LRUCache.get, so concurrent misses on the same key only read it from disk once, and the
+promoted value only goes into L1 if the key is still absent there. A value written while the promotion was reading from
+disk is newer, so it is the one kept and returned.
+
+Moving a key in or out of L2 holds that key's lock stripe, never a cache-wide lock. So an L1 hit takes no lock at all
+when nothing is parked, and a thread writing a spilled entry to disk only holds up the keys of the same stripe.
+ */
+public class TieredLRUCache<K, V> implements Cache<K, V> {
+
+    public static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+
+    final LRUCache<K, V> firstLevel;
+    final LogStructuredStore<K, V> secondLevel;
+
+    // evicted from L1, not written to L2 yet
+    final ConcurrentHashMap<K, V> spilling = new ConcurrentHashMap<K, V>();
+
+    // Power of two, so a stripe can be picked with a mask
+    static final int LOCK_STRIPES = 64;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public TieredLRUCache(long maximumSize, Path directory, Codec<K> keyCodec, Codec<V> valueCodec, long maximumDiskBytes) {
+        this(maximumSize, directory, keyCodec, valueCodec, maximumDiskBytes, DEFAULT_SEGMENT_SIZE);
+    }
+
+    TieredLRUCache(long maximumSize, Path directory, Codec<K> keyCodec, Codec<V> valueCodec, long maximumDiskBytes,
+                   long segmentSize) {
+
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        this.secondLevel = new LogStructuredStore<K, V>(directory, segmentSize, maximumDiskBytes, keyCodec, valueCodec);
+        this.firstLevel = LRUCache.<K, V>newBuilder()
+                .maximumSize(maximumSize)
+                .removalHook((key, value, cause) -> {
+                    if (cause == RemovalCause.SIZE || cause == RemovalCause.RESIZE) {
+                        spilling.put(key, value);
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public V getValueFromCache(final K key) {
+
+        try {
+            return firstLevel.get(key, this::takeFromSecondLevel);
+        } finally {
+            spillEvicted();
+        }
+    }
+
+    @Override
+    public V getIfPresent(final K key) {
+        return getValueFromCache(key);
+    }
+
+    // A miss in both levels goes to the loader, and the loaded value into L1
+    @Override
+    public V get(final K key, final Function<? super K, ? extends V> loader) {
+
+        try {
+            return firstLevel.get(key, k -> {
+                final V value = takeFromSecondLevel(k);
+                return value != null ? value : loader.apply(k);
+            });
+        } finally {
+            spillEvicted();
+        }
+    }
+
+    @Override
+    public void writeValueToCache(K key, V value) {
+
+        firstLevel.writeValueToCache(key, value);
+        removeFromSecondLevel(key);
+        spillEvicted();
+    }
+
+    @Override
+    public Map<K, V> getAll(final Iterable<? extends K> keys) {
+
+        final Map<K, V> present = new LinkedHashMap<K, V>();
+        for (K key : keys) {
+            final V value = getValueFromCache(key);
+            if (value != null) {
+                present.put(key, value);
+            }
+        }
+        return present;
+    }
+
+    @Override
+    public void putAll(final Map<? extends K, ? extends V> entries) {
+
+        firstLevel.putAll(entries);
+        for (K key : entries.keySet()) {
+            removeFromSecondLevel(key);
+        }
+        spillEvicted();
+    }
+
+    @Override
+    public boolean existsInCache(K key) {
+        return firstLevel.existsInCache(key) || spilling.containsKey(key) || secondLevel.contains(key);
+    }
+
+    @Override
+    public boolean existsInCache(K key, V value) {
+
+        // Let's assume null is not a valid value
+        if (value == null) {
+            throw new RuntimeException("Value cannot be null");
+        }
+
+        if (firstLevel.existsInCache(key, value)) {
+            return true;
+        }
+        final V secondLevelValue = peekSecondLevel(key);
+        return secondLevelValue != null && value.equals(secondLevelValue);
+    }
+
+    @Override
+    public void invalidate(K key) {
+
+        firstLevel.invalidate(key);
+        removeFromSecondLevel(key);
+    }
+
+    // Only L1 is resized. Whatever a shrink evicts goes down to L2.
+    @Override
+    public void resizeContainer(final long newConfiguredSize) {
+
+        firstLevel.resizeContainer(newConfiguredSize);
+        spillEvicted();
+    }
+
+    // Entries in both levels together
+    @Override
+    public int getCacheSize() {
+
+        spillEvicted();
+        return firstLevel.getCacheSize() + secondLevel.getEntryCount();
+    }
+
+    public int getFirstLevelSize() {
+        return firstLevel.getCacheSize();
+    }
+
+    public LogStructuredStore<K, V> getSecondLevel() {
+        return secondLevel;
+    }
+
+    // Deletes the second level's files. The cache must not be used afterwards.
+    public void close() {
+        secondLevel.close();
+    }
+
+    private V takeFromSecondLevel(final K key) {
+
+        final V value = peekSecondLevel(key);
+        if (value != null) {
+            removeFromSecondLevel(key);
+        }
+        return value;
+    }
+
+    private V peekSecondLevel(final K key) {
+
+        final V parked = spilling.get(key);
+        return parked != null ? parked : secondLevel.get(key);
+    }
+
+    /*
+    Writes everything L1 has evicted so far to L2, one key at a time under the key's lock. removeFromSecondLevel takes
+    the same lock, so an entry that was written or invalidated in the meantime cannot be resurrected by a spill that
+    picked it up just before.
+     */
+    private void spillEvicted() {
+
+        if (spilling.isEmpty()) {
+            return;
+        }
+
+        for (K key : spilling.keySet()) {
+            synchronized (lockFor(key)) {
+                // another thread may have spilled or removed it since we saw the key
+                final V value = spilling.get(key);
+                if (value != null) {
+                    secondLevel.put(key, value);
+                    spilling.remove(key, value);
+                }
+            }
+        }
+    }
+
+    private void removeFromSecondLevel(final K key) {
+
+        synchronized (lockFor(key)) {
+            spilling.remove(key);
+            secondLevel.remove(key);
+        }
+    }
+
+    private Object lockFor(final K key) {
+
+        // spread the high bits down, like SegmentedLRUCache does
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return locks[h & (LOCK_STRIPES - 1)];
+    }
+
+    @Override
+    public String toString() {
+        return firstLevel.toString();
+    }
+}
@@ -0,0 +1,156 @@
+import java.util.function.Consumer;
+
+/*
+A hierarchical timer wheel that finds the expired entries without looking at the others.
+
+Each level is a ring of buckets, and each bucket is a doubly-linked list of the nodes expiring in its time span. The
+levels get coarser: 64 buckets of ~1s, 64 of ~1m, 32 of ~1h, 4 of ~1d, and one overflow bucket for everything further
+out. The spans are powers of two, so finding the bucket for a time is a shift and a mask.
+
+Advancing the wheel only visits the buckets whose span has passed since the previous advance. Their nodes are either
+expired, or (after a coarse bucket comes round, or because a read pushed their expiration time back) put into the bucket
+that now fits them. Every node is therefore touched a handful of times over its whole lifetime, no matter how many
+entries the cache holds.
+
+Expiration times may be moved later by readers without the lock (see LRUCache), which the wheel only notices when the
+node's old bucket comes round. That is fine, the node is simply rescheduled then. Everything here is called with the
+cache's evictionLock held.
+ */
+final class TimerWheel<K, V> {
+
+    static final int[] BUCKETS = {64, 64, 32, 4, 1};
+    static final long[] SPANS = {
+            1L << 30, // 1.07s
+            1L << 36, // 1.14m
+            1L << 42, // 1.22h
+            1L << 46, // 0.81d
+            1L << 48, // 3.26d
+            1L << 48,
+    };
+    static final int[] SHIFT = {
+            Long.numberOfTrailingZeros(SPANS[0]),
+            Long.numberOfTrailingZeros(SPANS[1]),
+            Long.numberOfTrailingZeros(SPANS[2]),
+            Long.numberOfTrailingZeros(SPANS[3]),
+            Long.numberOfTrailingZeros(SPANS[4]),
+    };
+
+    final LRUCache.Node<K, V>[][] wheel;
+    long nanos;
+
+    TimerWheel(long currentTime) {
+
+        this.nanos = currentTime;
+        @SuppressWarnings("unchecked")
+        final LRUCache.Node<K, V>[][] wheel = (LRUCache.Node<K, V>[][]) new LRUCache.Node<?, ?>[BUCKETS.length][];
+        this.wheel = wheel;
+        for (int i = 0; i < BUCKETS.length; i++) {
+            @SuppressWarnings("unchecked")
+            final LRUCache.Node<K, V>[] bucket = (LRUCache.Node<K, V>[]) new LRUCache.Node<?, ?>[BUCKETS[i]];
+            wheel[i] = bucket;
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                wheel[i][j] = newSentinel();
+            }
+        }
+    }
+
+    // Hands every node whose time has come to onExpired, after unlinking it from the wheel
+    void advance(long currentTime, Consumer<LRUCache.Node<K, V>> onExpired) {
+
+        final long previousTime = nanos;
+        nanos = currentTime;
+
+        for (int i = 0; i < SHIFT.length; i++) {
+            final long previousTicks = previousTime >>> SHIFT[i];
+            final long currentTicks = currentTime >>> SHIFT[i];
+            if (currentTicks - previousTicks <= 0) {
+                // the coarser levels cannot have moved either
+                break;
+            }
+            expire(i, previousTicks, currentTicks, onExpired);
+        }
+    }
+
+    private void expire(int level, long previousTicks, long currentTicks, Consumer<LRUCache.Node<K, V>> onExpired) {
+
+        final LRUCache.Node<K, V>[] buckets = wheel[level];
+        final int mask = buckets.length - 1;
+        final int steps = (int) Math.min(1 + (currentTicks - previousTicks), buckets.length);
+        final int start = (int) (previousTicks & mask);
+
+        for (int i = start; i < start + steps; i++) {
+
+            // take the whole chain off the bucket first, rescheduled nodes may well land in this same bucket again
+            final LRUCache.Node<K, V> sentinel = buckets[i & mask];
+            LRUCache.Node<K, V> node = sentinel.nextInWheel;
+            sentinel.nextInWheel = sentinel;
+            sentinel.previousInWheel = sentinel;
+
+            while (node != sentinel) {
+                final LRUCache.Node<K, V> next = node.nextInWheel;
+                node.nextInWheel = null;
+                node.previousInWheel = null;
+
+                if (node.expirationTime - nanos <= 0) {
+                    onExpired.accept(node);
+                } else {
+                    schedule(node);
+                }
+                node = next;
+            }
+        }
+    }
+
+    void schedule(LRUCache.Node<K, V> node) {
+
+        final LRUCache.Node<K, V> sentinel = findBucket(node.expirationTime);
+        node.nextInWheel = sentinel;
+        node.previousInWheel = sentinel.previousInWheel;
+        sentinel.previousInWheel.nextInWheel = node;
+        sentinel.previousInWheel = node;
+    }
+
+    // For a node whose expiration time was changed by a write
+    void reschedule(LRUCache.Node<K, V> node) {
+
+        deschedule(node);
+        schedule(node);
+    }
+
+    void deschedule(LRUCache.Node<K, V> node) {
+
+        if (node.nextInWheel != null) {
+            node.nextInWheel.previousInWheel = node.previousInWheel;
+            node.previousInWheel.nextInWheel = node.nextInWheel;
+            node.nextInWheel = null;
+            node.previousInWheel = null;
+        }
+    }
+
+    boolean isScheduled(LRUCache.Node<K, V> node) {
+        return node.nextInWheel != null;
+    }
+
+    private LRUCache.Node<K, V> findBucket(long time) {
+
+        // a time that has already passed goes into the current bucket, which is looked at on the next tick
+        final long duration = Math.max(time - nanos, 0);
+        final long clampedTime = nanos + duration;
+        final int lastLevel = wheel.length - 1;
+        for (int i = 0; i < lastLevel; i++) {
+            if (duration < SPANS[i + 1]) {
+                final long ticks = clampedTime >>> SHIFT[i];
+                return wheel[i][(int) (ticks & (wheel[i].length - 1))];
+            }
+        }
+        return wheel[lastLevel][0];
+    }
+
+    private static <K, V> LRUCache.Node<K, V> newSentinel() {
+
+        final LRUCache.Node<K, V> sentinel = new LRUCache.Node<K, V>(null, null);
+        sentinel.nextInWheel = sentinel;
+        sentinel.previousInWheel = sentinel;
+        return sentinel;
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * Works out how much of the cache's capacity an entry uses, e.g. the size of the value in bytes. The cache evicts
+ * from the tail until the sum of the weights of all entries fits in its configured maximum weight.
+ *
+ * Weights must not be negative. An entry is weighed when it is written, and again whenever its value is overwritten.
+ */
+public interface Weigher<K, V> {
+
+    int weigh(K key, V value);
+
+    // Every entry weighs 1, so the maximum weight is simply the maximum number of entries
+    static <K, V> Weigher<K, V> singletonWeigher() {
+        return (key, value) -> 1;
+    }
+}
@@ -0,0 +1,165 @@
+import java.util.function.Consumer;
+
+/*
+Window TinyLFU eviction: scan resistant LRU that also lets new entries in.
+
+The entries are split between:
+1. The window, an LRU list of about 1% of the maximum weight. Every new entry starts here, so a burst of new keys is
+   absorbed without touching the rest of the cache.
+2. The main space, a SegmentedLruPolicy (probation and protected) for the rest.
+
+When the cache is over its maximum, the window's oldest entry (the candidate) and the main space's victim are compared by
+how often their keys were used recently, as estimated by a FrequencySketch. Only a candidate that was used more often than
+the victim gets into the main space; otherwise the candidate is evicted instead. A one-off scan therefore only ever
+cycles through the window, and the frequently used entries in the main space stay put.
+
+Every access and insert also costs a sketch update. All methods are called with the cache's evictionLock held.
+ */
+final class WindowTinyLfuPolicy<K, V> implements EvictionPolicy<K, V> {
+
+    static final byte WINDOW = 1;
+
+    static final int WINDOW_PERCENT = 1;
+
+    final LRUCache.LRUOptimizedLinkedList<K, V> window = new LRUCache.LRUOptimizedLinkedList<K, V>();
+    final SegmentedLruPolicy<K, V> main;
+    final FrequencySketch<K> sketch = new FrequencySketch<K>();
+
+    long windowWeight;
+    long maximumWeight;
+    long maximumWindowWeight;
+
+    WindowTinyLfuPolicy(long maximumWeight) {
+
+        this.main = new SegmentedLruPolicy<K, V>(maximumWeight);
+        setMaximumWeight(maximumWeight);
+    }
+
+    @Override
+    public void setMaximumWeight(long maximumWeight) {
+
+        this.maximumWeight = maximumWeight;
+        this.maximumWindowWeight = Math.max(1, maximumWeight * WINDOW_PERCENT / 100);
+        main.setMaximumWeight(maximumWeight - maximumWindowWeight);
+    }
+
+    @Override
+    public void onAdd(LRUCache.Node<K, V> node) {
+
+        sketch.ensureCapacity(getCurrentSize() + 1);
+        sketch.increment(node.getKey());
+
+        window.addToHead(node);
+        node.queue = WINDOW;
+        windowWeight += node.weight;
+
+        // while there is room, what leaves the window goes into the main space without a contest
+        while (windowWeight > maximumWindowWeight && windowWeight + main.getWeight() <= maximumWeight
+                && window.getTail() != node) {
+            main.onAdd(removeWindowTail());
+        }
+    }
+
+    @Override
+    public void onAccess(LRUCache.Node<K, V> node) {
+
+        sketch.increment(node.getKey());
+        if (node.queue == WINDOW) {
+            window.setHead(node);
+        } else {
+            main.onAccess(node);
+        }
+    }
+
+    @Override
+    public void onRemove(LRUCache.Node<K, V> node) {
+
+        if (node.queue == WINDOW) {
+            window.remove(node);
+            windowWeight -= node.weight;
+            node.queue = 0;
+        } else {
+            main.onRemove(node);
+        }
+    }
+
+    @Override
+    public void onWeightChanged(LRUCache.Node<K, V> node, int delta) {
+
+        if (node.queue == WINDOW) {
+            windowWeight += delta;
+        } else {
+            main.onWeightChanged(node, delta);
+        }
+    }
+
+    @Override
+    public LRUCache.Node<K, V> evict() {
+
+        final LRUCache.Node<K, V> candidate = windowWeight > maximumWindowWeight ? window.getTail() : null;
+        final LRUCache.Node<K, V> victim = main.peekVictim();
+
+        if (candidate != null && victim != null) {
+
+            if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim.getKey())) {
+                // the candidate is admitted into the main space in place of the victim
+                main.onRemove(victim);
+                main.onAdd(removeWindowTail());
+                return victim;
+            }
+
+            return removeWindowTail();
+        }
+
+        if (victim != null) {
+            main.onRemove(victim);
+            return victim;
+        }
+
+        // nothing in the main space yet, so the window has to give something up
+        return window.getTail() == null ? null : removeWindowTail();
+    }
+
+    @Override
+    public boolean contains(LRUCache.Node<K, V> node) {
+        return node.queue == WINDOW || main.contains(node);
+    }
+
+    @Override
+    public int getCurrentSize() {
+        return window.getCurrentSize() + main.getCurrentSize();
+    }
+
+    // The window first, then the main space
+    @Override
+    public int getIndexOfObject(K key) {
+
+        final int index = window.getIndexOfObject(key);
+        if (index >= 0) {
+            return index;
+        }
+
+        final int mainIndex = main.getIndexOfObject(key);
+        return mainIndex < 0 ? -1 : window.getCurrentSize() + mainIndex;
+    }
+
+    @Override
+    public void forEachInPriorityOrder(Consumer<LRUCache.Node<K, V>> action) {
+
+        window.forEachInPriorityOrder(action);
+        main.forEachInPriorityOrder(action);
+    }
+
+    private LRUCache.Node<K, V> removeWindowTail() {
+
+        LRUCache.Node<K, V> leaving = window.removeTail();
+        windowWeight -= leaving.weight;
+        leaving.queue = 0;
+        return leaving;
+    }
+
+    @Override
+    public String toString() {
+        return "window[" + window + "] " + main;
+    }
+}
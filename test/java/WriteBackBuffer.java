@@ -0,0 +1,220 @@
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/*
+Keeps track of the values a write-back cache has not handed to its CacheWriter yet, and flushes them in batches.
+
+A write only sets the node's dirty flag, and queues the node the first time it goes dirty. However often the key is
+written before the next flush, the flush sends the backend a single write with whatever value the node holds by then.
+A dirty node that leaves the cache leaves its last value behind in evicted, so that it still gets written.
+
+Flushes run on the executor whenever the cache's maintenance finds the flush interval has passed, and as soon as a dirty
+entry is evicted. A flush collects its batch under the cache's evictionLock, which is what keeps it apart from
+evictions, and calls the backend after letting go of it. Only one flush runs at a time, so batches reach the backend in
+order.
+
+So that an idle cache does not sit on its dirty entries forever, a timer shared by all buffers also checks every flush
+interval. The timer only looks at the clock and hands the flush to the executor, it never writes itself. It holds on to
+the buffer weakly, so a cache nobody uses any more can still be collected.
+
+Writers set the value before they look at the flag, and a flush clears the flag before it reads the value. So a write
+racing with a flush either makes it into that batch, or finds the flag cleared and queues the node again.
+ */
+final class WriteBackBuffer<K, V> {
+
+    static Logger log = Logger.getLogger("WriteBackBuffer.class");
+
+    // The shortest period the timer checks at, for buffers that flush on every maintenance
+    static final long MINIMUM_TIMER_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final CacheWriter<K, V> writer;
+    private final long flushIntervalNanos;
+    private final Executor executor;
+    private final ReentrantLock evictionLock;
+    private final Ticker ticker;
+
+    private final ConcurrentLinkedQueue<LRUCache.Node<K, V>> dirtyNodes = new ConcurrentLinkedQueue<LRUCache.Node<K, V>>();
+    // dirty values whose node is no longer in the cache, and values whose flush failed
+    private final ConcurrentHashMap<K, V> evicted = new ConcurrentHashMap<K, V>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile long lastFlushTime;
+
+    WriteBackBuffer(CacheWriter<K, V> writer, long flushIntervalNanos, Executor executor, ReentrantLock evictionLock,
+                    Ticker ticker) {
+        this.writer = writer;
+        this.flushIntervalNanos = flushIntervalNanos;
+        this.executor = executor;
+        this.evictionLock = evictionLock;
+        this.ticker = ticker;
+        this.lastFlushTime = ticker.read();
+        FlushTimer.start(this, Math.max(flushIntervalNanos, MINIMUM_TIMER_PERIOD_NANOS));
+    }
+
+    // Called after the node's new value is in place
+    void markDirty(LRUCache.Node<K, V> node) {
+
+        if (!node.dirty) {
+            node.dirty = true;
+            dirtyNodes.add(node);
+        }
+    }
+
+    // Called for a node that was marked dirty but lost the race to be published, so it will never be in the cache
+    void discard(LRUCache.Node<K, V> node) {
+        node.dirty = false;
+    }
+
+    // Called with evictionLock held, for a node that was just taken out of the cache and held value
+    void onRetire(LRUCache.Node<K, V> node, V value) {
+
+        if (node.dirty && value != null) {
+            node.dirty = false;
+            evicted.put(node.getKey(), value);
+            scheduleFlush();
+        }
+    }
+
+    // Called by the cache's maintenance
+    void flushIfDue(long currentTime) {
+
+        if (currentTime - lastFlushTime >= flushIntervalNanos && hasPendingWrites()) {
+            lastFlushTime = currentTime;
+            scheduleFlush();
+        }
+    }
+
+    boolean hasPendingWrites() {
+        return !dirtyNodes.isEmpty() || !evicted.isEmpty();
+    }
+
+    /*
+    Hands every pending write to the backend on the calling thread, and returns how many there were. If the backend
+    throws, the batch is kept for the next flush and the exception is passed on. Must not be called with evictionLock
+    held.
+     */
+    int flush() {
+
+        flushLock.lock();
+        try {
+            final Map<K, V> batch = collectBatch();
+            if (batch.isEmpty()) {
+                return 0;
+            }
+
+            try {
+                writer.writeAll(batch);
+            } catch (RuntimeException e) {
+                // anything written to the cache since is newer, and will be flushed over this anyway
+                for (Map.Entry<K, V> entry : batch.entrySet()) {
+                    evicted.putIfAbsent(entry.getKey(), entry.getValue());
+                }
+                throw e;
+            }
+            return batch.size();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private Map<K, V> collectBatch() {
+
+        final Map<K, V> batch = new LinkedHashMap<K, V>();
+        evictionLock.lock();
+        try {
+            for (K key : evicted.keySet()) {
+                final V value = evicted.remove(key);
+                if (value != null) {
+                    batch.put(key, value);
+                }
+            }
+
+            // nodes still in the cache hold the newest value for their key, so they go in last
+            LRUCache.Node<K, V> node;
+            while ((node = dirtyNodes.poll()) != null) {
+                if (node.dirty) {
+                    node.dirty = false;
+                    final V value = node.getValue();
+                    if (value != null) {
+                        batch.put(node.getKey(), value);
+                    }
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+        return batch;
+    }
+
+    private void scheduleFlush() {
+
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::flushScheduled);
+            } catch (RuntimeException e) {
+                // the writes stay pending, the next maintenance tries again
+                scheduled.set(false);
+                log.warning("Could not schedule a write-back flush: " + e);
+            }
+        }
+    }
+
+    /*
+    One daemon thread checks every buffer's clock on its flush interval. Each check holds the buffer through a weak
+    reference, and cancels itself once the buffer is gone.
+     */
+    private static final class FlushTimer implements Runnable {
+
+        private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-back-flush-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        private final WeakReference<WriteBackBuffer<?, ?>> buffer;
+        private volatile ScheduledFuture<?> future;
+
+        private FlushTimer(WriteBackBuffer<?, ?> buffer) {
+            this.buffer = new WeakReference<WriteBackBuffer<?, ?>>(buffer);
+        }
+
+        static void start(WriteBackBuffer<?, ?> buffer, long periodNanos) {
+
+            FlushTimer timer = new FlushTimer(buffer);
+            timer.future = TIMER.scheduleWithFixedDelay(timer, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void run() {
+
+            WriteBackBuffer<?, ?> writeBack = buffer.get();
+            if (writeBack == null) {
+                // future is always set by now, the first run is a whole period after scheduling
+                future.cancel(false);
+                return;
+            }
+            writeBack.flushIfDue(writeBack.ticker.read());
+        }
+    }
+
+    private void flushScheduled() {
+
+        scheduled.set(false);
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warning("Write-back flush failed, will retry: " + e);
+        }
+    }
+}